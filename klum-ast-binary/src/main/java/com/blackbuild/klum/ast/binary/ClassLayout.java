@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.groovy.configdsl.transform.Owner;
+import com.blackbuild.klum.ast.util.DslHelper;
+import com.blackbuild.klum.ast.util.KlumModelException;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The precomputed layout of a DSL class: the fields to encode, in a fixed order, and the constructor to use.
+ * Key fields are not part of the field list, since the key is passed to the constructor.
+ */
+final class ClassLayout {
+
+    private static final ClassValue<ClassLayout> LAYOUTS = new ClassValue<ClassLayout>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return new ClassLayout(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final Field keyField;
+    private final Constructor<?> constructor;
+    private final Field[] fields;
+    private final String[] fieldNames;
+    private final boolean[] ownerFields;
+    private final long fingerprint;
+
+    private ClassLayout(Class<?> type) {
+        this.type = type;
+        keyField = DslHelper.getKeyField(type).map(ClassLayout::accessible).orElse(null);
+        constructor = findConstructor(type, keyField != null);
+
+        List<Field> encodedFields = new ArrayList<>();
+        for (Class<?> layer : DslHelper.getDslHierarchyOf(type))
+            for (Field field : layer.getDeclaredFields())
+                if (isEncoded(field))
+                    encodedFields.add(accessible(field));
+
+        fields = encodedFields.toArray(new Field[0]);
+        fieldNames = new String[fields.length];
+        ownerFields = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldNames[i] = fields[i].getName();
+            ownerFields[i] = fields[i].isAnnotationPresent(Owner.class);
+        }
+        fingerprint = computeFingerprint();
+    }
+
+    // FNV-1a over the key field and the names and generic types of the encoded fields
+    private long computeFingerprint() {
+        StringBuilder description = new StringBuilder();
+        if (keyField != null)
+            description.append("@key ").append(keyField.getName()).append(';');
+        for (Field field : fields)
+            description.append(field.getName()).append(' ').append(field.getGenericType().getTypeName()).append(';');
+        long result = 0xcbf29ce484222325L;
+        for (byte b : description.toString().getBytes(StandardCharsets.UTF_8)) {
+            result ^= b & 0xff;
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    static ClassLayout of(Class<?> type) {
+        return LAYOUTS.get(type);
+    }
+
+    private boolean isEncoded(Field field) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+            return false;
+        if (field.getName().startsWith("$"))
+            return false;
+        return keyField == null || !keyField.equals(field);
+    }
+
+    private static Constructor<?> findConstructor(Class<?> type, boolean keyed) {
+        try {
+            return accessible(keyed ? type.getDeclaredConstructor(String.class) : type.getDeclaredConstructor());
+        } catch (NoSuchMethodException e) {
+            throw new KlumModelException("No suitable constructor found for " + type.getName(), e);
+        }
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    boolean isKeyed() {
+        return keyField != null;
+    }
+
+    String getKey(Object instance) {
+        try {
+            return (String) keyField.get(instance);
+        } catch (IllegalAccessException e) {
+            throw new KlumModelException(e);
+        }
+    }
+
+    int getFieldCount() {
+        return fields.length;
+    }
+
+    String getFieldName(int index) {
+        return fieldNames[index];
+    }
+
+    Class<?> getFieldType(int index) {
+        return fields[index].getType();
+    }
+
+    boolean isOwnerField(int index) {
+        return ownerFields[index];
+    }
+
+    /**
+     * Returns a fingerprint of the field names and types of this layout. Streams written against a layout with a
+     * different fingerprint are rejected.
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    int indexOf(String fieldName) {
+        for (int i = 0; i < fieldNames.length; i++)
+            if (fieldNames[i].equals(fieldName))
+                return i;
+        return -1;
+    }
+
+    Object get(Object instance, int index) {
+        try {
+            return fields[index].get(instance);
+        } catch (IllegalAccessException e) {
+            throw new KlumModelException(e);
+        }
+    }
+
+    void set(Object instance, int index, Object value) {
+        try {
+            fields[index].set(instance, value);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new KlumModelException("Could not set field " + fieldNames[index] + " of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Creates a new, empty instance. No factory methods, templates or phases are involved.
+     */
+    Object newInstance(String key) {
+        try {
+            return keyField != null ? constructor.newInstance(key) : constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new KlumModelException("Could not instantiate " + type.getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new KlumModelException("Could not instantiate " + type.getName(), e.getCause());
+        }
+    }
+}
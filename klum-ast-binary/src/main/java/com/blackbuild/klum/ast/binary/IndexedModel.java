@@ -0,0 +1,261 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.klum.ast.util.KlumModelException;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.blackbuild.klum.ast.binary.Tags.*;
+
+/**
+ * A model written in the indexed format (see {@link IndexedModelEncoder}), backed by a memory mapped file. Objects,
+ * strings and classes are only read when they are first accessed and are cached afterward.
+ */
+final class IndexedModel {
+
+    private final ByteBuffer buffer;
+    private final ClassLoader loader;
+    private final int[] stringOffsets;
+    private final int[] classOffsets;
+    private final int[] objectOffsets;
+    private final int[] containerIds;
+
+    private final String[] strings;
+    private final ValueDecoder.ClassEntry[] classes;
+    // objects[] also contains objects that are still being read, only completely read objects are published
+    private final Object[] objects;
+    private final AtomicReferenceArray<Object> publishedObjects;
+    private final List<Integer> pendingObjects = new ArrayList<>();
+    private int readDepth;
+
+    private IndexedModel(ByteBuffer buffer, ClassLoader loader) throws IOException {
+        this.buffer = buffer;
+        this.loader = loader;
+        BufferInput in = new BufferInput(buffer, 0);
+        byte[] magic = new byte[INDEXED_MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, INDEXED_MAGIC))
+            throw new StreamCorruptedException("Not an indexed KlumAST model");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported version " + version);
+
+        stringOffsets = new int[in.readInt()];
+        classOffsets = new int[in.readInt()];
+        int objectCount = in.readInt();
+        objectOffsets = new int[objectCount];
+        containerIds = new int[objectCount];
+        for (int i = 0; i < stringOffsets.length; i++)
+            stringOffsets[i] = in.readInt();
+        for (int i = 0; i < classOffsets.length; i++)
+            classOffsets[i] = in.readInt();
+        for (int i = 0; i < objectCount; i++) {
+            objectOffsets[i] = in.readInt();
+            containerIds[i] = in.readInt();
+        }
+
+        strings = new String[stringOffsets.length];
+        classes = new ValueDecoder.ClassEntry[classOffsets.length];
+        objects = new Object[objectCount];
+        publishedObjects = new AtomicReferenceArray<>(objectCount);
+
+        // a model written against different classes is rejected right away instead of on first access
+        for (int i = 0; i < classOffsets.length; i++)
+            getClassEntry(i);
+    }
+
+    static IndexedModel open(Path file, ClassLoader loader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large: " + file);
+            // the mapping stays valid after the channel is closed
+            return new IndexedModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), loader);
+        }
+    }
+
+    Object getRoot() {
+        return getObject(0);
+    }
+
+    Object getObject(int id) {
+        Object result = publishedObjects.get(id);
+        return result != null ? result : materializeObject(id);
+    }
+
+    private synchronized Object materializeObject(int id) {
+        Object result = objects[id];
+        if (result != null)
+            return result;
+        readDepth++;
+        boolean success = false;
+        try {
+            result = new RecordDecoder(id).read();
+            success = true;
+            return result;
+        } catch (IOException e) {
+            throw new KlumModelException("Could not read object " + id + " of indexed model", e);
+        } finally {
+            if (--readDepth == 0)
+                publishPendingObjects(success);
+        }
+    }
+
+    // objects read in the same outermost call can reference each other, so they are published together
+    private void publishPendingObjects(boolean success) {
+        if (success)
+            for (int id : pendingObjects)
+                publishedObjects.set(id, objects[id]);
+        pendingObjects.clear();
+    }
+
+    private synchronized String getString(int id) throws IOException {
+        String result = strings[id];
+        if (result == null) {
+            result = new String(ValueDecoder.readBytes(new BufferInput(buffer, stringOffsets[id])), StandardCharsets.UTF_8);
+            strings[id] = result;
+        }
+        return result;
+    }
+
+    private synchronized ValueDecoder.ClassEntry getClassEntry(int id) throws IOException {
+        ValueDecoder.ClassEntry result = classes[id];
+        if (result == null) {
+            result = readClassEntry(new BufferInput(buffer, classOffsets[id]));
+            classes[id] = result;
+        }
+        return result;
+    }
+
+    private ValueDecoder.ClassEntry readClassEntry(BufferInput in) throws IOException {
+        String name = getString(ValueDecoder.readVarInt(in));
+        Class<?> type;
+        try {
+            type = Class.forName(name, false, loader);
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(name, "class not found");
+        }
+        ValueDecoder.ClassEntry entry = new ValueDecoder.ClassEntry(type);
+        int fieldCount = ValueDecoder.readVarInt(in) - 1;
+        if (fieldCount < 0)
+            return entry;
+        String[] fieldNames = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+            fieldNames[i] = getString(ValueDecoder.readVarInt(in));
+        entry.bindLayout(fieldNames, in.readLong());
+        return entry;
+    }
+
+    /**
+     * Reads a single object record.
+     */
+    private final class RecordDecoder extends ValueDecoder {
+
+        private final int id;
+
+        RecordDecoder(int id) {
+            super(new BufferInput(buffer, objectOffsets[id]), IndexedModel.this.loader);
+            this.id = id;
+        }
+
+        Object read() throws IOException {
+            ClassEntry entry = readClass();
+            ClassLayout layout = entry.layout;
+            Object result = layout.newInstance(layout.isKeyed() ? readString() : null);
+            objects[id] = result;
+            pendingObjects.add(id);
+
+            for (int fieldIndex : entry.fieldMapping) {
+                Object value = readValue(result);
+                if (value == OWNER_MARKER)
+                    value = getObject(containerIds[id]);
+                else if (value instanceof LazyValue && !layout.getFieldType(fieldIndex).isInstance(value))
+                    value = ((LazyValue) value).materialize();
+                layout.set(result, fieldIndex, value);
+            }
+            return result;
+        }
+
+        @Override
+        Object readReference() throws IOException {
+            return getObject(readVarInt());
+        }
+
+        @Override
+        Object readDslObject(Object container) throws IOException {
+            throw new StreamCorruptedException("Inline objects are not allowed in indexed models");
+        }
+
+        @Override
+        String readString() throws IOException {
+            int index = readVarInt();
+            return index != 0 ? getString(index - 1) : null;
+        }
+
+        @Override
+        ClassEntry readClass() throws IOException {
+            return getClassEntry(readVarInt());
+        }
+
+        @Override
+        Object readExtension(int tag) throws IOException {
+            switch (tag) {
+                case LAZY_LIST: return readLazyList();
+                case LAZY_KEYED_MAP: return readLazyKeyedMap();
+                default: return super.readExtension(tag);
+            }
+        }
+
+        private LazyList readLazyList() throws IOException {
+            int kind = in.readUnsignedByte();
+            int[] ids = new int[readVarInt()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = readVarInt();
+            return new LazyList(IndexedModel.this, kind, ids);
+        }
+
+        private LazyKeyedMap readLazyKeyedMap() throws IOException {
+            int kind = in.readUnsignedByte();
+            int size = readVarInt();
+            String[] keys = new String[size];
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = readString();
+                ids[i] = readVarInt();
+            }
+            return new LazyKeyedMap(IndexedModel.this, kind, keys, ids);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.klum.ast.util.DslHelper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static com.blackbuild.klum.ast.binary.Tags.*;
+
+/**
+ * Writes a model in the indexed format, which allows reading single objects without reading the whole model.
+ * <p>
+ * Each DSL object is written as a separate record, references between objects always use the object number. The file
+ * starts with tables containing the offsets of all strings, classes and objects (as well as the containing object of
+ * each object), followed by the strings, the class definitions and the object records. Lists of DSL objects and
+ * maps of keyed DSL objects are written as lists of object numbers (with keys), so that they can be resolved lazily.
+ * </p>
+ */
+final class IndexedModelEncoder extends ValueEncoder {
+
+    private final ByteArrayOutputStream objectSection;
+    private final Map<Object, Integer> objectIds = new IdentityHashMap<>();
+    private final List<Object> objects = new ArrayList<>();
+    private final List<Object> containers = new ArrayList<>();
+
+    private final ByteArrayOutputStream stringSection = new ByteArrayOutputStream();
+    private final DataOutputStream stringOut = new DataOutputStream(stringSection);
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<Integer> stringOffsets = new ArrayList<>();
+
+    private final ByteArrayOutputStream classSection = new ByteArrayOutputStream();
+    private final DataOutputStream classOut = new DataOutputStream(classSection);
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+    private final List<Integer> classOffsets = new ArrayList<>();
+
+    IndexedModelEncoder() {
+        this(new ByteArrayOutputStream());
+    }
+
+    private IndexedModelEncoder(ByteArrayOutputStream objectSection) {
+        super(new DataOutputStream(objectSection));
+        this.objectSection = objectSection;
+    }
+
+    void write(Object model, OutputStream stream) throws IOException {
+        if (!DslHelper.isDslObject(model))
+            throw new IllegalArgumentException("Model must be a DSL object");
+        idOf(model, null);
+
+        List<Integer> offsets = new ArrayList<>();
+        // objects are added while writing the records
+        for (int id = 0; id < objects.size(); id++) {
+            offsets.add(out.size());
+            writeRecord(objects.get(id), containers.get(id));
+        }
+        out.flush();
+        stringOut.flush();
+        classOut.flush();
+
+        int headerSize = INDEXED_MAGIC.length + 1 + 3 * Integer.BYTES
+                + Integer.BYTES * (stringOffsets.size() + classOffsets.size() + 2 * objects.size());
+        long totalSize = (long) headerSize + stringSection.size() + classSection.size() + objectSection.size();
+        if (totalSize > Integer.MAX_VALUE)
+            throw new IOException("Model is too large for the indexed format");
+        int stringBase = headerSize;
+        int classBase = stringBase + stringSection.size();
+        int objectBase = classBase + classSection.size();
+
+        DataOutputStream target = new DataOutputStream(new BufferedOutputStream(stream));
+        target.write(INDEXED_MAGIC);
+        target.writeByte(VERSION);
+        target.writeInt(stringOffsets.size());
+        target.writeInt(classOffsets.size());
+        target.writeInt(objects.size());
+        for (int offset : stringOffsets)
+            target.writeInt(stringBase + offset);
+        for (int offset : classOffsets)
+            target.writeInt(classBase + offset);
+        for (int id = 0; id < objects.size(); id++) {
+            target.writeInt(objectBase + offsets.get(id));
+            Object container = containers.get(id);
+            target.writeInt(container != null ? objectIds.get(container) : -1);
+        }
+        stringSection.writeTo(target);
+        classSection.writeTo(target);
+        objectSection.writeTo(target);
+        target.flush();
+    }
+
+    private int idOf(Object value, Object container) {
+        Integer id = objectIds.get(value);
+        if (id != null)
+            return id;
+        id = objects.size();
+        objectIds.put(value, id);
+        objects.add(value);
+        containers.add(container);
+        return id;
+    }
+
+    private void writeRecord(Object value, Object container) throws IOException {
+        ClassLayout layout = ClassLayout.of(value.getClass());
+        writeClass(layout.getType());
+        if (layout.isKeyed())
+            writeString(layout.getKey(value));
+
+        for (int i = 0; i < layout.getFieldCount(); i++) {
+            Object fieldValue = layout.get(value, i);
+            if (container != null && fieldValue == container && layout.isOwnerField(i))
+                out.writeByte(OWNER);
+            else
+                writeValue(fieldValue, value);
+        }
+    }
+
+    @Override
+    void writeDslObject(Object value, Object container) throws IOException {
+        out.writeByte(REFERENCE);
+        writeVarInt(idOf(value, container));
+    }
+
+    @Override
+    void writeCollection(Collection<?> value, Object container) throws IOException {
+        if (!(value instanceof List) || value.isEmpty() || !value.stream().allMatch(DslHelper::isDslObject)) {
+            super.writeCollection(value, container);
+            return;
+        }
+        out.writeByte(LAZY_LIST);
+        out.writeByte(collectionKind(value));
+        writeVarInt(value.size());
+        for (Object element : value)
+            writeVarInt(idOf(element, container));
+    }
+
+    @Override
+    void writeMap(Map<?, ?> value, Object container) throws IOException {
+        if (!isKeyedMap(value)) {
+            super.writeMap(value, container);
+            return;
+        }
+        out.writeByte(LAZY_KEYED_MAP);
+        out.writeByte(mapKind(value));
+        writeVarInt(value.size());
+        for (Map.Entry<?, ?> entry : value.entrySet()) {
+            writeString((String) entry.getKey());
+            writeVarInt(idOf(entry.getValue(), container));
+        }
+    }
+
+    // 0: null, n: string number n - 1
+    @Override
+    void writeString(String value) throws IOException {
+        writeVarInt(value != null ? stringId(value) + 1 : 0);
+    }
+
+    private int stringId(String value) throws IOException {
+        Integer id = strings.get(value);
+        if (id != null)
+            return id;
+        id = strings.size();
+        strings.put(value, id);
+        stringOffsets.add(stringOut.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(stringOut, bytes.length);
+        stringOut.write(bytes);
+        return id;
+    }
+
+    @Override
+    void writeClass(Class<?> type) throws IOException {
+        Integer id = classes.get(type);
+        if (id == null) {
+            id = classes.size();
+            classes.put(type, id);
+            writeClassDefinition(type);
+        }
+        writeVarInt(id);
+    }
+
+    private void writeClassDefinition(Class<?> type) throws IOException {
+        classOffsets.add(classOut.size());
+        writeVarInt(classOut, stringId(type.getName()));
+        if (!DslHelper.isDslType(type)) {
+            writeVarInt(classOut, 0);
+            return;
+        }
+        ClassLayout layout = ClassLayout.of(type);
+        writeVarInt(classOut, layout.getFieldCount() + 1);
+        for (int i = 0; i < layout.getFieldCount(); i++)
+            writeVarInt(classOut, stringId(layout.getFieldName(i)));
+        classOut.writeLong(layout.getFingerprint());
+    }
+}
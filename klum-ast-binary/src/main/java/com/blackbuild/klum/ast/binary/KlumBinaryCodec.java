@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.klum.ast.util.SnapshotCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Compact binary encoding of complete models.
+ * <p>
+ * Field values are written in a fixed order per class, field names are only written once per stream. DSL objects
+ * referenced multiple times (for example via links) are written once and referenced afterward, as are strings and
+ * class names. Keys of keyed objects are written once, even if the object is the value of a map. Owner fields
+ * pointing to the containing object are restored from the structure instead of being written.
+ * </p>
+ * <p>
+ * When reading, objects are instantiated using their constructor and fields are set directly, so no factory
+ * methods, templates, breadcrumbs or phases are involved. The encoded model should therefore be completely created.
+ * </p>
+ * <p>
+ * Values that are neither DSL objects, nor strings, numbers, enums, classes, collections or maps are encoded using
+ * Java serialization.
+ * </p>
+ * <p>
+ * This codec is automatically used for {@link com.blackbuild.klum.ast.util.ModelSnapshot}s if it is on the classpath.
+ * </p>
+ */
+public class KlumBinaryCodec implements SnapshotCodec {
+
+    public static final String NAME = "klum-binary";
+
+    /**
+     * Writes the given model into the given stream.
+     * @param model the model to write
+     * @param stream the stream to write to, is flushed but not closed
+     */
+    public static void encode(Object model, OutputStream stream) throws IOException {
+        new ModelEncoder(stream).write(model);
+    }
+
+    /**
+     * Reads a model from the given stream.
+     * @param type the expected type of the model
+     * @param stream the stream to read from, is not closed
+     * @param loader the classloader to resolve the model classes with
+     * @param <T> the model type
+     * @return the model
+     */
+    public static <T> T decode(Class<T> type, InputStream stream, ClassLoader loader) throws IOException {
+        Object result = new ModelDecoder(stream, loader).read();
+        if (!type.isInstance(result))
+            throw new InvalidObjectException("Stream contains " + (result != null ? result.getClass().getName() : null) + ", expected " + type.getName());
+        return type.cast(result);
+    }
+
+    /**
+     * Writes the given model in the indexed format, which can be read lazily using {@link #decodeLazily(Class, Path, ClassLoader)}.
+     * The indexed format is slightly larger than the regular format.
+     * @param model the model to write
+     * @param stream the stream to write to, is flushed but not closed
+     */
+    public static void encodeIndexed(Object model, OutputStream stream) throws IOException {
+        new IndexedModelEncoder().write(model, stream);
+    }
+
+    /**
+     * Reads a model written by {@link #encodeIndexed(Object, OutputStream)} from the given file. The file is memory mapped
+     * and objects are only read when they are first accessed: Lists of DSL objects and maps of keyed DSL objects
+     * are resolved element by element, so accessing a single map entry by key only reads that entry (and the objects
+     * it references). Single object fields are resolved when the containing object is read.
+     * <p>
+     * The returned model is read only, the lists and maps of the model cannot be modified.
+     * </p>
+     * @param type the expected type of the model
+     * @param file the file to read
+     * @param loader the classloader to resolve the model classes with
+     * @param <T> the model type
+     * @return the root of the model
+     */
+    public static <T> T decodeLazily(Class<T> type, Path file, ClassLoader loader) throws IOException {
+        Object result = IndexedModel.open(file, loader).getRoot();
+        if (!type.isInstance(result))
+            throw new InvalidObjectException("File contains " + result.getClass().getName() + ", expected " + type.getName());
+        return type.cast(result);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void write(Object model, OutputStream stream) throws IOException {
+        encode(model, stream);
+    }
+
+    @Override
+    public Object read(InputStream stream, ClassLoader loader) throws IOException {
+        return decode(Object.class, stream, loader);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Read only map of keyed DSL objects from an indexed model. Values are only read when they are accessed, so
+ * looking up a single entry by key only reads that entry (and the objects it references).
+ */
+final class LazyKeyedMap extends AbstractMap<Object, Object> implements Serializable, LazyValue {
+
+    private final transient IndexedModel model;
+    private final int kind;
+    private final Map<String, Integer> ids;
+
+    LazyKeyedMap(IndexedModel model, int kind, String[] keys, int[] ids) {
+        this.model = model;
+        this.kind = kind;
+        this.ids = new LinkedHashMap<>((int) (keys.length / 0.75f) + 1);
+        for (int i = 0; i < keys.length; i++)
+            this.ids.put(keys[i], ids[i]);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer id = ids.get(key);
+        return id != null ? model.getObject(id) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return ids.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    @Override
+    public Set<Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Entry<Object, Object>>() {
+            @Override
+            public Iterator<Entry<Object, Object>> iterator() {
+                Iterator<Entry<String, Integer>> iterator = ids.entrySet().iterator();
+                return new Iterator<Entry<Object, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Object, Object> next() {
+                        Entry<String, Integer> next = iterator.next();
+                        return new SimpleImmutableEntry<>(next.getKey(), model.getObject(next.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.size();
+            }
+        };
+    }
+
+    @Override
+    public Map<Object, Object> materialize() throws IOException {
+        Map<Object, Object> result = ValueDecoder.createMap(kind, ids.size());
+        result.putAll(this);
+        return result;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        try {
+            return materialize();
+        } catch (IOException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+}
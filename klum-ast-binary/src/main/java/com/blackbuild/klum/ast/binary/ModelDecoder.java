@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.blackbuild.klum.ast.binary.Tags.MAGIC;
+import static com.blackbuild.klum.ast.binary.Tags.VERSION;
+
+/**
+ * Reads a single model written by {@link ModelEncoder}. Objects are instantiated directly and their fields are set
+ * without going through the factory, i.e. no templates, breadcrumbs or phases are involved.
+ */
+final class ModelDecoder extends ValueDecoder {
+
+    private final List<Object> objects = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private final List<ClassEntry> classes = new ArrayList<>();
+
+    ModelDecoder(InputStream stream, ClassLoader loader) {
+        super(new DataInputStream(new BufferedInputStream(stream)), loader);
+    }
+
+    Object read() throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new StreamCorruptedException("Not a binary KlumAST model");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported version " + version);
+        return readValue(null);
+    }
+
+    @Override
+    Object readReference() throws IOException {
+        return objects.get(readVarInt());
+    }
+
+    @Override
+    Object readDslObject(Object container) throws IOException {
+        ClassEntry entry = readClass();
+        ClassLayout layout = entry.layout;
+        Object result = layout.newInstance(layout.isKeyed() ? readString() : null);
+        objects.add(result);
+        readFields(this, entry, result, container);
+        return result;
+    }
+
+    @Override
+    String readString() throws IOException {
+        int index = readVarInt();
+        if (index == 0)
+            return null;
+        if (index > 1)
+            return strings.get(index - 2);
+        String result = new String(readBytes(), StandardCharsets.UTF_8);
+        strings.add(result);
+        return result;
+    }
+
+    @Override
+    ClassEntry readClass() throws IOException {
+        int index = readVarInt();
+        if (index > 0)
+            return classes.get(index - 1);
+
+        ClassEntry entry = new ClassEntry(loadClass(readString()));
+        classes.add(entry);
+
+        int fieldCount = readVarInt() - 1;
+        if (fieldCount < 0)
+            return entry;
+        String[] fieldNames = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+            fieldNames[i] = readString();
+        entry.bindLayout(fieldNames, in.readLong());
+        return entry;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.klum.ast.util.DslHelper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static com.blackbuild.klum.ast.binary.Tags.*;
+
+/**
+ * Writes a single model. DSL objects are written once and referenced by index afterward, the same holds for strings
+ * and classes. Owner fields pointing to the object containing the current object are not written, but
+ * restored from the structure when reading.
+ */
+final class ModelEncoder extends ValueEncoder {
+
+    private final Map<Object, Integer> objects = new IdentityHashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+    ModelEncoder(OutputStream stream) {
+        super(new DataOutputStream(new BufferedOutputStream(stream)));
+    }
+
+    void write(Object model) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeValue(model, null);
+        out.flush();
+    }
+
+    @Override
+    void writeDslObject(Object value, Object container) throws IOException {
+        Integer index = objects.get(value);
+        if (index != null) {
+            out.writeByte(REFERENCE);
+            writeVarInt(index);
+            return;
+        }
+        objects.put(value, objects.size());
+
+        ClassLayout layout = ClassLayout.of(value.getClass());
+        out.writeByte(DSL_OBJECT);
+        writeClass(layout.getType());
+        if (layout.isKeyed())
+            writeString(layout.getKey(value));
+
+        for (int i = 0; i < layout.getFieldCount(); i++) {
+            Object fieldValue = layout.get(value, i);
+            if (container != null && fieldValue == container && layout.isOwnerField(i))
+                out.writeByte(OWNER);
+            else
+                writeValue(fieldValue, value);
+        }
+    }
+
+    // 0: null, 1: new string, n: string number n - 2
+    @Override
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index + 2);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeVarInt(1);
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 0: new class, followed by the name and the field names for DSL classes, n: class number n - 1
+    @Override
+    void writeClass(Class<?> type) throws IOException {
+        Integer index = classes.get(type);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+        classes.put(type, classes.size());
+        writeVarInt(0);
+        writeString(type.getName());
+        if (!DslHelper.isDslType(type)) {
+            writeVarInt(0);
+            return;
+        }
+        ClassLayout layout = ClassLayout.of(type);
+        writeVarInt(layout.getFieldCount() + 1);
+        for (int i = 0; i < layout.getFieldCount(); i++)
+            writeString(layout.getFieldName(i));
+        out.writeLong(layout.getFingerprint());
+    }
+}
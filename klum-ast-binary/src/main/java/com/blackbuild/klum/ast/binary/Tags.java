@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+/**
+ * Value tags and collection kinds of the binary format.
+ */
+final class Tags {
+
+    static final byte[] MAGIC = {'K', 'L', 'M', 'B'};
+    static final byte[] INDEXED_MAGIC = {'K', 'L', 'M', 'I'};
+    static final int VERSION = 2;
+
+    static final int NULL = 0;
+    static final int REFERENCE = 1;
+    static final int DSL_OBJECT = 2;
+    static final int OWNER = 3;
+    static final int STRING = 4;
+    static final int TRUE = 5;
+    static final int FALSE = 6;
+    static final int INTEGER = 7;
+    static final int LONG = 8;
+    static final int DOUBLE = 9;
+    static final int FLOAT = 10;
+    static final int SHORT = 11;
+    static final int BYTE = 12;
+    static final int CHARACTER = 13;
+    static final int BIG_DECIMAL = 14;
+    static final int BIG_INTEGER = 15;
+    static final int ENUM = 16;
+    static final int CLASS = 17;
+    static final int COLLECTION = 18;
+    static final int ENUM_SET = 19;
+    static final int MAP = 20;
+    static final int KEYED_MAP = 21;
+    static final int SERIALIZED = 22;
+
+    // indexed format only
+    static final int LAZY_LIST = 23;
+    static final int LAZY_KEYED_MAP = 24;
+
+    static final int ARRAY_LIST = 0;
+    static final int LINKED_LIST = 1;
+    static final int HASH_SET = 2;
+    static final int LINKED_HASH_SET = 3;
+    static final int TREE_SET = 4;
+    static final int HASH_MAP = 5;
+    static final int LINKED_HASH_MAP = 6;
+    static final int TREE_MAP = 7;
+
+    private Tags() {
+        // constants only
+    }
+}
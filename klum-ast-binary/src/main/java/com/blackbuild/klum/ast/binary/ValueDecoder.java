@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static com.blackbuild.klum.ast.binary.Tags.*;
+
+/**
+ * Reads values in the binary format. The handling of DSL objects, references, strings and classes is left to subclasses.
+ */
+abstract class ValueDecoder {
+
+    static final Object OWNER_MARKER = new Object();
+
+    final DataInput in;
+    final ClassLoader loader;
+
+    ValueDecoder(DataInput in, ClassLoader loader) {
+        this.in = in;
+        this.loader = loader;
+    }
+
+    Object readValue(Object container) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL: return null;
+            case REFERENCE: return readReference();
+            case DSL_OBJECT: return readDslObject(container);
+            case OWNER: return OWNER_MARKER;
+            case STRING: return readString();
+            case TRUE: return Boolean.TRUE;
+            case FALSE: return Boolean.FALSE;
+            case INTEGER: return (int) readVarLong();
+            case LONG: return readVarLong();
+            case DOUBLE: return in.readDouble();
+            case FLOAT: return in.readFloat();
+            case SHORT: return (short) readVarLong();
+            case BYTE: return in.readByte();
+            case CHARACTER: return (char) readVarLong();
+            case BIG_DECIMAL: return readBigDecimal();
+            case BIG_INTEGER: return new BigInteger(readBytes());
+            case ENUM: return readEnum();
+            case CLASS: return readClass().type;
+            case COLLECTION: return readCollection(container);
+            case ENUM_SET: return readEnumSet();
+            case MAP: return readMap(container);
+            case KEYED_MAP: return readKeyedMap(container);
+            case SERIALIZED: return readSerialized();
+            default: return readExtension(tag);
+        }
+    }
+
+    abstract Object readReference() throws IOException;
+
+    abstract Object readDslObject(Object container) throws IOException;
+
+    abstract String readString() throws IOException;
+
+    abstract ClassEntry readClass() throws IOException;
+
+    Object readExtension(int tag) throws IOException {
+        throw new StreamCorruptedException("Unknown tag " + tag);
+    }
+
+    // owners pointing to the containing object are restored from the structure
+    static void readFields(ValueDecoder decoder, ClassEntry entry, Object instance, Object container) throws IOException {
+        for (int fieldIndex : entry.fieldMapping) {
+            Object value = decoder.readValue(instance);
+            entry.layout.set(instance, fieldIndex, value == OWNER_MARKER ? container : value);
+        }
+    }
+
+    private Collection<Object> readCollection(Object container) throws IOException {
+        int kind = in.readUnsignedByte();
+        int size = readVarInt();
+        Collection<Object> result = createCollection(kind, size);
+        for (int i = 0; i < size; i++)
+            result.add(readValue(container));
+        return result;
+    }
+
+    static Collection<Object> createCollection(int kind, int size) throws StreamCorruptedException {
+        switch (kind) {
+            case ARRAY_LIST: return new ArrayList<>(size);
+            case LINKED_LIST: return new LinkedList<>();
+            case HASH_SET: return new HashSet<>(capacityFor(size));
+            case LINKED_HASH_SET: return new LinkedHashSet<>(capacityFor(size));
+            case TREE_SET: return new TreeSet<>();
+            default: throw new StreamCorruptedException("Unknown collection kind " + kind);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private EnumSet<?> readEnumSet() throws IOException {
+        Class elementType = readClass().type;
+        EnumSet result = EnumSet.noneOf(elementType);
+        int size = readVarInt();
+        for (int i = 0; i < size; i++)
+            result.add(Enum.valueOf(elementType, readString()));
+        return result;
+    }
+
+    private Map<Object, Object> readMap(Object container) throws IOException {
+        int kind = in.readUnsignedByte();
+        int size = readVarInt();
+        Map<Object, Object> result = createMap(kind, size);
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(container);
+            result.put(key, readValue(container));
+        }
+        return result;
+    }
+
+    private Map<Object, Object> readKeyedMap(Object container) throws IOException {
+        int kind = in.readUnsignedByte();
+        int size = readVarInt();
+        Map<Object, Object> result = createMap(kind, size);
+        for (int i = 0; i < size; i++) {
+            Object element = readValue(container);
+            result.put(ClassLayout.of(element.getClass()).getKey(element), element);
+        }
+        return result;
+    }
+
+    static Map<Object, Object> createMap(int kind, int size) throws StreamCorruptedException {
+        switch (kind) {
+            case HASH_MAP: return new HashMap<>(capacityFor(size));
+            case LINKED_HASH_MAP: return new LinkedHashMap<>(capacityFor(size));
+            case TREE_MAP: return new TreeMap<>();
+            default: throw new StreamCorruptedException("Unknown map kind " + kind);
+        }
+    }
+
+    private static int capacityFor(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readEnum() throws IOException {
+        Class type = readClass().type;
+        return Enum.valueOf(type, readString());
+    }
+
+    private BigDecimal readBigDecimal() throws IOException {
+        int scale = (int) readVarLong();
+        return new BigDecimal(new BigInteger(readBytes()), scale);
+    }
+
+    private Object readSerialized() throws IOException {
+        try (ObjectInputStream objectIn = new LoaderAwareObjectInputStream(new ByteArrayInputStream(readBytes()), loader)) {
+            return objectIn.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+    Class<?> loadClass(String name) throws InvalidClassException {
+        try {
+            return Class.forName(name, false, loader);
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(name, "class not found");
+        }
+    }
+
+    byte[] readBytes() throws IOException {
+        return readBytes(in);
+    }
+
+    int readVarInt() throws IOException {
+        return readVarInt(in);
+    }
+
+    long readVarLong() throws IOException {
+        return readVarLong(in);
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        byte[] result = new byte[readVarInt(in)];
+        in.readFully(result);
+        return result;
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+
+    /**
+     * A class read from the stream, for DSL classes including the mapping of stream fields to local fields.
+     */
+    static final class ClassEntry {
+        final Class<?> type;
+        ClassLayout layout;
+        int[] fieldMapping;
+
+        ClassEntry(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Maps the fields of the stream to the fields of the local class. Streams written against a different
+         * version of the class (added, removed, renamed or retyped fields) are rejected, so that callers can fall
+         * back to recreating the model.
+         */
+        void bindLayout(String[] fieldNames, long fingerprint) throws InvalidClassException {
+            layout = ClassLayout.of(type);
+            if (fingerprint != layout.getFingerprint() || fieldNames.length != layout.getFieldCount())
+                throw new InvalidClassException(type.getName(), "stream does not match the local class layout");
+            fieldMapping = new int[fieldNames.length];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldMapping[i] = layout.indexOf(fieldNames[i]);
+                if (fieldMapping[i] < 0)
+                    throw new InvalidClassException(type.getName(), "unknown field " + fieldNames[i]);
+            }
+        }
+    }
+
+    private static final class LoaderAwareObjectInputStream extends ObjectInputStream {
+        private final ClassLoader loader;
+
+        LoaderAwareObjectInputStream(InputStream in, ClassLoader loader) throws IOException {
+            super(in);
+            this.loader = loader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, loader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
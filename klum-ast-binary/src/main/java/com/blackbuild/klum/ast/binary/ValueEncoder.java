@@ -0,0 +1,276 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary;
+
+import com.blackbuild.klum.ast.util.DslHelper;
+import com.blackbuild.klum.ast.util.KlumModelException;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static com.blackbuild.klum.ast.binary.Tags.*;
+
+/**
+ * Writes values in the binary format. The handling of DSL objects, strings and classes is left to subclasses.
+ */
+abstract class ValueEncoder {
+
+    final DataOutputStream out;
+
+    ValueEncoder(DataOutputStream out) {
+        this.out = out;
+    }
+
+    void writeValue(Object value, Object container) throws IOException {
+        if (value == null)
+            out.writeByte(NULL);
+        else if (value instanceof String)
+            writeTaggedString((String) value);
+        else if (DslHelper.isDslObject(value))
+            writeDslObject(value, container);
+        else if (value instanceof Boolean)
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        else if (value instanceof Integer)
+            writeTaggedVarLong(INTEGER, (Integer) value);
+        else if (value instanceof Long)
+            writeTaggedVarLong(LONG, (Long) value);
+        else if (value instanceof Double)
+            writeDouble((Double) value);
+        else if (value instanceof Float)
+            writeFloat((Float) value);
+        else if (value instanceof Short)
+            writeTaggedVarLong(SHORT, (Short) value);
+        else if (value instanceof Byte)
+            writeByteValue((Byte) value);
+        else if (value instanceof Character)
+            writeTaggedVarLong(CHARACTER, (Character) value);
+        else if (value instanceof BigDecimal)
+            writeBigDecimal((BigDecimal) value);
+        else if (value instanceof BigInteger)
+            writeBigInteger((BigInteger) value);
+        else if (value instanceof Enum)
+            writeEnum((Enum<?>) value);
+        else if (value instanceof Class)
+            writeClassValue((Class<?>) value);
+        else if (value instanceof EnumSet)
+            writeEnumSet((EnumSet<?>) value);
+        else if (value instanceof Collection)
+            writeCollection((Collection<?>) value, container);
+        else if (value instanceof Map)
+            writeMap((Map<?, ?>) value, container);
+        else if (value instanceof Serializable)
+            writeSerialized(value);
+        else
+            throw new NotSerializableException(value.getClass().getName());
+    }
+
+    void writeCollection(Collection<?> value, Object container) throws IOException {
+        out.writeByte(COLLECTION);
+        out.writeByte(collectionKind(value));
+        writeVarInt(value.size());
+        for (Object element : value)
+            writeValue(element, container);
+    }
+
+    static int collectionKind(Collection<?> value) {
+        if (value instanceof LinkedList)
+            return LINKED_LIST;
+        if (value instanceof List)
+            return ARRAY_LIST;
+        if (value instanceof SortedSet) {
+            if (((SortedSet<?>) value).comparator() != null)
+                throw new KlumModelException("Sorted sets with custom comparators are not supported");
+            return TREE_SET;
+        }
+        if (value instanceof LinkedHashSet)
+            return LINKED_HASH_SET;
+        if (value instanceof HashSet)
+            return HASH_SET;
+        if (value instanceof Set)
+            return LINKED_HASH_SET;
+        return ARRAY_LIST;
+    }
+
+    private void writeEnumSet(EnumSet<?> value) throws IOException {
+        Class<?> elementType = elementTypeOf(value);
+        if (elementType == null) {
+            // enum without constants
+            writeSerialized(value);
+            return;
+        }
+        out.writeByte(ENUM_SET);
+        writeClass(elementType);
+        writeVarInt(value.size());
+        for (Enum<?> element : value)
+            writeString(element.name());
+    }
+
+    // EnumSet does not expose its element type, so we use an element of the set or of its complement
+    private static Class<?> elementTypeOf(EnumSet<?> value) {
+        EnumSet<?> source = value.isEmpty() ? EnumSet.complementOf(value) : value;
+        for (Enum<?> element : source)
+            return element.getDeclaringClass();
+        return null;
+    }
+
+    void writeMap(Map<?, ?> value, Object container) throws IOException {
+        if (isKeyedMap(value)) {
+            out.writeByte(KEYED_MAP);
+            out.writeByte(mapKind(value));
+            writeVarInt(value.size());
+            for (Object element : value.values())
+                writeValue(element, container);
+            return;
+        }
+
+        out.writeByte(MAP);
+        out.writeByte(mapKind(value));
+        writeVarInt(value.size());
+        for (Map.Entry<?, ?> entry : value.entrySet()) {
+            writeValue(entry.getKey(), container);
+            writeValue(entry.getValue(), container);
+        }
+    }
+
+    // maps of keyed objects using the object keys as map keys only need to store the values
+    static boolean isKeyedMap(Map<?, ?> value) {
+        if (value.isEmpty())
+            return false;
+        for (Map.Entry<?, ?> entry : value.entrySet()) {
+            Object element = entry.getValue();
+            if (!DslHelper.isDslObject(element)) return false;
+            ClassLayout layout = ClassLayout.of(element.getClass());
+            if (!layout.isKeyed() || !Objects.equals(entry.getKey(), layout.getKey(element))) return false;
+        }
+        return true;
+    }
+
+    static int mapKind(Map<?, ?> value) {
+        if (value instanceof SortedMap) {
+            if (((SortedMap<?, ?>) value).comparator() != null)
+                throw new KlumModelException("Sorted maps with custom comparators are not supported");
+            return TREE_MAP;
+        }
+        if (value instanceof LinkedHashMap)
+            return LINKED_HASH_MAP;
+        if (value instanceof HashMap)
+            return HASH_MAP;
+        return LINKED_HASH_MAP;
+    }
+
+    private void writeEnum(Enum<?> value) throws IOException {
+        out.writeByte(ENUM);
+        writeClass(value.getDeclaringClass());
+        writeString(value.name());
+    }
+
+    private void writeClassValue(Class<?> value) throws IOException {
+        out.writeByte(CLASS);
+        writeClass(value);
+    }
+
+    private void writeDouble(double value) throws IOException {
+        out.writeByte(DOUBLE);
+        out.writeDouble(value);
+    }
+
+    private void writeFloat(float value) throws IOException {
+        out.writeByte(FLOAT);
+        out.writeFloat(value);
+    }
+
+    private void writeByteValue(byte value) throws IOException {
+        out.writeByte(BYTE);
+        out.writeByte(value);
+    }
+
+    private void writeBigDecimal(BigDecimal value) throws IOException {
+        out.writeByte(BIG_DECIMAL);
+        writeVarLong(value.scale());
+        writeBytes(value.unscaledValue().toByteArray());
+    }
+
+    private void writeBigInteger(BigInteger value) throws IOException {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(value.toByteArray());
+    }
+
+    private void writeSerialized(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(value);
+        }
+        out.writeByte(SERIALIZED);
+        writeBytes(bytes.toByteArray());
+    }
+
+    private void writeTaggedString(String value) throws IOException {
+        out.writeByte(STRING);
+        writeString(value);
+    }
+
+    abstract void writeDslObject(Object value, Object container) throws IOException;
+
+    abstract void writeString(String value) throws IOException;
+
+    abstract void writeClass(Class<?> type) throws IOException;
+
+    void writeBytes(byte[] bytes) throws IOException {
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeTaggedVarLong(int tag, long value) throws IOException {
+        out.writeByte(tag);
+        writeVarLong(value);
+    }
+
+    void writeVarInt(int value) throws IOException {
+        writeVarInt(out, value);
+    }
+
+    void writeVarLong(long value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // zigzag encoded, so that small negative numbers stay small
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.binary
+
+import com.blackbuild.groovy.configdsl.transform.AbstractDSLSpec
+import com.blackbuild.klum.ast.util.FreezePhase
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
+import com.blackbuild.klum.ast.util.ModelSnapshot
+
+import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
+
+class BinaryCodecSpec extends AbstractDSLSpec {
+
+    def roundTrip(Object model) {
+        def bytes = new ByteArrayOutputStream()
+        KlumBinaryCodec.encode(model, bytes)
+        return KlumBinaryCodec.decode(clazz, new ByteArrayInputStream(bytes.toByteArray()), loader)
+    }
+
+    def "simple values are retained"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                int count
+                Long size
+                BigDecimal price
+                Color color
+                List<String> tags
+                Map<String, Integer> values
+            }
+
+            enum Color { RED, GREEN }
+        ''')
+        instance = clazz.Create.With {
+            name "bla"
+            count(-3)
+            size 1L << 40
+            price 12.345
+            color getClass("pk.Color").GREEN
+            tags "a", "b", "a"
+            values(a: 1, b: 2)
+        }
+
+        when:
+        def result = roundTrip(instance)
+
+        then:
+        !result.is(instance)
+        result == instance
+        result.color.name() == "GREEN"
+        result.tags == ["a", "b", "a"]
+        result.values == [a: 1, b: 2]
+    }
+
+    def "keyed objects, owners and links are restored"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Map<String, Bar> bars
+                Bar favorite
+                Bar other
+            }
+
+            @DSL
+            class Bar {
+                @Owner Foo foo
+                @Key String name
+                String value
+            }
+        ''')
+        instance = clazz.Create.With {
+            bars {
+                bar("Klaus") { value "k" }
+                bar("Dieter") { value "d" }
+            }
+            other("Hans")
+        }
+        instance.@favorite = instance.bars.Dieter
+
+        when:
+        def result = roundTrip(instance)
+
+        then:
+        result.bars.keySet().toList() == ["Klaus", "Dieter"]
+        result.bars.Klaus.name == "Klaus"
+        result.bars.Klaus.value == "k"
+        result.bars.Klaus.foo.is(result)
+        result.favorite.is(result.bars.Dieter)
+        result.other.name == "Hans"
+        result.other.foo.is(result)
+    }
+
+    def "decoded objects are not recreated by phases"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+
+                @PostCreate
+                void postCreate() {
+                    name = name + "!"
+                }
+            }
+        ''')
+        instance = clazz.Create.With(name: "bla")
+
+        when:
+        def result = roundTrip(instance)
+
+        then:
+        result.name == instance.name
+    }
+
+    def "streams written against a different class layout are rejected"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                int count
+            }
+        ''')
+        instance = clazz.Create.With(name: "bla", count: 3)
+        def bytes = new ByteArrayOutputStream()
+        KlumBinaryCodec.encode(instance, bytes)
+
+        and:
+        def changedLoader = new GroovyClassLoader(loader.parent, compilerConfiguration)
+        def changedClass = changedLoader.parseClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                long count
+            }
+        ''')
+
+        when:
+        KlumBinaryCodec.decode(changedClass, new ByteArrayInputStream(bytes.toByteArray()), changedLoader)
+
+        then:
+        thrown(InvalidClassException)
+    }
+
+    def "codec is used for snapshots"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+            }
+        ''')
+        instance = clazz.Create.With(name: "bla")
+        def bytes = new ByteArrayOutputStream()
+
+        when:
+        ModelSnapshot.write(instance, bytes)
+
+        then:
+        new String(bytes.toByteArray(), "ISO-8859-1").contains(KlumBinaryCodec.NAME)
+
+        when:
+        def result = ModelSnapshot.read(clazz, new ByteArrayInputStream(bytes.toByteArray()), loader)
+
+        then:
+        result.name == "bla"
+    }
+
+    def "snapshots from the classpath are frozen if freezing is enabled"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                Bar bar
+            }
+
+            @DSL
+            class Bar {
+                String value
+            }
+        ''')
+        def classPathRoot = tempFolder.newFolder()
+        def snapshot = new File(classPathRoot, ModelSnapshot.resourcePathFor(clazz))
+        snapshot.parentFile.mkdirs()
+        snapshot.withOutputStream {
+            ModelSnapshot.write(clazz.Create.With(name: "bla") { bar(value: "x") }, it)
+        }
+        loader.addURL(classPathRoot.toURI().toURL())
+
+        when:
+        FreezePhase.enabled = true
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        KlumInstanceProxy.getProxyFor(instance).frozen
+        KlumInstanceProxy.getProxyFor(instance.bar).frozen
+
+        when:
+        FreezePhase.enabled = false
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        instance.name == "bla"
+        !KlumInstanceProxy.getProxyFor(instance).frozen
+
+        cleanup:
+        FreezePhase.enabled = false
+    }
+
+    def "indexed models are read lazily"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                Map<String, Env> envs
+                List<Env> favorites
+            }
+
+            @DSL
+            class Env {
+                @Owner Foo foo
+                @Key String name
+                String value
+            }
+        ''')
+        instance = clazz.Create.With {
+            name "root"
+            envs {
+                env("prod") { value "p" }
+                env("dev") { value "d" }
+                env("test") { value "t" }
+            }
+        }
+        instance.@favorites = [instance.envs.dev]
+        def file = File.createTempFile("model", ".klmi")
+        file.deleteOnExit()
+        file.withOutputStream { KlumBinaryCodec.encodeIndexed(instance, it) }
+
+        when:
+        def model = IndexedModel.open(file.toPath(), loader)
+        def result = model.root
+
+        then:
+        result.name == "root"
+        result.envs.keySet().toList() == ["prod", "dev", "test"]
+        loadedObjects(model) == 1
+
+        when:
+        def prod = result.envs.prod
+
+        then:
+        prod.value == "p"
+        prod.foo.is(result)
+        loadedObjects(model) == 2
+
+        and:
+        result.favorites[0].is(result.envs.dev)
+        result.envs.test.value == "t"
+        loadedObjects(model) == 4
+    }
+
+    def "lazily read models can be read through the codec"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Map<String, Env> envs
+            }
+
+            @DSL
+            class Env {
+                @Key String name
+                String value
+            }
+        ''')
+        instance = clazz.Create.With {
+            envs {
+                env("prod") { value "p" }
+            }
+        }
+        def file = File.createTempFile("model", ".klmi")
+        file.deleteOnExit()
+        file.withOutputStream { KlumBinaryCodec.encodeIndexed(instance, it) }
+
+        when:
+        def result = KlumBinaryCodec.decodeLazily(clazz, file.toPath(), loader)
+
+        then:
+        result == instance
+        result.envs.prod.value == "p"
+    }
+
+    def "objects of indexed models are read only once when accessed concurrently"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Map<String, Env> envs
+            }
+
+            @DSL
+            class Env {
+                @Owner Foo foo
+                @Key String name
+                String value
+            }
+        ''')
+        instance = clazz.Create.With {
+            envs {
+                (1..50).each { i -> env("env$i") { value "value$i" } }
+            }
+        }
+        def file = File.createTempFile("model", ".klmi")
+        file.deleteOnExit()
+        file.withOutputStream { KlumBinaryCodec.encodeIndexed(instance, it) }
+        def model = IndexedModel.open(file.toPath(), loader)
+        def root = model.root
+        def start = new CountDownLatch(1)
+
+        when:
+        def reads = (1..8).collect {
+            def result = []
+            def thread = Thread.start {
+                start.await()
+                root.envs.values().each { result << it }
+            }
+            [thread, result]
+        }
+        start.countDown()
+        reads.each { it[0].join() }
+
+        then:
+        reads.every { it[1].size() == 50 }
+        reads.every { read -> (0..<50).every { read[1][it].is(reads[0][1][it]) } }
+        reads[0][1].every { it.foo.is(root) && it.value == "value${it.name - "env"}" }
+        loadedObjects(model) == 51
+    }
+
+    def "buffer input reads lines as specified by DataInput"() {
+        given:
+        def input = new BufferInput(ByteBuffer.wrap("first\r\nsecond\rthird\nlast".bytes), 0)
+
+        expect:
+        input.readLine() == "first"
+        input.readLine() == "second"
+        input.readLine() == "third"
+        input.readLine() == "last"
+        input.readLine() == null
+    }
+
+    int loadedObjects(IndexedModel model) {
+        model.@objects.count { it != null }
+    }
+}
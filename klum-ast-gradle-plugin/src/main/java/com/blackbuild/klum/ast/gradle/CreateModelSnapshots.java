@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+
+/**
+ * Runs the top level scripts of a model project and writes snapshots of the resulting models.
+ * Disabled snapshots result in an empty output directory.
+ */
+public abstract class CreateModelSnapshots extends DefaultTask {
+
+    static final String SNAPSHOT_WRITER = "com.blackbuild.klum.ast.util.ModelSnapshot";
+
+    @Input
+    public abstract Property<Boolean> getSnapshotsEnabled();
+
+    @Input
+    public abstract ListProperty<String> getModelTypes();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void createModelSnapshots() {
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        getFileSystemOperations().delete(spec -> spec.delete(outputDirectory));
+        if (!getSnapshotsEnabled().get() || getModelTypes().get().isEmpty())
+            return;
+
+        getExecOperations().javaexec(spec -> {
+            spec.classpath(getClasspath());
+            spec.getMainClass().set(SNAPSHOT_WRITER);
+            spec.args(outputDirectory.getAbsolutePath());
+            spec.args(getModelTypes().get());
+        });
+    }
+}
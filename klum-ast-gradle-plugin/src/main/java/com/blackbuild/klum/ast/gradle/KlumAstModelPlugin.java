@@ -25,9 +25,13 @@ package com.blackbuild.klum.ast.gradle;
 
 import org.gradle.api.NonNullApi;
 import org.gradle.api.file.Directory;
+import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.jvm.tasks.Jar;
 import org.gradle.language.jvm.tasks.ProcessResources;
 
 @NonNullApi
@@ -51,6 +55,17 @@ public class KlumAstModelPlugin extends AbstractKlumPlugin<KlumModelExtension> {
         project.getTasks().named("processResources", ProcessResources.class, task ->
                 task.from(createModelDescriptors, copySpec -> copySpec.into("META-INF/klum-model")));
 
+        extension.getSnapshots().convention(false);
+        SourceSet main = project.getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        TaskProvider<CreateModelSnapshots> createModelSnapshots = project.getTasks().register("createModelSnapshots", CreateModelSnapshots.class, task -> {
+            task.getSnapshotsEnabled().convention(extension.getSnapshots());
+            task.getModelTypes().convention(extension.getTopLevelScripts().keySet());
+            task.getClasspath().from(main.getRuntimeClasspath());
+            task.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("modelSnapshots"));
+        });
+        project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class, task ->
+                task.from(createModelSnapshots, copySpec -> copySpec.into("META-INF/klum-model")));
+
         JavaPluginExtension java = project.getExtensions().getByType(JavaPluginExtension.class);
         java.withSourcesJar();
         // no javadoc, script only library
@@ -25,6 +25,7 @@ package com.blackbuild.klum.ast.gradle;
 
 import org.gradle.api.Action;
 import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Nested;
 
 public abstract class KlumModelExtension extends KlumExtension {
@@ -38,6 +39,12 @@ public abstract class KlumModelExtension extends KlumExtension {
         getTopLevelScripts().put(modelType, script);
     }
 
+    /**
+     * If set to true, the top level scripts are executed at build time and snapshots of the resulting
+     * models are included in the jar. Defaults to false.
+     */
+    public abstract Property<Boolean> getSnapshots();
+
     public void schemas(Action<? super SchemaDependencies> action) {
         action.execute(getSchemas());
     }
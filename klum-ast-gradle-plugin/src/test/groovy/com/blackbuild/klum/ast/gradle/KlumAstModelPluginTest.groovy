@@ -27,6 +27,7 @@ package com.blackbuild.klum.ast.gradle
 import org.gradle.api.Project
 import org.gradle.api.plugins.GroovyPlugin
 import org.gradle.api.plugins.JavaLibraryPlugin
+import org.gradle.jvm.tasks.Jar
 import org.gradle.language.jvm.tasks.ProcessResources
 import org.gradle.testfixtures.ProjectBuilder
 import spock.lang.Specification
@@ -105,4 +106,43 @@ class KlumAstModelPluginTest extends Specification {
 
     }
 
+    def "model snapshots are disabled by default"() {
+        given:
+        project = ProjectBuilder.builder().build()
+
+        when:
+        project.getPluginManager().apply(KlumAstModelPlugin)
+        project.klumModel {
+            topLevelScript "com.blackbuild.klum.demo.schema.Home", "model.MyHome"
+        }
+        CreateModelSnapshots task = project.tasks.getByName("createModelSnapshots")
+
+        then:
+        !task.snapshotsEnabled.get()
+        task.modelTypes.get() == ["com.blackbuild.klum.demo.schema.Home"]
+    }
+
+    def "model snapshots are included in the jar"() {
+        given:
+        project = ProjectBuilder.builder().build()
+
+        when:
+        project.getPluginManager().apply(KlumAstModelPlugin)
+        project.klumModel {
+            topLevelScript "com.blackbuild.klum.demo.schema.Home", "model.MyHome"
+            snapshots = true
+        }
+        CreateModelSnapshots task = project.tasks.getByName("createModelSnapshots")
+
+        then:
+        task.snapshotsEnabled.get()
+
+        when:
+        Jar jar = project.tasks.getByName("jar")
+        def innerSpec = jar.mainSpec.children.find { it.destinationDir.toString() == "META-INF/klum-model" }
+
+        then:
+        innerSpec.sourcePaths.first().name == task.name
+        innerSpec.sourcePaths.first().type == CreateModelSnapshots
+    }
 }
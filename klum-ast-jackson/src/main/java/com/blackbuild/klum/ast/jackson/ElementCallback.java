@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.jackson;
+
+/**
+ * Callback for elements of model collections and maps that are deserialized element by element. The callback is
+ * registered as attribute of the reader, e.g.
+ * <pre><code>
+ * mapper.readerFor(Config).withAttribute(ElementCallback.ATTRIBUTE, { owner, property, element -&gt; ... })
+ * </code></pre>
+ * Each element is passed to the callback directly after it has been read. If the callback returns false, the element
+ * is dropped instead of being added to the collection, which allows huge collections to be processed without keeping
+ * them in memory.
+ */
+@FunctionalInterface
+public interface ElementCallback {
+
+    /** Name of the reader attribute holding the callback. */
+    String ATTRIBUTE = ElementCallback.class.getName();
+
+    /**
+     * Handles a deserialized element.
+     * @param owner the object containing the collection or map
+     * @param property the name of the collection or map property
+     * @param element the deserialized element
+     * @return true if the element should be added to the collection or map, false if it should be dropped
+     */
+    boolean accept(Object owner, String property, Object element);
+}
@@ -25,10 +25,38 @@ package com.blackbuild.klum.ast.jackson;
 
 import com.blackbuild.groovy.configdsl.transform.Owner;
 import com.blackbuild.groovy.configdsl.transform.Role;
+import com.blackbuild.klum.ast.util.DslHelper;
+import com.blackbuild.klum.ast.util.TypeRegistry;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
+import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
 import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.introspect.ObjectIdInfo;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class KlumAnnotationIntrospector extends JacksonAnnotationIntrospector {
+
+    private final boolean keysAsObjectIds;
+
+    public KlumAnnotationIntrospector() {
+        this(false);
+    }
+
+    public KlumAnnotationIntrospector(boolean keysAsObjectIds) {
+        this.keysAsObjectIds = keysAsObjectIds;
+    }
+
     @Override
     public boolean hasIgnoreMarker(AnnotatedMember m) {
         if (m.hasAnnotation(Owner.class))
@@ -42,4 +70,65 @@ public class KlumAnnotationIntrospector extends JacksonAnnotationIntrospector {
 
         return super.hasIgnoreMarker(m);
     }
+
+    /**
+     * If enabled (see {@link KlumAstModule#useKeysAsObjectIds()}), keyed model objects use their key as object id, so
+     * that an object referenced from several places (for example via {@code @LinkTo}) is only serialized in full at its
+     * first occurrence and written as its key afterwards. The scope is the class declaring the key field, i.e. keys must
+     * be unique per keyed hierarchy, a duplicate key fails the deserialization.
+     */
+    @Override
+    public ObjectIdInfo findObjectIdInfo(Annotated ann) {
+        ObjectIdInfo declared = super.findObjectIdInfo(ann);
+        if (declared != null || !keysAsObjectIds || !(ann instanceof AnnotatedClass) || !DslHelper.isDslType(ann.getRawType()))
+            return declared;
+
+        return DslHelper.getKeyField(ann.getRawType())
+                .map(key -> new ObjectIdInfo(
+                        PropertyName.construct(key.getName()),
+                        key.getDeclaringClass(),
+                        ObjectIdGenerators.PropertyGenerator.class,
+                        SimpleObjectIdResolver.class))
+                .orElse(null);
+    }
+
+    /**
+     * Provides the subtypes known to the {@link TypeRegistry} for polymorphic model classes (annotated with
+     * {@code JsonTypeInfo}) that do not declare their subtypes themselves, i.e. have neither {@code JsonSubTypes}
+     * nor {@code JsonTypeName}. The subtypes are written with Jackson's default type ids (or their declared
+     * {@code JsonTypeName}), the names of the registry are only accepted as additional ids when reading.
+     */
+    @Override
+    public List<NamedType> findSubtypes(Annotated a) {
+        List<NamedType> declared = super.findSubtypes(a);
+        if (declared != null || !(a instanceof AnnotatedClass) || !DslHelper.isDslType(a.getRawType()) || a.hasAnnotation(JsonTypeName.class))
+            return declared;
+
+        Map<String, Class<?>> known = TypeRegistry.getKnownSubtypes(a.getRawType());
+        if (known.isEmpty())
+            return null;
+
+        // Jackson writes the first id of a type, so the default ids must come first
+        List<NamedType> result = new ArrayList<>();
+        Set<String> defaultIds = new HashSet<>();
+        for (Class<?> type : new LinkedHashSet<>(known.values())) {
+            String id = defaultTypeId(type);
+            defaultIds.add(id);
+            result.add(new NamedType(type, id));
+        }
+        known.forEach((name, type) -> {
+            if (!defaultIds.contains(name))
+                result.add(new NamedType(type, name));
+        });
+        return result;
+    }
+
+    // the declared type name or the unqualified class name, like Jackson's default for JsonTypeInfo.Id.NAME
+    private static String defaultTypeId(Class<?> type) {
+        JsonTypeName declared = type.getAnnotation(JsonTypeName.class);
+        if (declared != null && !declared.value().isEmpty())
+            return declared.value();
+        String name = type.getName();
+        return name.substring(Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1);
+    }
 }
@@ -23,21 +23,39 @@
  */
 package com.blackbuild.klum.ast.jackson;
 
+import com.blackbuild.groovy.configdsl.transform.KlumGenerated;
+import com.blackbuild.groovy.configdsl.transform.Owner;
+import com.blackbuild.groovy.configdsl.transform.Role;
 import com.blackbuild.klum.ast.util.DslHelper;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.BeanDescription;
 import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
 import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
 import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
 import com.fasterxml.jackson.databind.deser.ValueInstantiator;
 import com.fasterxml.jackson.databind.deser.ValueInstantiators;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
 import com.fasterxml.jackson.databind.introspect.BasicBeanDescription;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.util.ClassUtil;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.stream.Collectors;
@@ -47,6 +65,26 @@ public class KlumAstModule extends Module {
 
     public static final String MODULE_NAME = "KlumAST";
 
+    /**
+     * Name of the reader attribute that activates the Klum phases for deserialized models. If set to {@code true}, all
+     * phases (defaults, owners, links, validation, ...) are run once for the complete tree after it has been read.
+     */
+    public static final String RUN_PHASES = KlumAstModule.class.getName() + ".runPhases";
+
+    private boolean keysAsObjectIds;
+
+    /**
+     * Uses the keys of keyed model objects as object ids, so that an object referenced from several places is only
+     * written in full once and resolved to the same instance on deserialization. Disabled by default, since keys only
+     * need to be unique inside their owning collection; with object ids enabled, a document containing different
+     * objects of the same keyed hierarchy with the same key cannot be read.
+     * @return this module
+     */
+    public KlumAstModule useKeysAsObjectIds() {
+        keysAsObjectIds = true;
+        return this;
+    }
+
     @Override
     public String getModuleName() {
         return MODULE_NAME;
@@ -61,7 +99,8 @@ public class KlumAstModule extends Module {
     public void setupModule(SetupContext context) {
         context.addValueInstantiators(new KlumValueInstantiators());
         context.addBeanDeserializerModifier(new KlumDeserializerModifier());
-        context.insertAnnotationIntrospector(new KlumAnnotationIntrospector());
+        context.addBeanSerializerModifier(new KlumSerializerModifier());
+        context.insertAnnotationIntrospector(new KlumAnnotationIntrospector(keysAsObjectIds));
     }
 
     public static class KlumValueInstantiators extends ValueInstantiators.Base {
@@ -78,8 +117,7 @@ public class KlumAstModule extends Module {
         @Override
         public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDesc, BeanDeserializerBuilder builder) {
 
-            Optional<Field> key = DslHelper.getKeyField(beanDesc.getBeanClass());
-            if (key.isEmpty())
+            if (!DslHelper.isDslType(beanDesc.getBeanClass()))
                 return builder;
 
             Spliterator<SettableBeanProperty> spliterator = Spliterators.spliteratorUnknownSize(builder.getProperties(), Spliterator.ORDERED);
@@ -91,5 +129,76 @@ public class KlumAstModule extends Module {
 
             return builder;
         }
+
+        @Override
+        public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+            if (!DslHelper.isDslType(beanDesc.getBeanClass()))
+                return deserializer;
+            return new KlumPhaseDeserializer(deserializer);
+        }
+    }
+
+    /**
+     * Replaces the getter based writers of model properties by {@link KlumFieldPropertyWriter}s reading the
+     * fields directly. Owner and role fields are skipped based on the field itself. Unless an explicit order is
+     * configured, the properties are written in the order the fields are declared in the model hierarchy,
+     * followed by properties without backing field.
+     */
+    public static class KlumSerializerModifier extends BeanSerializerModifier {
+        @Override
+        public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+            if (!DslHelper.isDslType(beanDesc.getBeanClass()) || !config.canOverrideAccessModifiers())
+                return beanProperties;
+
+            Map<String, Field> fields = getDeclaredFields(beanDesc.getBeanClass());
+            Map<String, String> internalNames = beanDesc.findProperties().stream()
+                    .collect(Collectors.toMap(BeanPropertyDefinition::getName, BeanPropertyDefinition::getInternalName, (a, b) -> a));
+
+            List<BeanPropertyWriter> result = new ArrayList<>(beanProperties.size());
+            for (BeanPropertyWriter writer : beanProperties) {
+                Field field = fields.get(internalNames.getOrDefault(writer.getName(), writer.getName()));
+                if (field == null) {
+                    result.add(writer);
+                } else if (!field.isAnnotationPresent(Owner.class) && !field.isAnnotationPresent(Role.class)) {
+                    result.add(isGeneratedAccessor(writer.getMember()) ? createFieldWriter(writer, field) : writer);
+                }
+            }
+
+            if (hasExplicitOrder(config, beanDesc))
+                return result;
+
+            List<String> declaredOrder = new ArrayList<>(fields.keySet());
+            result.sort(Comparator.comparingInt(writer -> {
+                int index = declaredOrder.indexOf(internalNames.getOrDefault(writer.getName(), writer.getName()));
+                return index >= 0 ? index : Integer.MAX_VALUE;
+            }));
+            return result;
+        }
+
+        private static Map<String, Field> getDeclaredFields(Class<?> type) {
+            Map<String, Field> result = new LinkedHashMap<>();
+            for (Class<?> layer : DslHelper.getDslHierarchyOf(type))
+                for (Field field : layer.getDeclaredFields())
+                    if (!field.isSynthetic() && !Modifier.isStatic(field.getModifiers()) && !field.getName().contains("$"))
+                        result.put(field.getName(), field);
+            return result;
+        }
+
+        // user defined getters are still called, only the property getters generated by KlumAST are skipped
+        private static boolean isGeneratedAccessor(AnnotatedMember member) {
+            if (member instanceof AnnotatedField)
+                return true;
+            return member instanceof AnnotatedMethod && member.getAnnotated().isAnnotationPresent(KlumGenerated.class);
+        }
+
+        private static BeanPropertyWriter createFieldWriter(BeanPropertyWriter writer, Field field) {
+            ClassUtil.checkAndFixAccess(field, true);
+            return new KlumFieldPropertyWriter(writer, field);
+        }
+
+        private static boolean hasExplicitOrder(SerializationConfig config, BeanDescription beanDesc) {
+            return config.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                    || beanDesc.getClassAnnotations().has(JsonPropertyOrder.class);
+        }
     }
 }
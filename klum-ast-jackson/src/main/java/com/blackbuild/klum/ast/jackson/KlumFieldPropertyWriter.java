@@ -0,0 +1,43 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.jackson;
+
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+
+import java.lang.reflect.Field;
+
+/**
+ * Serializes a property of a model object by reading its field instead of calling the generated getter. The
+ * getter would route the value through the {@link com.blackbuild.klum.ast.util.KlumInstanceProxy} and wrap
+ * collections and maps into read-only views, which is not necessary for serialization.
+ */
+public class KlumFieldPropertyWriter extends BeanPropertyWriter {
+
+    protected KlumFieldPropertyWriter(BeanPropertyWriter base, Field field) {
+        super(base);
+        // BeanPropertyWriter reads the value from _field if no accessor method is set
+        _accessorMethod = null;
+        _field = field;
+    }
+}
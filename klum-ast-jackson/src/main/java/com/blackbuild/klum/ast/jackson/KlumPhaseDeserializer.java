@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.jackson;
+
+import com.blackbuild.klum.ast.process.PhaseDriver;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs the Klum phases for a deserialized model if the {@link KlumAstModule#RUN_PHASES} attribute is set. The
+ * outermost model object read by the current call opens a single phase scope, all phases are run once for the
+ * complete tree after it has been read. Nested objects are read without any phase handling.
+ */
+public class KlumPhaseDeserializer extends DelegatingDeserializer {
+
+    // marks the outermost model object of the current call
+    private static final String ROOT_ATTRIBUTE = KlumPhaseDeserializer.class.getName() + ".root";
+
+    public KlumPhaseDeserializer(JsonDeserializer<?> delegate) {
+        super(delegate);
+    }
+
+    @Override
+    protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegatee) {
+        return new KlumPhaseDeserializer(newDelegatee);
+    }
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!isRoot(ctxt))
+            return _delegatee.deserialize(p, ctxt);
+        return readWithPhases(ctxt, () -> _delegatee.deserialize(p, ctxt));
+    }
+
+    @Override
+    public Object deserializeWithType(JsonParser p, DeserializationContext ctxt, TypeDeserializer typeDeserializer) throws IOException {
+        if (!isRoot(ctxt))
+            return _delegatee.deserializeWithType(p, ctxt, typeDeserializer);
+        return readWithPhases(ctxt, () -> _delegatee.deserializeWithType(p, ctxt, typeDeserializer));
+    }
+
+    private static boolean isRoot(DeserializationContext ctxt) {
+        return Boolean.TRUE.equals(ctxt.getAttribute(KlumAstModule.RUN_PHASES)) && ctxt.getAttribute(ROOT_ATTRIBUTE) == null;
+    }
+
+    private static Object readWithPhases(DeserializationContext ctxt, Reader reader) throws IOException {
+        ctxt.setAttribute(ROOT_ATTRIBUTE, Boolean.TRUE);
+        try {
+            return PhaseDriver.withPhase(() -> {
+                try {
+                    return reader.read();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            ctxt.setAttribute(ROOT_ATTRIBUTE, null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Reader {
+        Object read() throws IOException;
+    }
+}
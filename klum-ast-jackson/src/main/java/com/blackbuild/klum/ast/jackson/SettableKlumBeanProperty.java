@@ -23,16 +23,41 @@
  */
 package com.blackbuild.klum.ast.jackson;
 
+import com.blackbuild.klum.ast.util.DslHelper;
 import com.blackbuild.klum.ast.util.KlumInstanceProxy;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
 import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.UnresolvedForwardReference;
+import com.fasterxml.jackson.databind.deser.impl.ReadableObjectId;
+import com.fasterxml.jackson.databind.deser.std.ContainerDeserializerBase;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import org.codehaus.groovy.reflection.CachedField;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import static java.lang.String.format;
+
+/**
+ * Sets deserialized values of model objects. Values are written directly to the field using the cached field
+ * metadata of the model class, without breadcrumbs and dynamic dispatch. Only properties without a backing
+ * field (i.e. virtual setters) and frozen objects are handled by the {@link KlumInstanceProxy}.
+ * <p>Collections and maps of model objects are read element by element directly into the container of the field,
+ * each element being passed to an optional {@link ElementCallback}.</p>
+ */
 public class SettableKlumBeanProperty extends SettableBeanProperty.Delegating {
 
+    // resolved on first use, deserializer properties belong to a single bean class
+    private volatile Accessors accessors;
+
     protected SettableKlumBeanProperty(SettableBeanProperty delegate) {
         super(delegate);
     }
@@ -49,6 +74,9 @@ public class SettableKlumBeanProperty extends SettableBeanProperty.Delegating {
 
     @Override
     public Object deserializeSetAndReturn(JsonParser p, DeserializationContext ctxt, Object instance) throws IOException {
+        if (streamElements(p, ctxt, instance))
+            return instance;
+
         Object value;
         if (p.hasToken(JsonToken.VALUE_NULL)) {
             return null;
@@ -70,11 +98,151 @@ public class SettableKlumBeanProperty extends SettableBeanProperty.Delegating {
 
     @Override
     public Object setAndReturn(Object instance, Object value) throws IOException {
+        Accessors current = getAccessors(instance);
         try {
-            KlumInstanceProxy.getProxyFor(instance).setSingleField(getName(), value);
+            if (current.field == null || current.getProxy(instance).isFrozen())
+                KlumInstanceProxy.getProxyFor(instance).setSingleField(getName(), value);
+            else
+                current.field.setProperty(instance, value);
         } catch (Exception e) {
-            _throwAsIOE(e, value);
+            _throwAsIOE(new IllegalArgumentException(format("Could not set '%s' of %s: %s", getName(), describe(instance), e.getMessage()), e), value);
         }
         return instance;
     }
+
+    // collections and maps of model objects are filled element by element instead of materializing the whole container
+    @SuppressWarnings("unchecked")
+    private boolean streamElements(JsonParser p, DeserializationContext ctxt, Object instance) throws IOException {
+        JavaType type = getType();
+        if (_valueTypeDeserializer != null || !type.isContainerType() || !DslHelper.isDslType(type.getContentType().getRawClass()))
+            return false;
+        if (!(_valueDeserializer instanceof ContainerDeserializerBase))
+            return false;
+
+        Accessors current = getAccessors(instance);
+        if (current.field == null || current.getProxy(instance).isFrozen())
+            return false;
+
+        Object container = current.field.getProperty(instance);
+        if (container instanceof Collection && p.hasToken(JsonToken.START_ARRAY))
+            streamCollection(p, ctxt, instance, (Collection<Object>) container);
+        else if (container instanceof Map && p.hasToken(JsonToken.START_OBJECT))
+            streamMap(p, ctxt, instance, (Map<Object, Object>) container);
+        else
+            return false;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamCollection(JsonParser p, DeserializationContext ctxt, Object instance, Collection<Object> target) throws IOException {
+        ElementReader reader = new ElementReader(ctxt, instance);
+        target.clear();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            Object element;
+            try {
+                element = reader.read(p);
+            } catch (UnresolvedForwardReference reference) {
+                if (target instanceof List) {
+                    int index = target.size();
+                    target.add(null);
+                    attachWhenResolved(reference, value -> ((List<Object>) target).set(index, value));
+                } else {
+                    attachWhenResolved(reference, target::add);
+                }
+                continue;
+            }
+            if (reader.accept(element))
+                target.add(element);
+        }
+    }
+
+    private void streamMap(JsonParser p, DeserializationContext ctxt, Object instance, Map<Object, Object> target) throws IOException {
+        ElementReader reader = new ElementReader(ctxt, instance);
+        KeyDeserializer keyDeserializer = ctxt.findKeyDeserializer(getType().getKeyType(), this);
+        target.clear();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            Object key = keyDeserializer.deserializeKey(name, ctxt);
+            p.nextToken();
+            Object element;
+            try {
+                element = reader.read(p);
+            } catch (UnresolvedForwardReference reference) {
+                attachWhenResolved(reference, value -> target.put(key, value));
+                continue;
+            }
+            if (reader.accept(element))
+                target.put(key, element);
+        }
+    }
+
+    // references to objects defined later in the document are attached once the object is read, bypassing the callback
+    private void attachWhenResolved(UnresolvedForwardReference reference, Consumer<Object> attach) {
+        reference.getRoid().appendReferring(new ReadableObjectId.Referring(reference, getType().getContentType()) {
+            @Override
+            public void handleResolvedForwardReference(Object id, Object value) {
+                attach.accept(value);
+            }
+        });
+    }
+
+    private Accessors getAccessors(Object instance) {
+        Accessors result = accessors;
+        if (result == null) {
+            result = new Accessors(instance.getClass(), getName());
+            accessors = result;
+        }
+        return result;
+    }
+
+    // the breadcrumb path is only rendered in case of an error
+    private static String describe(Object instance) {
+        String path = KlumInstanceProxy.getProxyFor(instance).getBreadcrumbPath();
+        return path != null ? instance.getClass().getName() + " at " + path : instance.getClass().getName();
+    }
+
+    private final class ElementReader {
+        private final DeserializationContext ctxt;
+        private final Object owner;
+        private final JsonDeserializer<Object> deserializer;
+        private final TypeDeserializer typeDeserializer;
+        private final ElementCallback callback;
+
+        @SuppressWarnings("unchecked")
+        private ElementReader(DeserializationContext ctxt, Object owner) throws IOException {
+            this.ctxt = ctxt;
+            this.owner = owner;
+            JavaType contentType = getType().getContentType();
+            deserializer = (JsonDeserializer<Object>) ((ContainerDeserializerBase<?>) _valueDeserializer).getContentDeserializer();
+            typeDeserializer = ctxt.getFactory().findTypeDeserializer(ctxt.getConfig(), contentType);
+            callback = (ElementCallback) ctxt.getAttribute(ElementCallback.ATTRIBUTE);
+        }
+
+        Object read(JsonParser p) throws IOException {
+            if (p.hasToken(JsonToken.VALUE_NULL))
+                return deserializer.getNullValue(ctxt);
+            if (typeDeserializer == null)
+                return deserializer.deserialize(p, ctxt);
+            return deserializer.deserializeWithType(p, ctxt, typeDeserializer);
+        }
+
+        boolean accept(Object element) {
+            return callback == null || callback.accept(owner, getName(), element);
+        }
+    }
+
+    private static final class Accessors {
+        private final CachedField field;
+        private final CachedField proxyField;
+
+        private Accessors(Class<?> type, String name) {
+            field = DslHelper.getCachedField(type, name).orElse(null);
+            proxyField = DslHelper.getCachedField(type, KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS).orElse(null);
+        }
+
+        KlumInstanceProxy getProxy(Object instance) {
+            if (proxyField == null)
+                return KlumInstanceProxy.getProxyFor(instance);
+            return (KlumInstanceProxy) proxyField.getProperty(instance);
+        }
+    }
 }
@@ -24,6 +24,9 @@
 package com.blackbuild.klum.ast.jackson
 
 import com.blackbuild.groovy.configdsl.transform.AbstractDSLSpec
+import com.blackbuild.klum.ast.process.PhaseDriver
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
+import com.fasterxml.jackson.databind.JsonMappingException
 import com.fasterxml.jackson.databind.ObjectMapper
 import org.intellij.lang.annotations.Language
 
@@ -122,4 +125,357 @@ class JsonExportSpec extends AbstractDSLSpec {
         deserialized == instance
     }
 
-}
\ No newline at end of file
+    def "polymorphic deserialization uses known subtypes"() {
+        given:
+        createClass('''
+            package pk
+
+            import com.fasterxml.jackson.annotation.JsonTypeInfo
+
+            @DSL
+            class Foo {
+                Shape shape
+            }
+
+            @DSL
+            @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "@type")
+            abstract class Shape {
+                String color
+            }
+
+            @DSL
+            class Circle extends Shape {
+                int radius
+            }
+        ''')
+
+        when:
+        def deserialized = mapper.readValue('{"shape":{"@type":"circle","color":"red","radius":2}}', getClass("pk.Foo"))
+
+        then:
+        deserialized.shape.getClass() == getClass("pk.Circle")
+        deserialized.shape.radius == 2
+
+        and: 'the default type id is written'
+        mapper.writeValueAsString(deserialized) == '{"shape":{"@type":"Circle","color":"red","radius":2}}'
+    }
+
+    def "documents with default type ids still round-trip"() {
+        given:
+        createClass('''
+            package pk
+
+            import com.fasterxml.jackson.annotation.JsonTypeInfo
+
+            @DSL
+            class Foo {
+                Shape shape
+            }
+
+            @DSL
+            @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "@type")
+            abstract class Shape {
+                String color
+            }
+
+            @DSL
+            class Circle extends Shape {
+                int radius
+            }
+        ''')
+        def json = '{"shape":{"@type":"Circle","color":"red","radius":2}}'
+
+        when:
+        def deserialized = mapper.readValue(json, getClass("pk.Foo"))
+
+        then:
+        deserialized.shape.getClass() == getClass("pk.Circle")
+        mapper.writeValueAsString(deserialized) == json
+    }
+
+    def "declared subtypes are not extended by the registry"() {
+        given:
+        createClass('''
+            package pk
+
+            import com.fasterxml.jackson.annotation.JsonSubTypes
+            import com.fasterxml.jackson.annotation.JsonTypeInfo
+
+            @DSL
+            class Foo {
+                Shape shape
+            }
+
+            @DSL
+            @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "@type")
+            @JsonSubTypes(@JsonSubTypes.Type(value = Circle, name = "round"))
+            abstract class Shape {
+                String color
+            }
+
+            @DSL
+            class Circle extends Shape {
+                int radius
+            }
+        ''')
+
+        when:
+        def deserialized = mapper.readValue('{"shape":{"@type":"round","color":"red","radius":2}}', getClass("pk.Foo"))
+
+        then:
+        deserialized.shape.getClass() == getClass("pk.Circle")
+        mapper.writeValueAsString(deserialized) == '{"shape":{"@type":"round","color":"red","radius":2}}'
+
+        when:
+        mapper.readValue('{"shape":{"@type":"circle","radius":2}}', getClass("pk.Foo"))
+
+        then:
+        thrown(JsonMappingException)
+    }
+
+    def "deserialized values are written to the fields of keyed and unkeyed objects"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                List<Bar> bars
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+                Long size
+            }
+        ''')
+
+        when:
+        def deserialized = mapper.readValue('{"name":"foo","bars":[{"name":"a","size":1},{"name":"b","size":2}]}', getClass("pk.Foo"))
+
+        then:
+        deserialized.name == "foo"
+        deserialized.bars*.name == ["a", "b"]
+        deserialized.bars*.size == [1L, 2L]
+    }
+
+    def "frozen objects cannot be updated by jackson"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+            }
+        ''')
+        instance = clazz.Create.With { name "a" }
+        KlumInstanceProxy.getProxyFor(instance).freeze()
+
+        when:
+        mapper.readerForUpdating(instance).readValue('{"name":"b"}')
+
+        then:
+        thrown(JsonMappingException)
+        instance.name == "a"
+    }
+
+    def "serialization reads fields in declared order and skips owner fields"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Base {
+                String zeta
+            }
+
+            @DSL
+            class Foo extends Base {
+                @Owner Container container
+                String beta
+                List<String> items
+                String custom
+
+                String getCustom() {
+                    "custom-" + custom
+                }
+            }
+
+            @DSL
+            class Container {
+                Foo foo
+            }
+        ''')
+        instance = getClass("pk.Container").Create.With {
+            foo {
+                zeta "z"
+                beta "b"
+                item "i"
+                custom "c"
+            }
+        }
+
+        when:
+        def json = mapper.writeValueAsString(instance.foo)
+
+        then:
+        json == '{"zeta":"z","beta":"b","items":["i"],"custom":"custom-c"}'
+    }
+
+    def "collections of model objects are deserialized element by element"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                List<Bar> bars
+                Map<String, Bar> barMap
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+            }
+        ''')
+        def seen = []
+        ElementCallback callback = { owner, property, element ->
+            seen << "$property:$element.name".toString()
+            element.name != "drop"
+        }
+
+        when:
+        def deserialized = mapper.readerFor(getClass("pk.Foo"))
+                .withAttribute(ElementCallback.ATTRIBUTE, callback)
+                .readValue('{"bars":[{"name":"a"},{"name":"drop"}],"barMap":{"b":{"name":"b"},"drop":{"name":"drop"}}}')
+
+        then:
+        seen == ["bars:a", "bars:drop", "barMap:b", "barMap:drop"]
+        deserialized.bars*.name == ["a"]
+        deserialized.barMap.keySet() == ["b"] as Set
+    }
+
+    def "repeated references to keyed objects are written as keys"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Bar main
+                Map<String, Bar> bars
+                List<Bar> favorites
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+                String value
+            }
+        ''')
+        def json = '{"main":"b","bars":{"a":{"name":"a","value":"1"},"b":{"name":"b","value":"2"}},"favorites":["a","b"]}'
+        mapper = new ObjectMapper().registerModule(new KlumAstModule().useKeysAsObjectIds())
+
+        when:
+        def deserialized = mapper.readValue(json, getClass("pk.Foo"))
+
+        then:
+        deserialized.main.is(deserialized.bars.b)
+        deserialized.favorites[0].is(deserialized.bars.a)
+        deserialized.favorites[1].is(deserialized.bars.b)
+
+        when:
+        def serialized = mapper.writeValueAsString(deserialized)
+
+        then:
+        serialized == '{"main":{"name":"b","value":"2"},"bars":{"a":{"name":"a","value":"1"},"b":"b"},"favorites":["a","b"]}'
+    }
+
+    def "phases are run once for the deserialized tree if requested"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                List<Bar> bars
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+                @Owner Foo foo
+                @Default(code = { name.toUpperCase() }) String label
+            }
+        ''')
+        def json = '{"bars":[{"name":"a"},{"name":"b"}]}'
+
+        when:
+        def plain = mapper.readValue(json, getClass("pk.Foo"))
+
+        then:
+        plain.bars.every { it.foo == null && it.label == null }
+
+        when:
+        def deserialized = mapper.readerFor(getClass("pk.Foo"))
+                .withAttribute(KlumAstModule.RUN_PHASES, true)
+                .readValue(json)
+
+        then:
+        deserialized.bars.every { it.foo.is(deserialized) }
+        deserialized.bars*.label == ["A", "B"]
+        PhaseDriver.getActiveRootObject() == null
+    }
+
+    def "keys are not used as object ids by default"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Map<String, Bar> bars
+                List<Bar> favorites
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+            }
+        ''')
+
+        when:
+        def deserialized = mapper.readValue('{"bars":{"a":{"name":"a"}},"favorites":[{"name":"a"}]}', getClass("pk.Foo"))
+
+        then:
+        !deserialized.favorites[0].is(deserialized.bars.a)
+        mapper.writeValueAsString(deserialized) == '{"bars":{"a":{"name":"a"}},"favorites":[{"name":"a"}]}'
+    }
+
+    def "duplicate keys fail if keys are used as object ids"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Map<String, Bar> bars
+                List<Bar> favorites
+            }
+
+            @DSL
+            class Bar {
+                @Key String name
+            }
+        ''')
+        mapper = new ObjectMapper().registerModule(new KlumAstModule().useKeysAsObjectIds())
+
+        when:
+        mapper.readValue('{"bars":{"a":{"name":"a"}},"favorites":[{"name":"a"}]}', getClass("pk.Foo"))
+
+        then:
+        thrown(JsonMappingException)
+    }
+}
@@ -23,78 +23,177 @@
  */
 package com.blackbuild.klum.ast.process;
 
+import com.blackbuild.klum.ast.util.KlumContext;
 import groovy.lang.Closure;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
+/**
+ * Collects the breadcrumbs of the current model creation, i.e. the path of methods and closures that lead to the
+ * current position in the model scripts.
+ * <p>
+ * Breadcrumb frames are pooled per collector and the paths themselves are only rendered when they are requested.
+ * For production use, breadcrumb collection can be disabled completely, either by setting the system property
+ * {@value #ENABLED_PROPERTY} to {@code false} or by calling {@link #setEnabled(boolean)} before any model is created.
+ * If disabled, exceptions and instances do not carry breadcrumb paths.
+ * </p>
+ */
 public class BreadcrumbCollector {
 
-    // Thread singleton
-    private static final ThreadLocal<BreadcrumbCollector> INSTANCE = new ThreadLocal<>();
+    public static final String ENABLED_PROPERTY = "klum.breadcrumbs.enabled";
+
+    // frames are not recycled if their children map grew beyond this size, to prevent retaining large tables
+    private static final int MAX_POOLED_CHILDREN = 64;
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+
+    // used while breadcrumbs are disabled, never stored in the context
+    private static final BreadcrumbCollector DISABLED = new BreadcrumbCollector(false);
+
+    private static final KlumContext.Key<BreadcrumbCollector> KEY = KlumContext.key("breadcrumbs", BreadcrumbCollector::new, BreadcrumbCollector::forkForPath);
     private final Deque<Breadcrumb> breadcrumbs = new ArrayDeque<>();
+    private final Deque<Breadcrumb> pool = new ArrayDeque<>();
+    private final boolean active;
 
     private String currentVerb;
     private String currentType;
     private String currentQualifier;
     private String context;
-    
+    // path of the next breadcrumb, reserved by the thread that captured this collector
+    private BreadcrumbPath reservedPath;
+
     private BreadcrumbCollector() {
+        this(true);
     }
 
-    private BreadcrumbCollector(String context) {
-        this.context = context;
+    private BreadcrumbCollector(boolean active) {
+        this.active = active;
+    }
+
+    // a captured collector continues the current path of the original collector
+    private static @Nullable BreadcrumbCollector forkForPath(BreadcrumbCollector collector) {
+        BreadcrumbPath path = collector.getCurrentPath();
+        if (path == null)
+            return null;
+        BreadcrumbCollector result = new BreadcrumbCollector();
+        result.context = collector.context;
+        result.breadcrumbs.push(result.obtainFrame(path));
+        return result;
+    }
+
+    /**
+     * Returns whether breadcrumbs are collected.
+     * @return true if breadcrumb collection is enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables breadcrumb collection globally. This should be called before any model is created,
+     * switching in the middle of a model creation leaves the breadcrumbs of that creation in an undefined state.
+     * @param enabled false to disable breadcrumb collection
+     */
+    public static void setEnabled(boolean enabled) {
+        BreadcrumbCollector.enabled = enabled;
     }
 
     public static <T> T withBreadcrumb(Supplier<T> action) {
-        BreadcrumbCollector collector = BreadcrumbCollector.getInstance();
-        try {
-            collector.enter();
-            return action.get();
-        } finally {
-            collector.leave();
-        }
+        return withBreadcrumb(null, null, null, action);
     }
 
     public static <T> T withBreadcrumb(String verb, String type, String qualifier, Supplier<T> action) {
-        BreadcrumbCollector collector = BreadcrumbCollector.getInstance();
-        try {
-            collector.setVerb(verb).setType(type).setQualifier(qualifier).enter();
-            return action.get();
-        } finally {
-            collector.leave();
-        }
+        if (!enabled) return action.get();
+        return KlumContext.withContext(() -> {
+            BreadcrumbCollector collector = BreadcrumbCollector.getInstance();
+            try {
+                collector.setVerb(verb).setType(type).setQualifier(qualifier).enter();
+                return action.get();
+            } finally {
+                collector.leave();
+            }
+        });
     }
 
     public static <T> T withBreadcrumb(Closure<T> action) {
-        BreadcrumbCollector collector = BreadcrumbCollector.getInstance();
-        try {
-            collector.enter();
-            return action.call();
-        } finally {
-            collector.leave();
-        }
+        return withBreadcrumb(null, null, null, action);
     }
+
     public static <T> T withBreadcrumb(String verb, String type, String qualifier, Closure<T> action) {
+        if (!enabled) return action.call();
+        return withBreadcrumb(verb, type, qualifier, (Supplier<T>) action::call);
+    }
+
+    /**
+     * Runs the given action with breadcrumbs continuing the given path. This is used to continue the breadcrumbs
+     * of another thread, for example when creating objects concurrently.
+     *
+     * @param parent the path to continue, if null, the action is run without a parent breadcrumb
+     * @param action the action to run
+     * @return the result of the action
+     */
+    public static <T> T withParentPath(@Nullable BreadcrumbPath parent, Supplier<T> action) {
+        if (!enabled || parent == null) return action.get();
         BreadcrumbCollector collector = BreadcrumbCollector.getInstance();
         try {
-            collector.setVerb(verb).setType(type).setQualifier(qualifier).enter();
-            return action.call();
+            collector.breadcrumbs.push(collector.obtainFrame(parent));
+            return action.get();
         } finally {
             collector.leave();
         }
     }
 
+    /**
+     * Captures the current context for an object that is created in another thread. The breadcrumb of the object
+     * is created in the calling thread, so that quantifiers of identical breadcrumbs are assigned in the order of the
+     * calls, not in the order in which the objects are created. As with {@link #enter()}, values already set for the
+     * next breadcrumb take precedence over the given values and are consumed. The first breadcrumb entered in the
+     * captured context uses the reserved path, regardless of the verb, type and qualifier set there.
+     *
+     * @param verb      the verb of the breadcrumb
+     * @param type      the type of the breadcrumb
+     * @param qualifier the qualifier of the breadcrumb
+     * @return the captured context
+     */
+    public static KlumContext captureForChild(String verb, String type, String qualifier) {
+        KlumContext result = KlumContext.capture();
+        if (!enabled) return result;
+        BreadcrumbCollector collector = KlumContext.peekCurrent(KEY);
+        Breadcrumb parent = collector != null ? collector.breadcrumbs.peek() : null;
+        // root breadcrumbs have no quantifier
+        if (parent == null) return result;
+        collector.setVerb(verb).setType(type).setQualifier(qualifier);
+        BreadcrumbPath.Segment segment = new BreadcrumbPath.Segment(collector.currentVerb, collector.currentType, collector.currentQualifier);
+        collector.clearCurrentCrumb();
+        result.get(KEY).reservedPath = parent.createChildPath(segment);
+        return result;
+    }
+
     public void enter() {
-        if (breadcrumbs.isEmpty())
-            breadcrumbs.push(new Breadcrumb(currentVerb, currentType, currentQualifier));
-        else
-            breadcrumbs.push(breadcrumbs.peek().createChildCrumb(currentVerb, currentType, currentQualifier));
+        if (!active) return;
+        BreadcrumbPath path = reservedPath;
+        if (path != null) {
+            reservedPath = null;
+        } else {
+            BreadcrumbPath.Segment segment = new BreadcrumbPath.Segment(currentVerb, currentType, currentQualifier);
+            Breadcrumb parent = breadcrumbs.peek();
+            path = parent == null ? BreadcrumbPath.root(segment) : parent.createChildPath(segment);
+        }
+        breadcrumbs.push(obtainFrame(path));
         clearCurrentCrumb();
     }
 
+    private Breadcrumb obtainFrame(BreadcrumbPath path) {
+        Breadcrumb frame = pool.poll();
+        if (frame == null)
+            frame = new Breadcrumb();
+        frame.init(path);
+        return frame;
+    }
+
     private void clearCurrentCrumb() {
         currentVerb = null;
         currentType = null;
@@ -102,71 +201,86 @@ public class BreadcrumbCollector {
     }
 
     public static boolean hasInstance() {
-        return INSTANCE.get() != null;
+        return enabled && KlumContext.peekCurrent(KEY) != null;
     }
 
     @NotNull
     public static BreadcrumbCollector getInstance() {
-        if (INSTANCE.get() == null)
-            INSTANCE.set(new BreadcrumbCollector());
-        return INSTANCE.get();
+        if (!enabled)
+            return DISABLED;
+        return KlumContext.current().get(KEY);
     }
 
     @NotNull
     public static BreadcrumbCollector getInstance(String context) {
-        if (INSTANCE.get() == null) {
-            BreadcrumbCollector collector = new BreadcrumbCollector(context);
-            INSTANCE.set(collector);
-        }
-
-        BreadcrumbCollector collector = INSTANCE.get();
+        BreadcrumbCollector collector = getInstance();
         collector.setContext(context);
         return collector;
     }
 
     public void setContext(String context) {
-        if (context == null) return;
+        if (context == null || !active) return;
         if (this.context != null && !this.context.equals(context))
             throw new IllegalStateException("Context mismatch: " + context + " != " + this.context);
         this.context = context;
     }
 
     public void leave() {
-        breadcrumbs.pop();
+        if (!active) return;
+        Breadcrumb frame = breadcrumbs.pop();
+        if (frame.release())
+            pool.push(frame);
+        clearCurrentCrumb();
+        if (breadcrumbs.isEmpty())
+            cleanup();
+    }
+
+    /**
+     * Discards the pending verb, type and qualifier if no object is created for them after all, for example
+     * because the object was read from a snapshot.
+     */
+    public void discardPending() {
+        if (!active) return;
         clearCurrentCrumb();
         if (breadcrumbs.isEmpty())
             cleanup();
     }
 
     void cleanup() {
-        INSTANCE.remove();
+        KlumContext.removeFromCurrent(KEY);
     }
 
     public BreadcrumbCollector setVerb(String verb) {
-        if (currentVerb == null)
+        if (active && currentVerb == null)
             currentVerb = verb;
         return this;
     }
 
     public BreadcrumbCollector setType(String type) {
-        if (currentType == null)
+        if (active && currentType == null)
             currentType = type;
         return this;
     }
 
     public BreadcrumbCollector setQualifier(String qualifier) {
-        if (currentQualifier == null)
+        if (active && currentQualifier == null)
             currentQualifier = qualifier;
         return this;
     }
 
-    // join the paths from tail to head, because the breadcrumbs are stacked in reverse order.
     public String getFullPath() {
-        if (breadcrumbs.isEmpty())
-            return "";
-        StringBuilder sb = new StringBuilder("$");
-        breadcrumbs.descendingIterator().forEachRemaining(b -> sb.append("/").append(b.getPath()));
-        return sb.toString();
+        BreadcrumbPath path = getCurrentPath();
+        return path != null ? path.toString() : "";
+    }
+
+    /**
+     * Returns the unrendered path of the innermost breadcrumb.
+     * @return the current path or null if no breadcrumb is active
+     */
+    @Nullable
+    public BreadcrumbPath getCurrentPath() {
+        Breadcrumb current = breadcrumbs.peek();
+        return current != null ? current.path : null;
     }
 
     @Override
@@ -174,46 +288,42 @@ public class BreadcrumbCollector {
         return "BC: " + breadcrumbs;
     }
 
+    /**
+     * A single (pooled) frame of the breadcrumb stack. The frame keeps track of the number of identical
+     * children to create quantified paths.
+     */
     public static class Breadcrumb {
-        private final Map<String, AtomicInteger> children = new HashMap<>();
-        private String path;
-
-        Breadcrumb(String verb, String type, String qualifier) {
-            this.path = createPath(verb, type, qualifier);
-        }
+        private Map<BreadcrumbPath.Segment, Integer> children;
+        private BreadcrumbPath path;
 
-        private static @NotNull String createPath(String verb, String type, String qualifier) {
-            StringBuilder builder = new StringBuilder();
-            if (verb != null) builder.append(verb);
-            if (type != null) builder.append(":").append(type);
-            if (qualifier != null) builder.append("(").append(qualifier).append(")");
-            return builder.toString();
-        }
-
-        Breadcrumb(String path, int quantifier) {
-            if (quantifier > 1)
-                this.path = path + "[" + quantifier + "]";
-            else
-                this.path = path;
+        void init(BreadcrumbPath path) {
+            this.path = path;
         }
 
-        void changePath(String path) {
-            this.path = path;
+        boolean release() {
+            path = null;
+            if (children == null)
+                return true;
+            if (children.size() > MAX_POOLED_CHILDREN)
+                return false;
+            children.clear();
+            return true;
         }
 
-        Breadcrumb createChildCrumb(String verb, String type, String qualifier) {
-            String basePath = createPath(verb, type, qualifier);
-            int count = children.computeIfAbsent(basePath, p -> new AtomicInteger()).incrementAndGet();
-            return new Breadcrumb(basePath, count);
+        BreadcrumbPath createChildPath(BreadcrumbPath.Segment segment) {
+            if (children == null)
+                children = new HashMap<>();
+            int count = children.merge(segment, 1, Integer::sum);
+            return path.child(segment, count);
         }
 
         public String getPath() {
-            return path;
+            return path.getSegment();
         }
 
         @Override
         public String toString() {
-            return path;
+            return getPath();
         }
     }
-}
\ No newline at end of file
+}
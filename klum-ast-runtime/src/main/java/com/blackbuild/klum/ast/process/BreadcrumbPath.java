@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.process;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Immutable node of a breadcrumb path. Each node only stores its own segment and a reference to its parent,
+ * so nested paths share their common prefix. The textual representation is only rendered when it is actually
+ * requested (usually for exception messages) and cached afterward.
+ * <p>
+ * Serialized paths only keep their rendered form.
+ * </p>
+ */
+public final class BreadcrumbPath implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient BreadcrumbPath parent;
+    private final transient Segment segment;
+    private final int quantifier;
+    private String rendered;
+
+    private BreadcrumbPath(BreadcrumbPath parent, Segment segment, int quantifier) {
+        this.parent = parent;
+        this.segment = segment;
+        this.quantifier = quantifier;
+    }
+
+    private BreadcrumbPath(String rendered) {
+        this(null, null, 1);
+        this.rendered = rendered;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        toString();
+        out.defaultWriteObject();
+    }
+
+    static BreadcrumbPath root(Segment segment) {
+        return new BreadcrumbPath(null, segment, 1);
+    }
+
+    /**
+     * Creates a path node from an already rendered path, used for paths that are set explicitly.
+     * @param path the full path
+     * @return a path node rendering as the given path
+     */
+    public static BreadcrumbPath of(@NotNull String path) {
+        return new BreadcrumbPath(Objects.requireNonNull(path));
+    }
+
+    BreadcrumbPath child(Segment segment, int quantifier) {
+        return new BreadcrumbPath(this, segment, quantifier);
+    }
+
+    /**
+     * Returns a new path that extends this path by the given literal segment.
+     * @param extension the segment to append
+     * @return the extended path
+     */
+    public BreadcrumbPath extend(@NotNull String extension) {
+        return new BreadcrumbPath(this, Segment.literal(extension), 1);
+    }
+
+    /**
+     * Returns the rendered last segment of this path, including its quantifier.
+     * @return the last segment
+     */
+    public String getSegment() {
+        if (segment == null)
+            return rendered;
+        StringBuilder builder = new StringBuilder();
+        appendSegment(builder);
+        return builder.toString();
+    }
+
+    private void appendSegment(StringBuilder builder) {
+        segment.appendTo(builder);
+        if (quantifier > 1)
+            builder.append('[').append(quantifier).append(']');
+    }
+
+    @Override
+    public String toString() {
+        if (rendered == null) {
+            StringBuilder builder = new StringBuilder(parent != null ? parent.toString() : "$");
+            builder.append('/');
+            appendSegment(builder);
+            rendered = builder.toString();
+        }
+        return rendered;
+    }
+
+    /**
+     * The quantifier-less part of a single path element, used to count identical siblings.
+     */
+    static final class Segment {
+        private final String verb;
+        private final String type;
+        private final String qualifier;
+        private final boolean literal;
+
+        Segment(String verb, String type, String qualifier) {
+            this(verb, type, qualifier, false);
+        }
+
+        private Segment(String verb, String type, String qualifier, boolean literal) {
+            this.verb = verb;
+            this.type = type;
+            this.qualifier = qualifier;
+            this.literal = literal;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text, null, null, true);
+        }
+
+        void appendTo(StringBuilder builder) {
+            if (verb != null) builder.append(verb);
+            if (literal) return;
+            if (type != null) builder.append(':').append(type);
+            if (qualifier != null) builder.append('(').append(qualifier).append(')');
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Segment)) return false;
+            Segment other = (Segment) o;
+            return literal == other.literal
+                    && Objects.equals(verb, other.verb)
+                    && Objects.equals(type, other.type)
+                    && Objects.equals(qualifier, other.qualifier);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Objects.hashCode(verb);
+            result = 31 * result + Objects.hashCode(type);
+            return 31 * result + Objects.hashCode(qualifier);
+        }
+    }
+}
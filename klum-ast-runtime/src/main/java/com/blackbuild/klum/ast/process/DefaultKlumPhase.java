@@ -39,7 +39,12 @@ public enum DefaultKlumPhase implements KlumPhase {
     DEFAULT(25),
     POST_TREE(30),
     VALIDATE(50),
-    COMPLETE(100);
+    COMPLETE(100),
+    /**
+     * Rebuilds the hash based sets of the completed model and freezes it, if enabled. Runs after all other phases,
+     * so that these can still change the model.
+     */
+    FREEZE(1000);
     final int number;
 
     DefaultKlumPhase(int number) {
@@ -23,10 +23,15 @@
  */
 package com.blackbuild.klum.ast.process;
 
+import com.blackbuild.klum.ast.util.KlumContext;
+import com.blackbuild.klum.ast.util.ParallelCreation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.ServiceLoader;
 import java.util.TreeSet;
@@ -35,26 +40,43 @@ import java.util.function.Supplier;
 
 public class PhaseDriver {
 
-    private static final ThreadLocal<PhaseDriver> INSTANCE = new ThreadLocal<>();
+    private static final KlumContext.Key<PhaseDriver> KEY = KlumContext.key("phaseDriver", PhaseDriver::new, PhaseDriver::forkForRoot);
 
     @NotNull
     public static PhaseDriver getInstance() {
-        if (INSTANCE.get() == null)
-            INSTANCE.set(new PhaseDriver());
-        return INSTANCE.get();
+        return KlumContext.current().get(KEY);
     }
 
-    private final NavigableSet<PhaseAction> phaseActions = new TreeSet<>(Comparator.comparingInt(PhaseAction::getPhaseNumber));
+    private final NavigableSet<PhaseAction> phaseActions;
 
     private Object rootObject;
     private int activeObjectPointer = 0;
 
     private PhaseAction currentPhase;
+    private Batch batch;
 
     public PhaseDriver() {
+        // actions sharing a phase number are all kept, ordered by their class name
+        phaseActions = new TreeSet<>(Comparator.comparingInt(PhaseAction::getPhaseNumber).thenComparing(action -> action.getClass().getName()));
         ServiceLoader.load(PhaseAction.class).forEach(phaseActions::add);
     }
 
+    private PhaseDriver(PhaseDriver parent) {
+        phaseActions = parent.phaseActions;
+        rootObject = parent.rootObject;
+        // captured contexts belong to the root or batch of the parent, so they never run the phases themselves
+        activeObjectPointer = parent.activeObjectPointer;
+        // roots created in the captured context keep the position of the capture, even if created concurrently
+        if (parent.batch != null && parent.activeObjectPointer == parent.batch.base)
+            batch = parent.batch.reserveSlot();
+        else
+            batch = parent.batch;
+    }
+
+    private static @Nullable PhaseDriver forkForRoot(PhaseDriver driver) {
+        return driver.activeObjectPointer > 0 || driver.batch != null ? new PhaseDriver(driver) : null;
+    }
+
     public static KlumPhase getCurrentPhase() {
         PhaseAction phaseAction = getCurrentPhaseAction();
         return phaseAction == null ? null : phaseAction.getPhase();
@@ -66,7 +88,7 @@ public class PhaseDriver {
     }
 
     private static @Nullable PhaseAction getCurrentPhaseAction() {
-        PhaseDriver phaseDriver = INSTANCE.get();
+        PhaseDriver phaseDriver = KlumContext.peekCurrent(KEY);
         if (phaseDriver == null || phaseDriver.currentPhase == null) return null;
         return phaseDriver.currentPhase;
     }
@@ -76,19 +98,55 @@ public class PhaseDriver {
     }
 
     public static <T> T withPhase(Supplier<T> preparation, Consumer<T> action) {
-        try {
+        return KlumContext.withContext(() -> {
             T result = preparation.get();
             PhaseDriver.enter(result);
-            action.accept(result);
-            PhaseDriver.executeIfReady();
-            return result;
-        } finally {
-            PhaseDriver.leave();
-        }
+            try {
+                action.accept(result);
+                PhaseDriver.executeIfReady();
+                return result;
+            } finally {
+                PhaseDriver.leave();
+            }
+        });
+    }
+
+    /**
+     * Creates a model whose root object is only known after the creation has finished, for example a model read
+     * by a deserializer, and runs the phases for it.
+     * <p>
+     * The creation itself is already part of the phase scope, so objects created in it (even via factories) do not
+     * run their own phases but are handled by the single run of the phases for the returned root object. If a model
+     * is already being created, the returned object belongs to that model instead.
+     * </p>
+     *
+     * @param creation creates the complete model and returns its root object
+     * @return the root object
+     */
+    public static <T> T withPhase(Supplier<T> creation) {
+        return KlumContext.withContext(() -> {
+            PhaseDriver driver = getInstance();
+            boolean root = driver.activeObjectPointer == 0;
+            boolean batchRoot = driver.batch != null && driver.activeObjectPointer == driver.batch.base;
+            driver.activeObjectPointer++;
+            try {
+                T result = creation.get();
+                if (batchRoot)
+                    driver.batch.add(result);
+                if (root)
+                    driver.rootObject = result;
+                PhaseDriver.executeIfReady();
+                return result;
+            } finally {
+                PhaseDriver.leave();
+            }
+        });
     }
 
     public static void enter(Object object) {
         PhaseDriver driver = getInstance();
+        if (driver.batch != null && driver.activeObjectPointer == driver.batch.base)
+            driver.batch.add(object);
         if (driver.activeObjectPointer == 0)
             driver.rootObject = object;
         driver.activeObjectPointer++;
@@ -97,20 +155,151 @@ public class PhaseDriver {
     public static void leave() {
         PhaseDriver driver = getInstance();
         driver.activeObjectPointer--;
-        if (getInstance().activeObjectPointer == 0)
-            INSTANCE.remove();
+        if (driver.activeObjectPointer == 0 && driver.batch == null)
+            KlumContext.removeFromCurrent(KEY);
     }
 
     public static void executeIfReady() {
         PhaseDriver phaseDriver = getInstance();
-        if (phaseDriver.activeObjectPointer != 1) return;
+        if (phaseDriver.activeObjectPointer != 1 || phaseDriver.batch != null) return;
         for (PhaseAction a : phaseDriver.phaseActions) {
             phaseDriver.currentPhase = a;
             a.execute();
         }
     }
 
+    /**
+     * Creates multiple independent models with a single run of the phases.
+     * <p>
+     * The phases of all objects created directly in the given action (i.e. objects that would otherwise be the root of
+     * a separate model) are deferred until the action has finished. Then each phase is run for all of these roots
+     * before the next phase starts, using the same phase actions for all roots. The roots are processed sequentially,
+     * see {@link #batch(Runnable, boolean)} to process them concurrently.
+     * </p>
+     * <p>
+     * If the batch is started while another model is created, the objects created in the batch belong to that
+     * model and the phases are run for the complete model, as usual. A batch inside another batch adds its objects
+     * to the outer batch.
+     * </p>
+     *
+     * @param creation the action creating the objects
+     * @return the objects created directly in the action, in the order of their creation
+     */
+    public static List<Object> batch(Runnable creation) {
+        return batch(creation, false);
+    }
+
+    /**
+     * Creates multiple independent models with a single run of the phases, see {@link #batch(Runnable)}.
+     * <p>
+     * If {@code parallelPhases} is true, the roots of a phase are processed concurrently (see
+     * {@link ParallelCreation}), so phases of different roots must not depend on each other. The flag is ignored for
+     * batches that are part of an enclosing model or batch, their phases are run by the enclosing creation.
+     * </p>
+     *
+     * @param creation       the action creating the objects
+     * @param parallelPhases whether to run the phases of the different roots concurrently
+     * @return the objects created directly in the action, in the order of their creation. Objects created
+     * concurrently (for example by {@link ParallelCreation}) are ordered by their source, not by their completion.
+     */
+    public static List<Object> batch(Runnable creation, boolean parallelPhases) {
+        return KlumContext.withContext(() -> {
+            PhaseDriver driver = getInstance();
+            Batch current = new Batch(driver.activeObjectPointer, driver.batch);
+            driver.batch = current;
+            try {
+                creation.run();
+                List<Object> roots = current.getObjects();
+                if (current.base > 0)
+                    return roots;
+                if (current.outer != null)
+                    roots.forEach(current.outer::add);
+                else
+                    driver.executeBatch(roots, parallelPhases);
+                return roots;
+            } finally {
+                driver.batch = current.outer;
+                if (driver.activeObjectPointer == 0 && driver.batch == null)
+                    KlumContext.removeFromCurrent(KEY);
+            }
+        });
+    }
+
+    // runs the phases phase by phase, the batch is still active, so captured contexts share the phase actions
+    private void executeBatch(List<Object> roots, boolean parallelPhases) {
+        for (PhaseAction action : phaseActions) {
+            if (parallelPhases)
+                ParallelCreation.createAll(roots, root -> getInstance().executeForRoot(action, root));
+            else
+                roots.forEach(root -> executeForRoot(action, root));
+        }
+    }
+
+    private Object executeForRoot(PhaseAction action, Object root) {
+        rootObject = root;
+        activeObjectPointer = 1;
+        currentPhase = action;
+        try {
+            action.execute();
+            return root;
+        } finally {
+            activeObjectPointer = 0;
+            rootObject = null;
+            currentPhase = null;
+        }
+    }
+
     public Object getRootObject() {
         return rootObject;
     }
+
+    /**
+     * Returns the root object of the model that is currently created in the current context.
+     *
+     * @return the root object or null if no model is currently created
+     */
+    public static @Nullable Object getActiveRootObject() {
+        PhaseDriver driver = KlumContext.peekCurrent(KEY);
+        return driver != null && driver.activeObjectPointer > 0 ? driver.rootObject : null;
+    }
+
+    private static final class Batch {
+        private final int base;
+        private final Batch outer;
+        // contains the roots and the slots reserved for captured contexts, in the order of their creation
+        private final List<Object> objects = Collections.synchronizedList(new ArrayList<>());
+
+        private Batch(int base, Batch outer) {
+            this.base = base;
+            this.outer = outer;
+        }
+
+        void add(Object object) {
+            objects.add(object);
+        }
+
+        // objects created in a captured context are collected in a slot at the position of the capture
+        Batch reserveSlot() {
+            Batch slot = new Batch(base, null);
+            objects.add(slot);
+            return slot;
+        }
+
+        List<Object> getObjects() {
+            List<Object> result = new ArrayList<>();
+            collectObjects(result);
+            return result;
+        }
+
+        private void collectObjects(List<Object> result) {
+            synchronized (objects) {
+                for (Object object : objects) {
+                    if (object instanceof Batch)
+                        ((Batch) object).collectObjects(result);
+                    else
+                        result.add(object);
+                }
+            }
+        }
+    }
 }
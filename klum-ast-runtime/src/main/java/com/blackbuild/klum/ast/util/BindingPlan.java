@@ -0,0 +1,438 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import com.blackbuild.groovy.configdsl.transform.FieldType;
+import com.blackbuild.groovy.configdsl.transform.Key;
+import com.blackbuild.groovy.configdsl.transform.Owner;
+import com.blackbuild.groovy.configdsl.transform.Role;
+import com.blackbuild.klum.ast.util.copy.Overwrite;
+import com.blackbuild.klum.ast.util.copy.OverwriteStrategy;
+import groovy.lang.MissingFieldException;
+import org.codehaus.groovy.reflection.CachedField;
+import org.codehaus.groovy.reflection.ReflectionCache;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.runtime.StringGroovyMethods;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Pre-resolved information needed to bind values to the fields of a model class. For each field, the plan contains
+ * the accessor, the overwrite strategy, the element type and a coercer for string values, so that these are only
+ * looked up once per class instead of once per value. Plans are created lazily and used by {@link CopyHandler}
+ * and {@link FactoryHelper#createFromMap(Class, Map)}.
+ */
+final class BindingPlan {
+
+    private static final ClassValue<BindingPlan> PLANS = new ClassValue<BindingPlan>() {
+        @Override
+        protected BindingPlan computeValue(Class<?> type) {
+            return new BindingPlan(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final String keyFieldName;
+    private final Map<String, FieldBinding> bindings = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> typeHints = new ConcurrentHashMap<>();
+    private volatile Class<?> defaultType;
+    private volatile List<FieldBinding> copyBindings;
+    private volatile Function<String, Object> instantiator;
+
+    private BindingPlan(Class<?> type) {
+        this.type = type;
+        keyFieldName = DslHelper.getKeyField(type).map(Field::getName).orElse(null);
+    }
+
+    static BindingPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    /**
+     * Returns the key of an object to be created from the given map, i.e. the string value of the entry
+     * named like the key field.
+     */
+    @Nullable String getKeyFrom(Map<String, Object> values) {
+        if (keyFieldName == null) return null;
+        Object key = values.get(keyFieldName);
+        return key != null ? key.toString() : null;
+    }
+
+    boolean isKeyed() {
+        return keyFieldName != null;
+    }
+
+    String getKeyFieldName() {
+        return keyFieldName;
+    }
+
+    /**
+     * Returns the concrete type for the given type hint. Each hint is only resolved once using the given resolver,
+     * a null hint is resolved to the default type.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Class<T> resolveType(@Nullable String typeHint, Function<String, Class<?>> resolver) {
+        if (typeHint != null)
+            return (Class<T>) typeHints.computeIfAbsent(typeHint, resolver);
+        Class<?> result = defaultType;
+        if (result == null)
+            defaultType = result = resolver.apply(null);
+        return (Class<T>) result;
+    }
+
+    /**
+     * Returns the binding for the field with the given name or null if the type has no such field.
+     */
+    @Nullable FieldBinding getBinding(String name) {
+        FieldBinding binding = bindings.get(name);
+        if (binding != null)
+            return binding;
+        CachedField accessor = DslHelper.getCachedField(type, name).orElse(null);
+        if (accessor == null)
+            return null;
+        Field field = DslHelper.getField(type, name).orElseThrow(() -> new MissingFieldException(name, type));
+        binding = new FieldBinding(field, accessor);
+        FieldBinding existing = bindings.putIfAbsent(name, binding);
+        return existing != null ? existing : binding;
+    }
+
+    /**
+     * Returns the bindings of all fields that are copied between instances of the type, starting with the topmost
+     * model class of the hierarchy. Ignored fields (key, owner, role and transient fields) are not included.
+     */
+    List<FieldBinding> getCopyBindings() {
+        List<FieldBinding> result = copyBindings;
+        if (result == null)
+            copyBindings = result = resolveCopyBindings();
+        return result;
+    }
+
+    private List<FieldBinding> resolveCopyBindings() {
+        List<FieldBinding> result = new ArrayList<>();
+        for (Class<?> layer : DslHelper.getDslHierarchyOf(type))
+            for (Field field : layer.getDeclaredFields()) {
+                if (!isCopyable(field)) continue;
+                FieldBinding binding = getBinding(field.getName());
+                if (binding != null && !binding.isIgnored())
+                    result.add(binding);
+            }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns true if the given field is a candidate for copying, i.e. it is neither synthetic, final nor transient,
+     * and it is not a technical field whose name starts with '$' or '@'.
+     */
+    static boolean isCopyable(Field field) {
+        if (field.isSynthetic()) return false;
+        int modifiers = field.getModifiers();
+        if (Modifier.isFinal(modifiers) || Modifier.isTransient(modifiers)) return false;
+        String name = field.getName();
+        return !name.startsWith("$") && !name.startsWith("@");
+    }
+
+    /**
+     * Creates a new instance of the type, using the key constructor for keyed types and the no-arg constructor
+     * otherwise. The constructor is only looked up once; if it cannot be accessed directly, the instance is created
+     * via Groovy's constructor dispatch.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T newInstance(@Nullable String key) {
+        Function<String, Object> result = instantiator;
+        if (result == null)
+            instantiator = result = createInstantiator();
+        return (T) result.apply(key);
+    }
+
+    private Function<String, Object> createInstantiator() {
+        try {
+            if (isKeyed()) {
+                Constructor<?> constructor = type.getDeclaredConstructor(String.class);
+                constructor.setAccessible(true);
+                return key -> invokeConstructor(constructor, key);
+            }
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return key -> key == null ? invokeConstructor(constructor) : InvokerHelper.invokeConstructorOf(type, key);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return key -> InvokerHelper.invokeConstructorOf(type, key == null && isKeyed() ? new Object[] {null} : key);
+        }
+    }
+
+    private static Object invokeConstructor(Constructor<?> constructor, Object... args) {
+        try {
+            return constructor.newInstance(args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new KlumModelException("Could not create instance of " + constructor.getDeclaringClass().getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new KlumModelException("Could not create instance of " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    enum Kind { SINGLE, COLLECTION, MAP }
+
+    static final class FieldBinding {
+        private final Field field;
+        private final CachedField accessor;
+        private final Kind kind;
+        private final boolean ignored;
+        private final Class<?> boxedType;
+        private final Class<?> elementType;
+        private final boolean dslElement;
+        private final Function<String, Object> coercer;
+        private final OverwriteStrategy.Single singleStrategy;
+        private final OverwriteStrategy.Collection collectionStrategy;
+        private final OverwriteStrategy.Map mapStrategy;
+
+        private FieldBinding(Field field, CachedField accessor) {
+            this.field = field;
+            this.accessor = accessor;
+            Class<?> fieldType = field.getType();
+            boxedType = ReflectionCache.autoboxType(fieldType);
+            ignored = isIgnored(field);
+            coercer = createCoercer(field.getName(), fieldType);
+            if (Collection.class.isAssignableFrom(fieldType)) {
+                kind = Kind.COLLECTION;
+                elementType = getElementClass(field);
+                collectionStrategy = getCollectionStrategy(field);
+                singleStrategy = null;
+                mapStrategy = null;
+            } else if (Map.class.isAssignableFrom(fieldType)) {
+                kind = Kind.MAP;
+                elementType = getElementClass(field);
+                mapStrategy = getMapStrategy(field);
+                singleStrategy = null;
+                collectionStrategy = null;
+            } else {
+                kind = Kind.SINGLE;
+                elementType = fieldType;
+                singleStrategy = getSingleStrategy(field);
+                collectionStrategy = null;
+                mapStrategy = null;
+            }
+            dslElement = DslHelper.isDslType(elementType);
+        }
+
+        String getName() {
+            return field.getName();
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        boolean isIgnored() {
+            return ignored;
+        }
+
+        /**
+         * Returns the class of the field's elements, for single valued fields, this is the type of the field itself.
+         */
+        Class<?> getElementType() {
+            return elementType;
+        }
+
+        boolean isDslElement() {
+            return dslElement;
+        }
+
+        OverwriteStrategy.Single getSingleStrategy() {
+            return singleStrategy;
+        }
+
+        OverwriteStrategy.Collection getCollectionStrategy() {
+            return collectionStrategy;
+        }
+
+        OverwriteStrategy.Map getMapStrategy() {
+            return mapStrategy;
+        }
+
+        <T> T get(Object instance) {
+            //noinspection unchecked
+            return (T) accessor.getProperty(instance);
+        }
+
+        void set(Object instance, Object value) {
+            accessor.setProperty(instance, value);
+        }
+
+        boolean isInstance(Object value) {
+            return boxedType.isInstance(value);
+        }
+
+        Object coerce(String value) {
+            return coercer.apply(value);
+        }
+
+        /**
+         * Returns true if numbers of a different type (e.g. parsed integers for long fields) can be converted
+         * for this field.
+         */
+        boolean isNumeric() {
+            return Number.class.isAssignableFrom(boxedType);
+        }
+
+        Object convertNumber(Number value) {
+            return DefaultTypeTransformation.castToType(value, boxedType);
+        }
+
+        /**
+         * Creates an element of this field from the given map using the factory of the element type. For keyed
+         * elements of a map field, the map key is used as the element's key if the values do not contain a key.
+         */
+        Object createElementFromMap(@Nullable Object mapKey, Map<String, Object> values) {
+            BindingPlan elementPlan = BindingPlan.of(elementType);
+            if (mapKey != null && elementPlan.isKeyed() && values.get(elementPlan.getKeyFieldName()) == null) {
+                Map<String, Object> keyedValues = new LinkedHashMap<>(values);
+                keyedValues.put(elementPlan.getKeyFieldName(), mapKey);
+                values = keyedValues;
+            }
+            //noinspection unchecked
+            return DslHelper.getFactoryOf(elementType).FromMap(values);
+        }
+
+        @SuppressWarnings("java:S1126")
+        private static boolean isIgnored(Field field) {
+            if (field.isAnnotationPresent(Key.class)) return true;
+            if (field.isAnnotationPresent(Owner.class)) return true;
+            if (field.isAnnotationPresent(Role.class)) return true;
+            if (DslHelper.getKlumFieldType(field) == FieldType.TRANSIENT) return true;
+            return false;
+        }
+
+        private static Class<?> getElementClass(Field field) {
+            if (!(field.getGenericType() instanceof ParameterizedType))
+                return Object.class;
+            return DslHelper.getClassFromType(DslHelper.getElementType(field));
+        }
+
+        private static OverwriteStrategy.Single getSingleStrategy(Field field) {
+            Overwrite.Single annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Single.class);
+            if (annotation != null && annotation.value() != OverwriteStrategy.Single.INHERIT)
+                return annotation.value();
+            return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.singles().value() != OverwriteStrategy.Single.INHERIT)
+                    .map(Overwrite::singles)
+                    .map(Overwrite.Single::value)
+                    .orElse(OverwriteStrategy.Single.MERGE);
+        }
+
+        private static OverwriteStrategy.Map getMapStrategy(Field field) {
+            Overwrite.Map annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Map.class);
+            if (annotation != null && annotation.value() != OverwriteStrategy.Map.INHERIT)
+                return annotation.value();
+            return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.maps().value() != OverwriteStrategy.Map.INHERIT)
+                    .map(Overwrite::maps)
+                    .map(Overwrite.Map::value)
+                    .orElse(OverwriteStrategy.Map.FULL_REPLACE);
+        }
+
+        private static OverwriteStrategy.Collection getCollectionStrategy(Field field) {
+            Overwrite.Collection annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Collection.class);
+            if (annotation != null && annotation.value() != OverwriteStrategy.Collection.INHERIT)
+                return annotation.value();
+            return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.collections().value() != OverwriteStrategy.Collection.INHERIT)
+                    .map(Overwrite::collections)
+                    .map(Overwrite.Collection::value)
+                    .orElse(OverwriteStrategy.Collection.REPLACE);
+        }
+
+        /**
+         * Types that Groovy's string coercion handles itself (besides enums, strings and lists). For all other types,
+         * an existing converter method is used directly instead of trying (and usually failing) the Groovy coercion.
+         */
+        private static final Set<Class<?>> BUILTIN_COERCIONS = new HashSet<>(Arrays.asList(
+                Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class,
+                Double.class, BigDecimal.class, BigInteger.class, File.class));
+
+        private static boolean hasBuiltinCoercion(Class<?> type) {
+            return BUILTIN_COERCIONS.contains(ReflectionCache.autoboxType(type))
+                    || type.isEnum()
+                    || type.isAssignableFrom(String.class)
+                    || type.isAssignableFrom(List.class);
+        }
+
+        private static Function<String, Object> createCoercer(String fieldName, Class<?> type) {
+            List<Executable> converterMethods = ConverterHelper.getAllMatchingConverterMethods(type, String.class);
+            Executable converter = converterMethods.isEmpty() ? null : converterMethods.get(0);
+
+            if (converter != null && !hasBuiltinCoercion(type))
+                return value -> invokeConverter(converter, value);
+
+            return value -> {
+                try {
+                    return StringGroovyMethods.asType(value, type);
+                } catch (Exception e) {
+                    if (converter == null)
+                        throw new IllegalArgumentException("Field " + fieldName + " is not of expected type " + type, e);
+                }
+                return invokeConverter(converter, value);
+            };
+        }
+
+        private static Object invokeConverter(Executable converter, String value) {
+            try {
+                if (converter instanceof Method)
+                    return ((Method) converter).invoke(null, value);
+                return ((Constructor<?>) converter).newInstance(value);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new KlumModelException("Converter " + converter + " failed for '" + value + "'", e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new KlumModelException("Could not call converter " + converter, e);
+            }
+        }
+    }
+}
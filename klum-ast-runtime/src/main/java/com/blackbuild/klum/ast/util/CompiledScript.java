@@ -0,0 +1,179 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The bytecode of a compiled script, including all additional classes (like closures) of that script. Used
+ * by the persistent {@link ScriptCache}.
+ */
+final class CompiledScript {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final String mainClassName;
+    private final Map<String, byte[]> classes;
+
+    private CompiledScript(String mainClassName, Map<String, byte[]> classes) {
+        this.mainClassName = mainClassName;
+        this.classes = classes;
+    }
+
+    /**
+     * Compiles the given script text without defining any classes.
+     *
+     * @param resolver the classloader used to resolve the classes referenced by the script, no classes are defined in it
+     */
+    static CompiledScript compile(String fileName, String text, GroovyClassLoader resolver, CompilerConfiguration configuration) {
+        CompilationUnit unit = new CompilationUnit(configuration, null, resolver);
+        SourceUnit source = unit.addSource(fileName, text);
+        unit.compile(Phases.CLASS_GENERATION);
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Object generated : unit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) generated;
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return new CompiledScript(source.getAST().getMainClassName(), classes);
+    }
+
+    /**
+     * Reads a compiled script from the given file.
+     *
+     * @return the script or null if the file does not exist or is not readable.
+     */
+    static CompiledScript read(Path file) {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION)
+                return null;
+            String mainClassName = in.readUTF();
+            int count = in.readInt();
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            return new CompiledScript(mainClassName, classes);
+        } catch (IOException e) {
+            // broken entries are simply recompiled
+            return null;
+        }
+    }
+
+    /**
+     * Writes this script to the given file. The file is written to a temporary file first and then moved,
+     * so concurrent readers never see partially written entries. Failures are ignored, since the cache
+     * is only an optimization.
+     */
+    void write(Path file) {
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(mainClassName);
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Deletes the given entry, for example because its classes could not be defined.
+     */
+    static void delete(Path file) {
+        deleteQuietly(file);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Defines the classes of this script in a new classloader, without invoking the compiler. All classes are
+     * defined immediately, so that broken bytecode is detected here and not while the script is running.
+     *
+     * @param parent the parent classloader, which must be able to resolve all classes referenced by the script
+     * @return the script class
+     * @throws LinkageError if the classes cannot be defined, for example because the bytecode is corrupt
+     */
+    Class<? extends Script> define(ClassLoader parent) {
+        DefiningClassLoader loader = new DefiningClassLoader(parent, classes);
+        try {
+            for (String name : classes.keySet())
+                loader.loadClass(name);
+            return loader.loadClass(mainClassName).asSubclass(Script.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new NoClassDefFoundError("Compiled script does not contain a valid main class " + mainClassName);
+        }
+    }
+
+    private static final class DefiningClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private DefiningClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null)
+                throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -23,29 +23,17 @@
  */
 package com.blackbuild.klum.ast.util;
 
-import com.blackbuild.groovy.configdsl.transform.FieldType;
-import com.blackbuild.groovy.configdsl.transform.Key;
-import com.blackbuild.groovy.configdsl.transform.Owner;
-import com.blackbuild.groovy.configdsl.transform.Role;
+import com.blackbuild.klum.ast.util.BindingPlan.FieldBinding;
 import com.blackbuild.klum.ast.util.copy.Overwrite;
 import com.blackbuild.klum.ast.util.copy.OverwriteStrategy;
 import org.codehaus.groovy.runtime.InvokerHelper;
-import org.codehaus.groovy.runtime.StringGroovyMethods;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Executable;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
-import static com.blackbuild.klum.ast.util.DslHelper.getFactoryOf;
-import static com.blackbuild.klum.ast.util.DslHelper.isDslType;
 import static com.blackbuild.klum.ast.util.KlumInstanceProxy.getProxyFor;
-import static groovyjarjarasm.asm.Opcodes.*;
 
 /**
  * Handles the copying of properties from one object to another.
@@ -54,7 +42,7 @@ import static groovyjarjarasm.asm.Opcodes.*;
 public class CopyHandler {
 
     private final Object target;
-    private final KlumInstanceProxy proxy;
+    private final BindingPlan plan;
     private final Object donor;
 
     /**
@@ -68,8 +56,9 @@ public class CopyHandler {
     }
 
     public CopyHandler(Object target, Object donor) {
-        this.target = target;
-        proxy = getProxyFor(target);
+        // target might be the RW instance
+        this.target = getProxyFor(target).getDSLInstance();
+        plan = BindingPlan.of(this.target.getClass());
         this.donor = donor;
     }
 
@@ -87,15 +76,23 @@ public class CopyHandler {
     }
 
     private void doCopyFromObject() {
-        DslHelper.getDslHierarchyOf(donor.getClass()).forEach(this::copyFromLayer);
+        if (donor.getClass() == target.getClass())
+            doCopyFromSameType();
+        else
+            DslHelper.getDslHierarchyOf(donor.getClass()).forEach(this::copyFromLayer);
+    }
+
+    // both objects share the plan, so values can be read directly and need no type check
+    private void doCopyFromSameType() {
+        for (FieldBinding binding : plan.getCopyBindings())
+            copyFromField(binding);
     }
 
     private void copyFromLayer(Class<?> layer) {
         for (Field field : layer.getDeclaredFields()) {
-            if ((field.getModifiers() & (ACC_SYNTHETIC | ACC_FINAL | ACC_TRANSIENT)) != 0) continue;
-            String name = field.getName();
+            if (!BindingPlan.isCopyable(field)) continue;
 
-            doCopyNamedElement(name);
+            doCopyNamedElement(field.getName());
         }
     }
 
@@ -103,50 +100,36 @@ public class CopyHandler {
         if (name.startsWith("$")) return;
         if (name.startsWith("@")) return;
 
-        Optional<Field> optionalField = DslHelper.getField(target.getClass(), name);
+        FieldBinding binding = plan.getBinding(name);
 
-        if (optionalField.isEmpty())
+        if (binding == null)
             handleMissingFieldInTarget(name);
-        else {
-            Field targetField = optionalField.get();
-            if (isNotIgnored(targetField))
-                copyFromField(targetField);
-        }
+        else if (!binding.isIgnored())
+            copyFromField(binding);
     }
 
     private void handleMissingFieldInTarget(String name) {
         throw new KlumModelException("Field " + name + " is missing in target object " + target);
     }
 
-    @SuppressWarnings("java:S1126")
-    private boolean isIgnored(Field field) {
-        if (field.isAnnotationPresent(Key.class)) return true;
-        if (field.isAnnotationPresent(Owner.class)) return true;
-        if (field.isAnnotationPresent(Role.class)) return true;
-        if (DslHelper.getKlumFieldType(field) == FieldType.TRANSIENT) return true;
-        return false;
-    }
-
-    private boolean isNotIgnored(Field field) {
-        return !isIgnored(field);
-    }
-
-    private void copyFromField(Field field) {
-        Class<?> fieldType = field.getType();
-        if (Collection.class.isAssignableFrom(fieldType))
-            copyFromCollectionField(field);
-        else if (Map.class.isAssignableFrom(fieldType))
-            copyFromMapField(field);
-        else
-            copyFromSingleField(field);
+    private void copyFromField(FieldBinding field) {
+        switch (field.getKind()) {
+            case COLLECTION:
+                copyFromCollectionField(field);
+                break;
+            case MAP:
+                copyFromMapField(field);
+                break;
+            default:
+                copyFromSingleField(field);
+        }
     }
 
-    private void copyFromSingleField(Field field) {
-        String fieldName = field.getName();
-        Object currentValue = proxy.getInstanceAttribute(fieldName);
-        Object templateValue = getTemplateValue(fieldName, field.getType());
+    private void copyFromSingleField(FieldBinding field) {
+        Object currentValue = field.get(target);
+        Object templateValue = getTemplateValue(field);
 
-        OverwriteStrategy.Single strategy = getSingleStrategy(field);
+        OverwriteStrategy.Single strategy = field.getSingleStrategy();
 
         switch (strategy) {
             case REPLACE:
@@ -162,7 +145,7 @@ public class CopyHandler {
                 break;
             case MERGE:
                 if (templateValue != null) {
-                    if (currentValue == null || !isDslType(field.getType()))
+                    if (currentValue == null || !field.isDslElement())
                         replaceValue(field, templateValue);
                     else
                         CopyHandler.copyToFrom(currentValue, templateValue);
@@ -174,56 +157,43 @@ public class CopyHandler {
         }
     }
 
-    private <T> T getTemplateValue(String fieldName, Class<T> type) {
+    private <T> T getTemplateValue(FieldBinding field) {
+        if (donor.getClass() == target.getClass())
+            return field.get(donor);
+        String fieldName = field.getName();
         Object result;
         if (donor instanceof Map)
             result = ((Map<String, Object>) donor).get(fieldName);
         else
             result = getProxyFor(donor).getInstanceAttribute(fieldName);
-        if (result != null && !(result instanceof Map) && !type.isInstance(result)) {
+        if (result != null && !(result instanceof Map) && !field.isInstance(result)) {
             if (result instanceof String)
-                return coerceString((String) result, type);
+                return (T) field.coerce((String) result);
+            if (result instanceof Number && field.isNumeric())
+                return (T) field.convertNumber((Number) result);
 
-            throw new IllegalArgumentException("Field " + fieldName + " is not of expected type " + type);
+            throw new IllegalArgumentException("Field " + fieldName + " is not of expected type " + field.getField().getType());
         }
         return (T) result;
     }
 
-    private <T> T coerceString(String result, Class<T> type) {
-        try {
-            return StringGroovyMethods.asType(result, type);
-        } catch (Exception e) {
-            // ignore
-        }
-
-        List<Executable> converterMethods = ConverterHelper.getAllMatchingConverterMethods(type, String.class);
-        if (converterMethods.isEmpty())
-            throw new IllegalArgumentException("Field is not of expected type " + type);
-
-        Executable converterMethod = converterMethods.get(0);
-        if (converterMethod instanceof Method)
-            return (T) InvokerHelper.invokeMethod(type, converterMethod.getName(), new Object[]{ result });
-        if (converterMethod instanceof Constructor)
-            return (T) InvokerHelper.invokeConstructorOf(type, new Object[]{ result });
-
-        throw new IllegalArgumentException("String cannot be coerced to " + type);
+    private void replaceValue(FieldBinding field, Object templateValue) {
+        field.set(target, copyElement(field, null, templateValue));
     }
 
-    private void replaceValue(Field field, Object templateValue) {
-        Object valueCopy;
-        if (templateValue instanceof Map) {
-            valueCopy = getFactoryOf(field.getType()).FromMap((Map<String, Object>) templateValue);
-        } else {
-            valueCopy = copyValue(templateValue);
-        }
-        proxy.setInstanceAttribute(field.getName(), valueCopy);
+    private static Object copyElement(FieldBinding field, @Nullable Object mapKey, Object value) {
+        if (value == null || !field.isDslElement())
+            return copyValue(value);
+        if (value instanceof Map)
+            return field.createElementFromMap(mapKey, (Map<String, Object>) value);
+        return getProxyFor(value).cloneInstance();
     }
 
     @SuppressWarnings("unchecked")
     private static @Nullable <T> T copyValue(Object templateValue) {
         if (templateValue == null)
             return null;
-        if (isDslType(templateValue.getClass()))
+        if (DslHelper.isDslType(templateValue.getClass()))
             return getProxyFor(templateValue).cloneInstance();
         if (templateValue instanceof Collection)
             return (T) createCopyOfCollection((Collection<Object>) templateValue);
@@ -232,25 +202,14 @@ public class CopyHandler {
         return (T) templateValue;
     }
 
-    private OverwriteStrategy.Single getSingleStrategy(Field field) {
-        Overwrite.Single annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Single.class);
-        if (annotation != null && annotation.value() != OverwriteStrategy.Single.INHERIT)
-            return annotation.value();
-        return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.singles().value() != OverwriteStrategy.Single.INHERIT)
-                .map(Overwrite::singles)
-                .map(Overwrite.Single::value)
-                .orElse(OverwriteStrategy.Single.MERGE);
-    }
-
-    private void copyFromMapField(Field field) {
-        String fieldName = field.getName();
-        Map<Object,Object> currentValues = proxy.getInstanceAttribute(fieldName);
-        Map<Object,Object> templateValues = (Map<Object, Object>) getTemplateValue(fieldName, field.getType());
+    private void copyFromMapField(FieldBinding field) {
+        Map<Object,Object> currentValues = field.get(target);
+        Map<Object,Object> templateValues = getTemplateValue(field);
 
         if (templateValues == null)
             return;
 
-        OverwriteStrategy.Map strategy = getMapStrategy(field);
+        OverwriteStrategy.Map strategy = field.getMapStrategy();
 
         switch (strategy) {
             case FULL_REPLACE:
@@ -271,7 +230,7 @@ public class CopyHandler {
                 addMapValues(field, currentValues, templateValues);
                 break;
             case MERGE_VALUES:
-                if (isDslType(DslHelper.getElementType(field)))
+                if (field.isDslElement())
                     mergeMapValues(field, currentValues, templateValues);
                 else
                     addMapValues(field, currentValues, templateValues);
@@ -289,40 +248,37 @@ public class CopyHandler {
         throw new AssertionError(String.format("Unexpected strategy %s encountered", strategy));
     }
 
-    private void addMissingMapValues(Field field, Map<Object, Object> currentValues, Map<Object, Object> templateValues) {
+    private void addMissingMapValues(FieldBinding field, Map<Object, Object> currentValues, Map<Object, Object> templateValues) {
         if (templateValues == null || templateValues.isEmpty()) return;
-        Class<?> valueType = DslHelper.getClassFromType(DslHelper.getElementType(field));
         for (Map.Entry<Object,Object> entry : templateValues.entrySet()) {
             Object key = entry.getKey();
             Object value = entry.getValue();
-            assertCorrectType(field, value, valueType);
+            assertCorrectType(field, value);
             if (!currentValues.containsKey(key))
-                currentValues.put(key, copyValue(value));
+                currentValues.put(key, copyElement(field, key, value));
         }
     }
 
-    private void mergeMapValues(Field field, Map<Object, Object> currentValues, Map<Object, Object> templateValues) {
+    private void mergeMapValues(FieldBinding field, Map<Object, Object> currentValues, Map<Object, Object> templateValues) {
         if (templateValues == null || templateValues.isEmpty()) return;
-        Class<?> valueType = DslHelper.getClassFromType(DslHelper.getElementType(field));
         for (Map.Entry<Object,Object> entry : templateValues.entrySet()) {
             Object key = entry.getKey();
             Object value = entry.getValue();
-            assertCorrectType(field, value, valueType);
+            assertCorrectType(field, value);
             Object currentValue = currentValues.get(key);
             if (currentValue == null)
-                currentValues.put(key, copyValue(value));
+                currentValues.put(key, copyElement(field, key, value));
             else
                 CopyHandler.copyToFrom(currentValue, value);
         }
     }
 
-    private void addMapValues(Field field, Map<Object,Object> currentValues, Map<Object,Object> templateValues) {
-        Class<?> valueType = DslHelper.getClassFromType(DslHelper.getElementType(field));
+    private void addMapValues(FieldBinding field, Map<Object,Object> currentValues, Map<Object,Object> templateValues) {
         for (Map.Entry<Object,Object> entry : templateValues.entrySet()) {
             Object key = entry.getKey();
             Object value = entry.getValue();
-            assertCorrectType(field, value, valueType);
-            currentValues.put(key, copyValue(value));
+            assertCorrectType(field, value);
+            currentValues.put(key, copyElement(field, key, value));
         }
     }
 
@@ -345,24 +301,13 @@ public class CopyHandler {
         return (T) InvokerHelper.invokeConstructorOf(source.getClass(), null);
     }
 
-    private OverwriteStrategy.Map getMapStrategy(Field field) {
-        Overwrite.Map annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Map.class);
-        if (annotation != null && annotation.value() != OverwriteStrategy.Map.INHERIT)
-            return annotation.value();
-        return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.maps().value() != OverwriteStrategy.Map.INHERIT)
-                .map(Overwrite::maps)
-                .map(Overwrite.Map::value)
-                .orElse(OverwriteStrategy.Map.FULL_REPLACE);
-    }
-
-    private void copyFromCollectionField(Field field) {
-        String fieldName = field.getName();
-        Collection<Object> currentValue = proxy.getInstanceAttribute(fieldName);
-        Collection<Object> templateValue = (Collection<Object>) getTemplateValue(fieldName, field.getType());
+    private void copyFromCollectionField(FieldBinding field) {
+        Collection<Object> currentValue = field.get(target);
+        Collection<Object> templateValue = getTemplateValue(field);
 
         if (templateValue == null) return;
 
-        OverwriteStrategy.Collection strategy = getCollectionStrategy(field);
+        OverwriteStrategy.Collection strategy = field.getCollectionStrategy();
 
         switch (strategy) {
             case ADD:
@@ -388,28 +333,17 @@ public class CopyHandler {
         }
     }
 
-    private void addCollectionValues(Field field, Collection<Object> currentValue, Collection<Object> templateValue) {
-        Class<?> elementType = DslHelper.getClassFromType(DslHelper.getElementType(field));
+    private void addCollectionValues(FieldBinding field, Collection<Object> currentValue, Collection<Object> templateValue) {
         for (Object value : templateValue) {
-            assertCorrectType(field, value, elementType);
-            currentValue.add(copyValue(value));
+            assertCorrectType(field, value);
+            currentValue.add(copyElement(field, null, value));
         }
     }
 
-    private static void assertCorrectType(Field field, Object value, Class<?> elementType) {
+    private static void assertCorrectType(FieldBinding field, Object value) {
+        Class<?> elementType = field.getElementType();
         if (value != null && !(value instanceof Map) && !elementType.isInstance(value))
-            throw new IllegalArgumentException("Element " + value + " in " + field + " is not of expected type " + elementType);
+            throw new IllegalArgumentException("Element " + value + " in " + field.getField() + " is not of expected type " + elementType);
     }
 
-    private OverwriteStrategy.Collection getCollectionStrategy(Field field) {
-        Overwrite.Collection annotation = AnnotationHelper.getNestedAnnotation(field, Overwrite.Collection.class);
-        if (annotation != null && annotation.value() != OverwriteStrategy.Collection.INHERIT)
-            return annotation.value();
-        return AnnotationHelper.getMostSpecificAnnotation(field, Overwrite.class, o -> o.collections().value() != OverwriteStrategy.Collection.INHERIT)
-                .map(Overwrite::collections)
-                .map(Overwrite.Collection::value)
-                .orElse(OverwriteStrategy.Collection.REPLACE);
-    }
-
-
 }
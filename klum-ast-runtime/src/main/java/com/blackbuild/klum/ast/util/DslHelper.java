@@ -35,6 +35,7 @@ import org.jetbrains.annotations.NotNull;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -117,6 +118,18 @@ public class DslHelper {
     }
 
     public static Optional<Field> getField(Class<?> type, String name) {
+        return FIELDS.get(type).computeIfAbsent(name, key -> lookupField(type, key));
+    }
+
+    // element types and field annotations are resolved for every added element, so the lookup is done once per class
+    private static final ClassValue<Map<String, Optional<Field>>> FIELDS = new ClassValue<>() {
+        @Override
+        protected Map<String, Optional<Field>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static Optional<Field> lookupField(Class<?> type, String name) {
         return getHierarchyOf(type).stream()
                 .map(layer -> getFieldOfHierarchyLayer(layer, name))
                 .filter(Optional::isPresent)
@@ -125,6 +138,18 @@ public class DslHelper {
     }
 
     public static Optional<CachedField> getCachedField(Class<?> type, String name) {
+        return CACHED_FIELDS.get(type).computeIfAbsent(name, key -> lookupCachedField(type, key));
+    }
+
+    // generated getters and setters resolve their field by name on every access, so the lookup is done once per class
+    private static final ClassValue<Map<String, Optional<CachedField>>> CACHED_FIELDS = new ClassValue<>() {
+        @Override
+        protected Map<String, Optional<CachedField>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static Optional<CachedField> lookupCachedField(Class<?> type, String name) {
         return getHierarchyOf(type).stream()
                 .map(layer -> getCachedFieldOfHierarchyLayer(layer, name))
                 .filter(Optional::isPresent)
@@ -195,9 +220,17 @@ public class DslHelper {
     }
 
     public static Optional<Field> getKeyField(Class<?> type) {
-        return getFieldsAnnotatedWith(type, Key.class).findFirst();
+        return KEY_FIELDS.get(type);
     }
 
+    // keys are determined for every element added to a map
+    private static final ClassValue<Optional<Field>> KEY_FIELDS = new ClassValue<>() {
+        @Override
+        protected Optional<Field> computeValue(Class<?> type) {
+            return getFieldsAnnotatedWith(type, Key.class).findFirst();
+        }
+    };
+
     public static boolean isKeyed(Class<?> type) {
         return getKeyField(type).isPresent();
     }
@@ -288,6 +321,18 @@ public class DslHelper {
     }
 
     public static String shortNameFor(Class<?> type) {
+        return SHORT_NAMES.get(type);
+    }
+
+    // short names are requested for every breadcrumb, so they are computed only once per class
+    private static final ClassValue<String> SHORT_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return computeShortName(type);
+        }
+    };
+
+    private static String computeShortName(Class<?> type) {
         StringBuilder result = new StringBuilder();
 
         if (!type.getPackageName().isEmpty()) {
@@ -28,11 +28,11 @@ import com.blackbuild.groovy.configdsl.transform.DSL;
 import com.blackbuild.groovy.configdsl.transform.PostApply;
 import com.blackbuild.groovy.configdsl.transform.PostCreate;
 import com.blackbuild.klum.ast.process.BreadcrumbCollector;
+import com.blackbuild.klum.ast.process.BreadcrumbPath;
 import com.blackbuild.klum.ast.process.PhaseDriver;
 import groovy.lang.*;
 import groovy.transform.Undefined;
 import groovy.util.DelegatingScript;
-import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 import org.jetbrains.annotations.NotNull;
@@ -40,7 +40,6 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.*;
@@ -57,10 +56,6 @@ public class FactoryHelper extends GroovyObjectSupport {
 
     public static final String MODEL_CLASS_KEY = "model-class";
 
-    static {
-        BreadCrumbVerbInterceptor.registerClass(FactoryHelper.class);
-    }
-
     private FactoryHelper() {
         // static only
     }
@@ -85,7 +80,9 @@ public class FactoryHelper extends GroovyObjectSupport {
      * <p>
      * The model script is determined by reading the properties file META-INF/klum-model/&lt;type&gt;.properties,
      * which must contain the key 'model-class' with the fully qualified class name of the model script.
-     * The properties and the script class is loaded using the given class loader.
+     * The properties and the script class is loaded using the given class loader. If a matching snapshot of the
+     * model is present (see {@link ModelSnapshot}), the snapshot is read instead of running the script. Like a
+     * model created by the script, the snapshot is frozen if {@link FreezePhase#isEnabled() enabled}.
      * </p>
      *
      * @param type   The type to create
@@ -94,6 +91,15 @@ public class FactoryHelper extends GroovyObjectSupport {
      * @return The created instance
      */
     public static <T> T createFromClasspath(Class<T> type, ClassLoader loader) {
+        T snapshot = ModelSnapshot.readFromClasspath(type, loader);
+        if (snapshot != null) {
+            // the verb set by the factory belongs to a script run, which does not happen
+            BreadcrumbCollector.getInstance().discardPending();
+            // snapshots do not run any phases, but must be frozen like a model created by the script
+            FreezePhase.freezeIfEnabled(snapshot);
+            return snapshot;
+        }
+
         BreadcrumbCollector.getInstance().setType("classpath");
         String path = "META-INF/klum-model/" + type.getName() + ".properties";
 
@@ -200,20 +206,25 @@ public class FactoryHelper extends GroovyObjectSupport {
     static <T> T createInstance(Class<T> type, String key, String breadCrumbPathExtension) {
         if (!DslHelper.isInstantiable(type))
             throw new KlumModelException("Cannot instantiate abstract class " + type.getName());
-        if (key == null && DslHelper.isKeyed(type))
-            return createInstanceWithNullArg(type);
-        //noinspection unchecked
-        T result = (T) InvokerHelper.invokeConstructorOf(type, key);
+        T result = BindingPlan.of(type).newInstance(key);
+        if (!BreadcrumbCollector.isEnabled())
+            return result;
+        // paths are stored unrendered, they are only converted to strings if actually needed
         if (breadCrumbPathExtension != null)
-            KlumInstanceProxy.getProxyFor(result).setBreadcrumbPath(BreadcrumbCollector.getInstance().getFullPath() + "/" + breadCrumbPathExtension);
+            KlumInstanceProxy.getProxyFor(result).setBreadcrumbPath(extendCurrentPath(breadCrumbPathExtension));
         else if (BreadcrumbCollector.hasInstance())
-            KlumInstanceProxy.getProxyFor(result).setBreadcrumbPath(BreadcrumbCollector.getInstance().getFullPath());
+            setCurrentBreadcrumbPath(result);
         return result;
     }
 
-    private static <T> T createInstanceWithNullArg(Class<T> type) {
-        //noinspection unchecked
-        return (T) InvokerHelper.invokeConstructorOf(type, new Object[]{null});
+    private static BreadcrumbPath extendCurrentPath(String extension) {
+        BreadcrumbPath current = BreadcrumbCollector.getInstance().getCurrentPath();
+        return current != null ? current.extend(extension) : BreadcrumbPath.of("/" + extension);
+    }
+
+    private static void setCurrentBreadcrumbPath(Object instance) {
+        BreadcrumbPath current = BreadcrumbCollector.getInstance().getCurrentPath();
+        KlumInstanceProxy.getProxyFor(instance).setBreadcrumbPath(current != null ? current : BreadcrumbPath.of(""));
     }
 
     /**
@@ -271,17 +282,7 @@ public class FactoryHelper extends GroovyObjectSupport {
     }
 
     private static <T> T doCreateFromText(Class<T> type, String name, String text, ClassLoader loader) {
-        GroovyShell shell = createGroovyShell(loader);
-        Script parse = name != null ? shell.parse(text, name) : shell.parse(text);
-        return createFromDelegatingScript(type, name, (DelegatingScript) parse);
-    }
-
-    @NotNull
-    private static GroovyShell createGroovyShell(ClassLoader loader) {
-        GroovyClassLoader gLoader = new GroovyClassLoader(loader != null ? loader : Thread.currentThread().getContextClassLoader());
-        CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
-        compilerConfiguration.setScriptBaseClass(DelegatingScript.class.getName());
-        return new GroovyShell(gLoader, compilerConfiguration);
+        return createFromDelegatingScript(type, name, ScriptCache.createScript(name, text, loader));
     }
 
     /**
@@ -344,7 +345,7 @@ public class FactoryHelper extends GroovyObjectSupport {
             KlumInstanceProxy proxy = KlumInstanceProxy.getProxyFor(result);
             proxy.copyFromTemplate();
 
-            DelegatingScript script = (DelegatingScript) createGroovyShell(loader).parse(text);
+            DelegatingScript script = ScriptCache.createScript(null, text, loader);
             script.setDelegate(proxy.getRwInstance());
             script.run();
             return result;
@@ -355,11 +356,10 @@ public class FactoryHelper extends GroovyObjectSupport {
         T result;
         if (!DslHelper.isInstantiable(type))
             result = createSyntheticTemplateInstance(type);
-        else if (DslHelper.isKeyed(type))
-            result = createInstanceWithNullArg(type);
         else
-            result = createInstanceWithArgs(type);
-        KlumInstanceProxy.getProxyFor(result).setBreadcrumbPath(BreadcrumbCollector.getInstance().getFullPath());
+            result = BindingPlan.of(type).newInstance(null);
+        if (BreadcrumbCollector.isEnabled())
+            setCurrentBreadcrumbPath(result);
         return result;
     }
 
@@ -372,11 +372,6 @@ public class FactoryHelper extends GroovyObjectSupport {
         }
     }
 
-    static <T> T createInstanceWithArgs(Class<T> type, Object... args) {
-        //noinspection unchecked
-        return (T) InvokerHelper.invokeConstructorOf(type, args);
-    }
-
     /**
      * Creates a template of the given type by reading the given resource, compiling it into a delegating script
      * and applying it to a newly created instance.
@@ -439,19 +434,28 @@ public class FactoryHelper extends GroovyObjectSupport {
         return endIndex != -1 ? filename.substring(0, endIndex) : filename;
     }
 
+    /**
+     * Creates an instance of the given type from the values of the given map. The concrete type can be provided
+     * using the "@type" entry, which is resolved only once per type and hint. The values are bound using the
+     * cached {@link BindingPlan} of the concrete type, nested maps are converted by the factories of the respective
+     * field types. Afterwards, the lifecycle phases are executed for the created object (unless it is part of an
+     * enclosing model, in which case the phases are run for that model).
+     *
+     * @param type      The base type of the object to create
+     * @param configMap The values of the object
+     * @param <T>       The type to create
+     * @return The created instance
+     */
     public static <T> T createFromMap(Class<T> type, Map<String, Object> configMap) {
         return BreadcrumbCollector.withBreadcrumb(() -> {
-            String keyFromMap = DslHelper.getKeyField(type)
-                    .map(Field::getName)
-                    .map(configMap::get)
-                    .map(Object::toString)
-                    .orElse(null);
-            String typeFromMap = (String) configMap.get("@type");
-            Class<T> effectiveType = deduceClass(type, typeFromMap);
-
-            T result = createInstance(effectiveType, keyFromMap);
-            CopyHandler.copyToFrom(result, configMap);
-            return result;
+            BindingPlan plan = BindingPlan.of(type);
+            Class<T> effectiveType = plan.resolveType((String) configMap.get("@type"), hint -> deduceClass(type, hint));
+            String keyFromMap = plan.getKeyFrom(configMap);
+
+            return PhaseDriver.withPhase(
+                    () -> createInstance(effectiveType, keyFromMap),
+                    result -> CopyHandler.copyToFrom(result, configMap)
+            );
         });
     }
 
@@ -462,6 +466,12 @@ public class FactoryHelper extends GroovyObjectSupport {
             throw new KlumModelException("Cannot deduce type from base type " + baseType.getName() + " without a type hint");
         }
 
+        Class<? extends T> registered = TypeRegistry.resolve(baseType, typeHint);
+        if (registered != null)
+            //noinspection unchecked
+            return (Class<T>) registered;
+
+        // subtypes that are not compiled together with the base type are not part of the registry
         ClassLoader loader = baseType.getClassLoader();
 
         List<String> typeNameVariants = new ArrayList<>();
@@ -470,8 +480,8 @@ public class FactoryHelper extends GroovyObjectSupport {
 
         DSL dsl = baseType.getAnnotation(DSL.class);
         if (dsl != null && !dsl.stripSuffix().isEmpty()) {
-            typeNameVariants.add(dsl.stripSuffix() + typeHint);
-            typeNameVariants.add(dsl.stripSuffix() + baseType.getPackage().getName() + "." + typeHint);
+            typeNameVariants.add(typeHint + dsl.stripSuffix());
+            typeNameVariants.add(baseType.getPackage().getName() + "." + typeHint + dsl.stripSuffix());
         }
 
         return typeNameVariants.stream()
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import com.blackbuild.klum.ast.process.AbstractPhaseAction;
+import com.blackbuild.klum.ast.process.DefaultKlumPhase;
+import com.blackbuild.klum.ast.process.PhaseDriver;
+
+/**
+ * Phase Action that freezes the model after it has been completely created (see {@link KlumInstanceProxy#freeze()}).
+ * <p>
+ * Freezing is disabled by default, since completed models can be changed using {@code apply()}. It can be enabled
+ * by setting the system property {@value #ENABLED_PROPERTY} to {@code true} or by calling {@link #setEnabled(boolean)}.
+ * </p>
+ * <p>
+ * In any case, the hash based sets of the model are rebuilt (see {@link KlumInstanceProxy#rehashSets()}), since their
+ * elements might have been changed by earlier phases.
+ * </p>
+ */
+public class FreezePhase extends AbstractPhaseAction {
+
+    public static final String ENABLED_PROPERTY = "klum.freeze.enabled";
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    public FreezePhase() {
+        super(DefaultKlumPhase.FREEZE);
+    }
+
+    /**
+     * Returns whether models are frozen after their creation.
+     * @return true if models are frozen automatically
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables freezing of models after their creation.
+     * @param enabled true to freeze all models after their creation
+     */
+    public static void setEnabled(boolean enabled) {
+        FreezePhase.enabled = enabled;
+    }
+
+    @Override
+    protected void doExecute() {
+        freezeIfEnabled(PhaseDriver.getInstance().getRootObject());
+    }
+
+    /**
+     * Does the work of this phase for the given model, i.e. rebuilds its hash based sets and freezes it, if enabled.
+     * This is also used for models that are not created by the phases, like snapshots.
+     * @param model the root of the model
+     */
+    public static void freezeIfEnabled(Object model) {
+        KlumInstanceProxy proxy = KlumInstanceProxy.getProxyFor(model);
+        if (enabled)
+            proxy.freeze();
+        else
+            proxy.rehashSets();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The state of a model creation, i.e. the phase driver, the breadcrumbs and the active templates.
+ * <p>
+ * A context is bound to the current thread for the duration of a creation. The static accessors of
+ * {@link com.blackbuild.klum.ast.process.PhaseDriver}, {@link com.blackbuild.klum.ast.process.BreadcrumbCollector}
+ * and {@link TemplateManager} are facades for the state of the bound context. Creations that are started without
+ * a bound context run in a new context that is discarded completely when the creation ends, even if it fails.
+ * </p>
+ * <p>
+ * To continue a creation in another thread (for example on an executor or a virtual thread), the state of the
+ * current context can be captured and the captured context be bound in the other thread:
+ * </p>
+ * <pre><code>
+ * KlumContext context = KlumContext.capture();
+ * executor.submit(() -&gt; context.call(() -&gt; Service.Create.With { ... }));
+ * </code></pre>
+ * <p>
+ * A captured context contains a copy of the active templates, continues the current breadcrumb path and belongs to
+ * the current model root, i.e. objects created in it do not run their own phases. A context must only be bound
+ * to one thread at a time. Bindings are strictly scoped (similar to {@code ScopedValue}): a context is only
+ * bound while {@link #call(Supplier)} runs, afterwards the previous binding is restored.
+ * </p>
+ */
+public final class KlumContext {
+
+    private static final ThreadLocal<KlumContext> CURRENT = new ThreadLocal<>();
+
+    private final Map<Key<?>, Object> values = new IdentityHashMap<>();
+    // implicit contexts are created by the facades outside a scope, they are unbound as soon as they are empty
+    private boolean implicit;
+
+    private KlumContext(boolean implicit) {
+        this.implicit = implicit;
+    }
+
+    /**
+     * Creates a new, empty context.
+     *
+     * @return a new context
+     */
+    public static KlumContext create() {
+        return new KlumContext(false);
+    }
+
+    /**
+     * Returns the context bound to the current thread. If no context is bound, a new context is bound implicitly,
+     * that context is removed again as soon as its state is empty.
+     *
+     * @return the current context
+     */
+    public static KlumContext current() {
+        KlumContext context = CURRENT.get();
+        if (context == null) {
+            context = new KlumContext(true);
+            CURRENT.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Returns the context bound to the current thread, without creating one.
+     *
+     * @return the current context or null
+     */
+    public static @Nullable KlumContext currentOrNull() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Creates a new context that continues the state of the current context, to be bound in another thread.
+     *
+     * @return the captured context, an empty context if no context is currently bound
+     */
+    public static KlumContext capture() {
+        KlumContext result = create();
+        KlumContext context = CURRENT.get();
+        if (context != null)
+            context.values.forEach((key, value) -> result.putFork(key, value));
+        return result;
+    }
+
+    /**
+     * Runs the given action in the current context. If no context is bound, the action runs in a new context
+     * that is discarded afterwards. An implicitly bound context is discarded after the action as well.
+     *
+     * @param action the action to run
+     * @param <T>    the result type of the action
+     * @return the result of the action
+     */
+    public static <T> T withContext(Supplier<T> action) {
+        KlumContext context = CURRENT.get();
+        if (context == null)
+            return create().call(action);
+        if (!context.implicit)
+            return action.get();
+        // state set up before the creation (like a breadcrumb verb) is taken over and discarded with the creation
+        context.implicit = false;
+        try {
+            return action.get();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Binds this context to the current thread while running the given action. The previous binding of the
+     * thread is restored afterwards.
+     *
+     * @param action the action to run
+     * @param <T>    the result type of the action
+     * @return the result of the action
+     */
+    public <T> T call(Supplier<T> action) {
+        KlumContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null)
+                CURRENT.set(previous);
+            else
+                CURRENT.remove();
+        }
+    }
+
+    /**
+     * Binds this context to the current thread while running the given action.
+     *
+     * @param action the action to run
+     * @see #call(Supplier)
+     */
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the value for the given key, creating it if necessary.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        return (T) values.computeIfAbsent(key, k -> k.initial.get());
+    }
+
+    /**
+     * Returns the value for the given key or null if no value is present.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable T peek(Key<T> key) {
+        return (T) values.get(key);
+    }
+
+    public <T> void set(Key<T> key, T value) {
+        values.put(key, value);
+    }
+
+    /**
+     * Removes the value for the given key. If this context was bound implicitly and is now empty, it is unbound.
+     */
+    public void remove(Key<?> key) {
+        values.remove(key);
+        if (implicit && values.isEmpty() && CURRENT.get() == this)
+            CURRENT.remove();
+    }
+
+    /**
+     * Returns the value for the given key of the current context or null if no context or value is present.
+     */
+    public static <T> @Nullable T peekCurrent(Key<T> key) {
+        KlumContext context = CURRENT.get();
+        return context != null ? context.peek(key) : null;
+    }
+
+    /**
+     * Removes the value for the given key from the current context, if any.
+     */
+    public static void removeFromCurrent(Key<?> key) {
+        KlumContext context = CURRENT.get();
+        if (context != null)
+            context.remove(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void putFork(Key<T> key, Object value) {
+        T fork = key.fork.apply((T) value);
+        if (fork != null)
+            values.put(key, fork);
+    }
+
+    /**
+     * Creates a new key for a value of a context.
+     *
+     * @param name    the name of the key, used for debugging
+     * @param initial creates the initial value
+     * @param fork    creates the value for a captured context from the current value, returning null
+     *                leaves the captured context without value
+     * @param <T>     the type of the value
+     * @return the new key
+     */
+    public static <T> Key<T> key(String name, Supplier<T> initial, UnaryOperator<T> fork) {
+        return new Key<>(name, initial, fork);
+    }
+
+    @Override
+    public String toString() {
+        return "KlumContext" + values;
+    }
+
+    /**
+     * Identifies a value of a context.
+     *
+     * @param <T> the type of the value
+     */
+    public static final class Key<T> {
+        private final String name;
+        private final Supplier<T> initial;
+        private final UnaryOperator<T> fork;
+
+        private Key(String name, Supplier<T> initial, UnaryOperator<T> fork) {
+            this.name = name;
+            this.initial = initial;
+            this.fork = fork;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
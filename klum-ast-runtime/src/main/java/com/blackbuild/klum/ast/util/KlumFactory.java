@@ -24,12 +24,14 @@
 package com.blackbuild.klum.ast.util;
 
 import com.blackbuild.annodocimal.annotations.InlineJavadocs;
+import com.blackbuild.klum.ast.process.BreadcrumbCollector;
+import com.blackbuild.klum.ast.process.PhaseDriver;
 import groovy.lang.Closure;
 import groovy.lang.Script;
 
 import java.io.File;
 import java.net.URL;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 
 import static com.blackbuild.klum.ast.util.DslHelper.requireDslType;
@@ -45,22 +47,37 @@ import static com.blackbuild.klum.ast.util.DslHelper.requireKeyed;
 public class KlumFactory<T> {
 
     protected final Class<T> type;
+    private final String breadcrumbVerbPrefix;
 
     protected KlumFactory(Class<T> type) {
         requireDslType(type);
         this.type = FactoryHelper.getTypeOrDefaultType(type);
+        this.breadcrumbVerbPrefix = DslHelper.shortNameFor(type) + ".";
+    }
+
+    /**
+     * Sets the verb of the next breadcrumb to the given factory method, prefixed by the short name of the model type.
+     * Only the outermost factory method sets the verb, so nested calls to other factory methods are ignored.
+     *
+     * @param methodName The name of the called factory method.
+     */
+    protected void setBreadcrumbVerb(String methodName) {
+        if (BreadcrumbCollector.isEnabled())
+            BreadcrumbCollector.getInstance().setVerb(breadcrumbVerbPrefix + methodName);
     }
 
     /**
      * Creates a new instance of this owner's model type by reading the script from a well-defined properties file
      * placed in '/META-INF/klum-model/"schema-classname".properties'. The properties file must contain a property name
      * "model-class" which contains the name of the compiled script to run, which must return an instance of the
-     * model class.
+     * model class. If a snapshot of the model is present on the classpath (see {@link ModelSnapshot}),
+     * the snapshot is read instead.
      *
      * @return The created model object.
      * @see #From(Class)
      */
     public T FromClasspath() {
+        setBreadcrumbVerb("FromClasspath");
         return FactoryHelper.createFromClasspath(type);
     }
 
@@ -68,13 +85,15 @@ public class KlumFactory<T> {
      * Creates a new instance of this owner's model type by reading the script from a well-defined properties file
      * placed in '/META-INF/klum-model/"schema-classname".properties'. The properties file must contain a property name
      * "model-class" which contains the name of the compiled script to run, which must return an instance of the
-     * model class.
+     * model class. If a snapshot of the model is present on the classpath (see {@link ModelSnapshot}),
+     * the snapshot is read instead.
      *
      * @param loader The classloader to use to load the properties file.
      * @return The created model object.
      * @see #From(Class)
      */
     public T FromClasspath(ClassLoader loader) {
+        setBreadcrumbVerb("FromClasspath");
         return FactoryHelper.createFromClasspath(type, loader);
     }
 
@@ -90,6 +109,7 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T From(Class<? extends Script> configurationScript) {
+        setBreadcrumbVerb("From");
         return FactoryHelper.createFrom(type, configurationScript);
     }
 
@@ -102,6 +122,7 @@ public class KlumFactory<T> {
      * @see #From(URL, ClassLoader)
      */
     public T From(URL configurationUrl) {
+        setBreadcrumbVerb("From");
         return From(configurationUrl, null, null);
     }
 
@@ -115,6 +136,7 @@ public class KlumFactory<T> {
      * @see #From(URL, ClassLoader)
      */
     public T From(URL configurationUrl, Function<URL, String> keyProvider) {
+        setBreadcrumbVerb("From");
         return From(configurationUrl, keyProvider, null);
     }
 
@@ -127,6 +149,7 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T From(URL configurationUrl, ClassLoader loader) {
+        setBreadcrumbVerb("From");
         return From(configurationUrl, null, loader);
     }
 
@@ -140,6 +163,7 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T From(URL configurationUrl, Function<URL, String> keyProvider, ClassLoader loader) {
+        setBreadcrumbVerb("From");
         return FactoryHelper.createFrom(type, configurationUrl, keyProvider, loader);
     }
 
@@ -152,6 +176,7 @@ public class KlumFactory<T> {
      * @see #From(File, ClassLoader)
      */
     public T From(File configurationFile) {
+        setBreadcrumbVerb("From");
         return From(configurationFile, null, null);
     }
 
@@ -165,6 +190,7 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T From(File configurationFile, Function<File, String> keyProvider, ClassLoader loader) {
+        setBreadcrumbVerb("From");
         return FactoryHelper.createFrom(type, configurationFile, keyProvider, loader);
     }
 
@@ -177,6 +203,7 @@ public class KlumFactory<T> {
      * @see #From(File, ClassLoader)
      */
     public T From(File configurationFile, Function<File, String> keyProvider) {
+        setBreadcrumbVerb("From");
         return From(configurationFile, keyProvider, null);
     }
 
@@ -189,9 +216,107 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T From(File configurationFile, ClassLoader loader) {
+        setBreadcrumbVerb("From");
         return From(configurationFile, null, loader);
     }
 
+    /**
+     * Creates new instances of the model type from the given files, as {@link #From(File)} does for a single file.
+     * The result contains the instances in the order of the files.
+     *
+     * @param configurationFiles The files where to take the configuration texts from.
+     * @return The instantiated objects.
+     */
+    public List<T> FromFiles(Collection<File> configurationFiles) {
+        return FromFiles(configurationFiles, null, null, false);
+    }
+
+    /**
+     * Creates new instances of the model type from the given files, as {@link #From(File, Function, ClassLoader)}
+     * does for a single file. The result contains the instances in the order of the files.
+     *
+     * @param configurationFiles The files where to take the configuration texts from.
+     * @param keyProvider        A function that derives the key from the file.
+     * @param loader             The classloader to use for compiling the configuration texts.
+     * @return The instantiated objects.
+     */
+    public List<T> FromFiles(Collection<File> configurationFiles, Function<File, String> keyProvider, ClassLoader loader) {
+        return FromFiles(configurationFiles, keyProvider, loader, false);
+    }
+
+    /**
+     * Creates new instances of the model type from the given files, as {@link #From(File, Function, ClassLoader)}
+     * does for a single file. If {@code concurrently} is true, the files are compiled and evaluated concurrently
+     * (see {@link ParallelCreation}), the result always contains the instances in the order of the files.
+     *
+     * @param configurationFiles The files where to take the configuration texts from.
+     * @param keyProvider        A function that derives the key from the file.
+     * @param loader             The classloader to use for compiling the configuration texts.
+     * @param concurrently       Whether to create the instances concurrently.
+     * @return The instantiated objects.
+     */
+    public List<T> FromFiles(Collection<File> configurationFiles, Function<File, String> keyProvider, ClassLoader loader, boolean concurrently) {
+        return createFromFiles("FromFiles", configurationFiles, keyProvider, loader, concurrently);
+    }
+
+    /**
+     * Creates new instances of the model type from all files in the given directory (subdirectories and hidden files
+     * are ignored). The result contains the instances ordered by filename.
+     *
+     * @param directory The directory containing the configuration files.
+     * @return The instantiated objects.
+     */
+    public List<T> FromDirectory(File directory) {
+        return FromDirectory(directory, null, false);
+    }
+
+    /**
+     * Creates new instances of the model type from all files in the given directory (subdirectories and hidden files
+     * are ignored). The result contains the instances ordered by filename.
+     *
+     * @param directory The directory containing the configuration files.
+     * @param loader    The classloader to use for compiling the configuration texts.
+     * @return The instantiated objects.
+     */
+    public List<T> FromDirectory(File directory, ClassLoader loader) {
+        return FromDirectory(directory, loader, false);
+    }
+
+    /**
+     * Creates new instances of the model type from all files in the given directory (subdirectories and hidden files
+     * are ignored). If {@code concurrently} is true, the files are compiled and evaluated concurrently
+     * (see {@link ParallelCreation}), the result always contains the instances ordered by filename.
+     *
+     * @param directory    The directory containing the configuration files.
+     * @param loader       The classloader to use for compiling the configuration texts.
+     * @param concurrently Whether to create the instances concurrently.
+     * @return The instantiated objects.
+     */
+    public List<T> FromDirectory(File directory, ClassLoader loader, boolean concurrently) {
+        File[] files = directory.listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null)
+            throw new KlumModelException("Not a readable directory: " + directory);
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return createFromFiles("FromDirectory", Arrays.asList(files), null, loader, concurrently);
+    }
+
+    private List<T> createFromFiles(String verb, Collection<File> configurationFiles, Function<File, String> keyProvider, ClassLoader loader, boolean concurrently) {
+        if (!concurrently) {
+            List<T> result = new ArrayList<>(configurationFiles.size());
+            for (File file : configurationFiles) {
+                setBreadcrumbVerb(verb);
+                result.add(FactoryHelper.createFrom(type, file, keyProvider, loader));
+            }
+            return result;
+        }
+        // each file gets its own breadcrumb, created by the calling thread to keep the quantifiers in order
+        return ParallelCreation.createAll(
+                configurationFiles,
+                file -> BreadcrumbCollector.captureForChild(breadcrumbVerbPrefix + verb, "file", file.getPath()),
+                file -> FactoryHelper.createFrom(type, file, keyProvider, loader)
+        );
+    }
+
     /**
      * Creates a new instance of the model type by applying the given configuration map. By default, this
      * takes the key from a map entry that is named as the key field, other values of the map are set to their
@@ -200,9 +325,61 @@ public class KlumFactory<T> {
      * @return The instantiated object.
      */
     public T FromMap(Map<String, Object> configMap) {
+        setBreadcrumbVerb("FromMap");
         return FactoryHelper.createFromMap(type, configMap);
     }
 
+    /**
+     * Creates new instances of the model type from the given configuration maps, see {@link #FromMap(Map)}.
+     * The objects are created in a single batch (see {@link #Many(Closure)}), i.e. each phase is run for all objects
+     * before the next phase starts. The result contains the instances in the order of the maps.
+     *
+     * @param configMaps maps containing the values to set on the models.
+     * @return The instantiated objects.
+     */
+    public List<T> FromMaps(Iterable<? extends Map<String, Object>> configMaps) {
+        List<T> result = new ArrayList<>();
+        PhaseDriver.batch(() -> configMaps.forEach(configMap -> result.add(FromMap(configMap))));
+        return result;
+    }
+
+    /**
+     * Creates multiple independent models in a single batch. All models created directly in the given closure
+     * (i.e. models that are not part of another model) run through the lifecycle phases together after the closure
+     * has finished: each phase is run for all models before the next phase starts (see {@link PhaseDriver#batch(Runnable)}).
+     * <p>
+     * This is considerably faster than creating a large number of small models one by one.
+     * </p>
+     * <pre><code>
+     * def tenants = Tenant.Create.Many {
+     *     tenantConfigs.each { Tenant.Create.FromMap(it) }
+     * }
+     * </code></pre>
+     *
+     * @param body closure creating the models
+     * @return the created models of this factory's type, in the order of their creation.
+     */
+    public List<T> Many(Closure<?> body) {
+        return Many(false, body);
+    }
+
+    /**
+     * Creates multiple independent models in a single batch, see {@link #Many(Closure)}. If {@code parallelPhases}
+     * is true, the models of a phase are handled concurrently (see {@link PhaseDriver#batch(Runnable, boolean)}), so
+     * the phases of different models must not depend on each other.
+     *
+     * @param parallelPhases whether to run the phases of the different models concurrently
+     * @param body           closure creating the models
+     * @return the created models of this factory's type, in the order of their creation.
+     */
+    public List<T> Many(boolean parallelPhases, Closure<?> body) {
+        List<T> result = new ArrayList<>();
+        for (Object root : PhaseDriver.batch(body::call, parallelPhases))
+            if (type.isInstance(root))
+                result.add(type.cast(root));
+        return result;
+    }
+
     /**
      * Creates a template instance of the model type.
      * <p>
@@ -219,6 +396,7 @@ public class KlumFactory<T> {
      * @see #Template(Map, Closure)
      */
     public T Template() {
+        setBreadcrumbVerb("Template");
         return Template(null, null);
     }
 
@@ -239,6 +417,7 @@ public class KlumFactory<T> {
      * @return a template instance of the model type.
      */
     public T Template(Map<String, Object> configMap, Closure<?> configuration) {
+        setBreadcrumbVerb("Template");
         return FactoryHelper.createAsTemplate(type, configMap, configuration);
     }
 
@@ -259,6 +438,7 @@ public class KlumFactory<T> {
      * @see #Template(Map, Closure)
      */
     public T Template(Closure<?> configuration) {
+        setBreadcrumbVerb("Template");
         return Template(null, configuration);
     }
 
@@ -279,6 +459,7 @@ public class KlumFactory<T> {
      * @see #Template(Map, Closure)
      */
     public T Template(Map<String, Object> configMap) {
+        setBreadcrumbVerb("Template");
         return Template(configMap, null);
     }
 
@@ -300,6 +481,7 @@ public class KlumFactory<T> {
      * @return a template instance of the model type.
      */
     public T TemplateFrom(File scriptFile) {
+        setBreadcrumbVerb("TemplateFrom");
         return TemplateFrom(scriptFile, null);
     }
 
@@ -322,6 +504,7 @@ public class KlumFactory<T> {
      * @return a template instance of the model type.
      */
     public T TemplateFrom(File scriptFile, ClassLoader loader) {
+        setBreadcrumbVerb("TemplateFrom");
         return FactoryHelper.createAsTemplate(type, scriptFile, loader);
     }
 
@@ -343,6 +526,7 @@ public class KlumFactory<T> {
      * @return a template instance of the model type.
      */
     public T TemplateFrom(URL scriptUrl) {
+        setBreadcrumbVerb("TemplateFrom");
         return TemplateFrom(scriptUrl, null);
     }
 
@@ -365,6 +549,7 @@ public class KlumFactory<T> {
      * @return a template instance of the model type.
      */
     public T TemplateFrom(URL scriptUrl, ClassLoader loader) {
+        setBreadcrumbVerb("TemplateFrom");
         return FactoryHelper.createAsTemplate(type, scriptUrl, loader);
     }
 
@@ -388,6 +573,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T One(String key) {
+            setBreadcrumbVerb("One");
             return With(null, key, null);
         }
 
@@ -400,6 +586,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(Map<String, ?> configMap, String key, Closure<?> configuration) {
+            setBreadcrumbVerb("With");
             return FactoryHelper.create(type, configMap, key, configuration);
         }
 
@@ -413,6 +600,7 @@ public class KlumFactory<T> {
          */
         @Deprecated(forRemoval = true)
         public T With(String key) {
+            setBreadcrumbVerb("With");
             return With(null, key, null);
         }
 
@@ -424,6 +612,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(String key, Closure<?> configuration) {
+            setBreadcrumbVerb("With");
             return With(null, key, configuration);
         }
 
@@ -435,6 +624,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(Map<String, ?> configMap, String key) {
+            setBreadcrumbVerb("With");
             return With(configMap, key, null);
         }
 
@@ -446,6 +636,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T From(String key, String configuration) {
+            setBreadcrumbVerb("From");
             return From(key, configuration, null);
         }
 
@@ -458,6 +649,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T From(String key, String configuration, ClassLoader loader) {
+            setBreadcrumbVerb("From");
             return FactoryHelper.createFrom(type, key, configuration, loader);
         }
     }
@@ -481,6 +673,7 @@ public class KlumFactory<T> {
          */
         @Deprecated(forRemoval = true)
         public T With() {
+            setBreadcrumbVerb("With");
             return One();
         }
 
@@ -491,6 +684,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T One() {
+            setBreadcrumbVerb("One");
             return With(null, null);
         }
 
@@ -502,6 +696,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(Map<String, ?> configMap, Closure<?> configuration) {
+            setBreadcrumbVerb("With");
             return FactoryHelper.create(type, configMap, null, configuration);
         }
 
@@ -512,6 +707,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(Closure<?> configuration) {
+            setBreadcrumbVerb("With");
             return With(null, configuration);
         }
 
@@ -522,6 +718,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T With(Map<String, ?> configMap) {
+            setBreadcrumbVerb("With");
             return With(configMap, null);
         }
 
@@ -532,6 +729,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T From(String configuration) {
+            setBreadcrumbVerb("From");
             return From(configuration, null);
         }
 
@@ -543,6 +741,7 @@ public class KlumFactory<T> {
          * @return The instantiated object.
          */
         public T From(String configuration, ClassLoader loader) {
+            setBreadcrumbVerb("From");
             return FactoryHelper.createFrom(type, null, configuration, loader);
         }
     }
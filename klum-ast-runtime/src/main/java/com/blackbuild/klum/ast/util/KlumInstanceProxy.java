@@ -26,6 +26,8 @@ package com.blackbuild.klum.ast.util;
 import com.blackbuild.annodocimal.annotations.InlineJavadocs;
 import com.blackbuild.groovy.configdsl.transform.*;
 import com.blackbuild.klum.ast.process.BreadcrumbCollector;
+import com.blackbuild.klum.ast.process.BreadcrumbPath;
+import com.blackbuild.klum.ast.util.layer3.StructureUtil;
 import groovy.lang.*;
 import groovy.transform.Undefined;
 import org.codehaus.groovy.reflection.CachedField;
@@ -33,6 +35,7 @@ import org.codehaus.groovy.runtime.DefaultGroovyMethods;
 import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.*;
 import java.util.*;
@@ -46,7 +49,7 @@ import static java.lang.String.format;
  */
 @SuppressWarnings("unused") // called from generated code
 @InlineJavadocs
-public class KlumInstanceProxy {
+public class KlumInstanceProxy implements Serializable {
 
     public static final String NAME_OF_RW_FIELD_IN_MODEL_CLASS = "$rw";
     public static final String NAME_OF_PROXY_FIELD_IN_MODEL_CLASS = "$proxy";
@@ -54,8 +57,16 @@ public class KlumInstanceProxy {
 
     private final GroovyObject instance;
     private boolean manualValidation;
-    private String breadcrumbPath;
+    private BreadcrumbPath breadcrumbPath;
     private int breadCrumbQuantifier = 1;
+    // only set while a parallel block of this object is evaluated
+    private transient ParallelBlock parallelBlock;
+    // written once, after all other fields of the object, see freeze(). Not serialized, deserialized copies are
+    // frozen according to the current settings (see FreezePhase.freezeIfEnabled())
+    private transient volatile boolean frozen;
+    // hash code, only cached once the object is frozen, 0 if not yet computed. Not serialized, since hash codes
+    // of enums and other identity based values differ between JVMs
+    private transient int frozenHashCode;
 
     public KlumInstanceProxy(GroovyObject instance) {
         this.instance = instance;
@@ -69,7 +80,9 @@ public class KlumInstanceProxy {
     public static KlumInstanceProxy getProxyFor(Object target) {
         if (!isDslObject(target))
             throw new IllegalArgumentException(format("Object of type %s is no dsl object", target.getClass()));
-        return (KlumInstanceProxy) InvokerHelper.getAttribute(target, KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS);
+        return (KlumInstanceProxy) DslHelper.getCachedField(target.getClass(), KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS)
+                .map(field -> field.getProperty(target))
+                .orElseGet(() -> InvokerHelper.getAttribute(target, KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS));
     }
 
     protected GroovyObject getRwInstance() {
@@ -95,9 +108,106 @@ public class KlumInstanceProxy {
     }
 
     void setInstanceAttribute(String name, Object value) {
+        checkWritable(name);
         getCachedField(name).setProperty(instance, value);
     }
 
+    /**
+     * Freezes this object and all model objects reachable from it. Afterwards, only TRANSIENT fields of the frozen
+     * objects can be changed, all other changes made through the model's methods fail with a {@link KlumModelException}.
+     * <p>The frozen flag is volatile and written after all other fields of an object. Only a thread that reads the flag,
+     * i.e. calls {@link #isFrozen()} and gets true, is guaranteed to see all values written to that object before it was
+     * frozen. The generated getters do not read the flag, so models handed to other threads must still be published
+     * safely (or the reading thread must check {@code isFrozen()} first).</p>
+     * <p>Hash based Set fields are rebuilt before the objects are frozen, see {@link #rehashSets()}.</p>
+     */
+    public void freeze() {
+        rehashSets();
+        StructureUtil.visit(instance, (path, element, container) -> getProxyFor(element).frozen = true);
+    }
+
+    /**
+     * Rebuilds the hash based Set fields of this object and all model objects reachable from it. The hash code
+     * of an unkeyed object depends on its fields, so elements that were changed after being added to a set, for
+     * example by a later phase, might otherwise not be found in that set anymore.
+     */
+    public void rehashSets() {
+        StructureUtil.visit(instance, (path, element, container) -> getProxyFor(element).rehashOwnSets());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehashOwnSets() {
+        for (Field field : HASHED_SET_FIELDS.get(instance.getClass())) {
+            Object value = getCachedField(field.getName()).getProperty(instance);
+            if (value instanceof HashSet && !((HashSet<?>) value).isEmpty()) {
+                List<Object> elements = new ArrayList<>((HashSet<?>) value);
+                ((HashSet<?>) value).clear();
+                ((HashSet<Object>) value).addAll(elements);
+            }
+        }
+    }
+
+    private static final ClassValue<List<Field>> HASHED_SET_FIELDS = new ClassValue<List<Field>>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            List<Field> result = new ArrayList<>();
+            for (Class<?> layer : getDslHierarchyOf(type))
+                for (Field field : layer.getDeclaredFields())
+                    if (!Modifier.isStatic(field.getModifiers()) && Set.class.isAssignableFrom(field.getType()))
+                        result.add(field);
+            return result;
+        }
+    };
+
+    /**
+     * Returns whether this proxy's object has been frozen. This is a volatile read, i.e. if true is returned,
+     * the values written to the object before it was frozen are visible to the current thread.
+     * @return true if the object is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Returns the hash code cached for a frozen object.
+     * @return the cached hash code or 0 if the object is not frozen or the hash code was not yet computed
+     */
+    public int getCachedHashCode() {
+        return frozen ? frozenHashCode : 0;
+    }
+
+    /**
+     * Caches the given hash code if the object is frozen, i.e. if it cannot change anymore.
+     * @param hashCode the computed hash code
+     * @return the given hash code
+     */
+    public int cacheHashCode(int hashCode) {
+        if (frozen)
+            frozenHashCode = hashCode;
+        return hashCode;
+    }
+
+    /**
+     * Returns true if both this object and the given object are frozen and have a cached hash code and these
+     * differ, in which case the objects cannot be equal.
+     * @param other the object to compare with
+     * @return true if the objects are known to be different
+     */
+    public boolean hasDifferentCachedHashCode(Object other) {
+        int hashCode = frozenHashCode;
+        if (hashCode == 0 || !isDslObject(other))
+            return false;
+        int otherHashCode = getProxyFor(other).frozenHashCode;
+        return otherHashCode != 0 && otherHashCode != hashCode;
+    }
+
+    void checkWritable(String fieldName) {
+        if (!frozen) return;
+        Optional<Field> field = DslHelper.getField(instance.getClass(), fieldName);
+        if (field.isPresent() && DslHelper.getKlumFieldType(field.get()) == FieldType.TRANSIENT) return;
+        throw new KlumModelException(format("Cannot change '%s' of %s, the object is frozen.", fieldName, instance.getClass().getName()));
+    }
+
     // TODO: private?
     public Object getInstanceProperty(String name){
         return makeReadOnly(getInstanceAttributeOrGetter(name));
@@ -142,6 +252,30 @@ public class KlumInstanceProxy {
         applyClosure(rw, body);
     }
 
+    /**
+     * Evaluates the given closure against the instance's RW object, creating new elements of collections and maps
+     * concurrently.
+     * <p>The closures of new elements declared in the block are evaluated concurrently after the block itself
+     * has been evaluated. The elements are added to their fields in the order of their declaration before the block
+     * returns. All other statements of the block are executed immediately. Elements declared in a parallel block must
+     * not depend on each other during creation.</p>
+     * @param body Closure to be executed against the instance.
+     */
+    public void parallel(Closure<?> body) {
+        if (parallelBlock != null) {
+            applyClosure(getRwInstance(), body);
+            return;
+        }
+        ParallelBlock block = new ParallelBlock();
+        parallelBlock = block;
+        try {
+            applyClosure(getRwInstance(), body);
+        } finally {
+            parallelBlock = null;
+        }
+        block.complete();
+    }
+
     private void applyClosure(Object rw, Closure<?> body) {
         if (body == null) return;
         body.setDelegate(rw);
@@ -160,20 +294,26 @@ public class KlumInstanceProxy {
      */
     public void copyFrom(Object template) {
         if (template == null) return;
+        if (frozen)
+            throw new KlumModelException(format("Cannot copy into %s, the object is frozen.", instance.getClass().getName()));
         CopyHandler.copyToFrom(instance, template);
     }
 
     public <T> T cloneInstance() {
-        Object result = FactoryHelper.createInstance(instance.getClass(), (String) getNullableKey(), "{" + getLocalBreadcrumbPath() + "}");
+        String pathExtension = BreadcrumbCollector.isEnabled() ? "{" + getLocalBreadcrumbPath() + "}" : null;
+        Object result = FactoryHelper.createInstance(instance.getClass(), (String) getNullableKey(), pathExtension);
         KlumInstanceProxy cloneProxy = getProxyFor(result);
         cloneProxy.copyFrom(instance);
         return (T) result;
     }
 
     private @NotNull String getLocalBreadcrumbPath() {
-        if (breadcrumbPath == null || breadcrumbPath.length() < 2)
+        if (breadcrumbPath == null)
+            return "";
+        String path = breadcrumbPath.toString();
+        if (path.length() < 2)
             return "";
-        return breadcrumbPath.substring(breadcrumbPath.indexOf("/", 2) + 1);
+        return path.substring(path.indexOf("/", 2) + 1);
     }
 
     /**
@@ -323,6 +463,7 @@ public class KlumInstanceProxy {
         return setSingleField(fieldOrMethodName, createObjectViaConverter(converterType, converterMethod, args));
     }
 
+    // the ViaConverter methods are only called by classes compiled with older versions, the converter is called directly now
     private <T> T createObjectViaConverter(Class<?> converterType, String converterMethod, Object... args) {
         if (converterMethod == null)
             return (T) InvokerHelper.invokeConstructorOf(converterType, args);
@@ -345,8 +486,20 @@ public class KlumInstanceProxy {
      * @return the added element
      */
     public <T> T addElementToCollection(String fieldName, T element) {
-        Type elementType = DslHelper.getElementTypeOfField(instance.getClass(), fieldName);
+        return addElementToCollection(fieldName, getElementClassOfField(fieldName), element);
+    }
+
+    /**
+     * Adds an existing '{{singleElementName}}' to the '{{fieldName}}' collection.
+     * @param fieldName the name of the collection to add the new element to
+     * @param elementType the element type of the collection
+     * @param element the element to add
+     * @param <T> the type of the element
+     * @return the added element
+     */
+    public <T> T addElementToCollection(String fieldName, Class<?> elementType, T element) {
         element = forceCastClosure(element, elementType);
+        checkWritable(fieldName);
         Collection<T> target = getInstanceAttribute(fieldName);
         target.add(element);
         return element;
@@ -380,6 +533,11 @@ public class KlumInstanceProxy {
      */
     public <T> T addNewDslElementToCollection(Map<String, Object> namedParams, String collectionName, Class<? extends T> type, boolean explicitType, String key, Closure<T> body) {
         return BreadcrumbCollector.withBreadcrumb(null, explicitType ? shortNameFor(type) : null, key, () -> {
+            if (parallelBlock != null) {
+                T created = FactoryHelper.createInstance(type, key);
+                parallelBlock.add(() -> initializeNewInstance(created, namedParams, body), () -> addElementToCollection(collectionName, created));
+                return created;
+            }
             T created = createNewInstanceFromParamsAndClosure(type, key, namedParams, body);
             return addElementToCollection(collectionName, created);
         });
@@ -387,11 +545,15 @@ public class KlumInstanceProxy {
 
     private <T> T createNewInstanceFromParamsAndClosure(Class<? extends T> type, String key, Map<String, Object> namedParams, Closure<T> body) {
         T created = FactoryHelper.createInstance(type, key);
+        initializeNewInstance(created, namedParams, body);
+        return created;
+    }
+
+    private static void initializeNewInstance(Object created, Map<String, Object> namedParams, Closure<?> body) {
         KlumInstanceProxy createdProxy = getProxyFor(created);
         createdProxy.copyFromTemplate();
         LifecycleHelper.executeLifecycleMethods(createdProxy, PostCreate.class);
         createdProxy.apply(namedParams, body);
-        return created;
     }
 
     /**
@@ -400,7 +562,17 @@ public class KlumInstanceProxy {
      * @param elements the elements to add
      */
     public void addElementsToCollection(String fieldName, Object... elements) {
-        Arrays.stream(elements).forEach(element -> addElementToCollection(fieldName, element));
+        addElementsToCollection(fieldName, getElementClassOfField(fieldName), elements);
+    }
+
+    /**
+     * Adds one or more existing '{{singleElementName}}' to the '{{fieldName}}' collection.
+     * @param fieldName the name of the collection to add the new elements to
+     * @param elementType the element type of the collection
+     * @param elements the elements to add
+     */
+    public void addElementsToCollection(String fieldName, Class<?> elementType, Object... elements) {
+        addElementsToCollection(fieldName, elementType, Arrays.asList(elements));
     }
 
     /**
@@ -409,7 +581,20 @@ public class KlumInstanceProxy {
      * @param elements the elements to add
      */
     public void addElementsToCollection(String fieldName, Iterable<?> elements) {
-        elements.forEach(element -> addElementToCollection(fieldName, element));
+        addElementsToCollection(fieldName, getElementClassOfField(fieldName), elements);
+    }
+
+    /**
+     * Adds one or more existing '{{singleElementName}}' to the '{{fieldName}}' collection.
+     * @param fieldName the name of the collection to add the new elements to
+     * @param elementType the element type of the collection
+     * @param elements the elements to add
+     */
+    public void addElementsToCollection(String fieldName, Class<?> elementType, Iterable<?> elements) {
+        checkWritable(fieldName);
+        Collection<Object> target = getInstanceAttribute(fieldName);
+        for (Object element : elements)
+            target.add(forceCastClosure(element, elementType));
     }
 
     /**
@@ -418,7 +603,18 @@ public class KlumInstanceProxy {
      * @param values map of values to add
      */
     public <K,V> void addElementsToMap(String fieldName, Map<K, V> values) {
-        values.forEach((key, value) -> addElementToMap(fieldName, key, value));
+        addElementsToMap(fieldName, getElementClassOfField(fieldName), values);
+    }
+
+    /**
+     * Adds one or more existing '{{singleElementName}}' to the '{{fieldName}}' map.
+     * @param fieldName the name of the collection to add the new elements to
+     * @param valueType the value type of the map
+     * @param values map of values to add
+     */
+    public <K,V> void addElementsToMap(String fieldName, Class<?> valueType, Map<K, V> values) {
+        MapAdder<K, V> adder = new MapAdder<>(fieldName, valueType);
+        values.forEach(adder::put);
     }
 
     /**
@@ -430,7 +626,21 @@ public class KlumInstanceProxy {
      * @param values the values to add
      */
     public <V> void addElementsToMap(String fieldName, Iterable<V> values) {
-        values.forEach(value -> addElementToMap(fieldName, null, value));
+        addElementsToMap(fieldName, getElementClassOfField(fieldName), values);
+    }
+
+    /**
+     * Adds one or more existing '{{singleElementName}}' to the '{{fieldName}}' map. The
+     * key is determined by the keyMapping closure of the target field's
+     * {@link com.blackbuild.groovy.configdsl.transform.Field} annotation or the natural key field
+     * if the type is a keyed dsl class.
+     * @param fieldName the name of the map to add the new elements to
+     * @param valueType the value type of the map
+     * @param values the values to add
+     */
+    public <V> void addElementsToMap(String fieldName, Class<?> valueType, Iterable<V> values) {
+        MapAdder<Object, V> adder = new MapAdder<>(fieldName, valueType);
+        values.forEach(value -> adder.put(null, value));
     }
 
     /**
@@ -442,7 +652,20 @@ public class KlumInstanceProxy {
      * @param values the values to add
      */
     public void addElementsToMap(String fieldName, Object... values) {
-        Arrays.stream(values).forEach(value -> addElementToMap(fieldName, null, value));
+        addElementsToMap(fieldName, getElementClassOfField(fieldName), Arrays.asList(values));
+    }
+
+    /**
+     * Adds one or more existing '{{singleElementName}}' to the '{{fieldName}}' map. The
+     * key is determined by the keyMapping closure of the target field's
+     * {@link com.blackbuild.groovy.configdsl.transform.Field} annotation or the natural key field
+     * if the type is a keyed dsl class.
+     * @param fieldName the name of the map to add the new elements to
+     * @param valueType the value type of the map
+     * @param values the values to add
+     */
+    public void addElementsToMap(String fieldName, Class<?> valueType, Object... values) {
+        addElementsToMap(fieldName, valueType, Arrays.asList(values));
     }
 
     /**
@@ -467,6 +690,11 @@ public class KlumInstanceProxy {
                 return (T) getProxyFor(existing).apply(namedParams, body);
             }
 
+            if (parallelBlock != null) {
+                T created = FactoryHelper.createInstance(type, key);
+                parallelBlock.addToMap(mapName, key, () -> initializeNewInstance(created, namedParams, body), () -> doAddElementToMap(mapName, key, created));
+                return created;
+            }
             T created = createNewInstanceFromParamsAndClosure(type, key, namedParams, body);
             return doAddElementToMap(mapName, key, created);
         });
@@ -483,6 +711,18 @@ public class KlumInstanceProxy {
         return doAddElementToMap(fieldName, key, value);
     }
 
+    /**
+     * Adds a single existing '{{singleElementName}}' to the '{{fieldName}}' map.
+     * @param fieldName the name of the map to add the new elements to
+     * @param valueType the value type of the map
+     * @param key the key to use for the new element
+     * @param value the value to add
+     * @return the added value
+     */
+    public <K,V> V addElementToMap(String fieldName, Class<?> valueType, K key, V value) {
+        return new MapAdder<K, V>(fieldName, valueType).put(key, value);
+    }
+
     /**
      * Adds new instance of the target type to a map via a converter method.
      * @param fieldOrMethodName the name of the map to add the new element to
@@ -496,16 +736,39 @@ public class KlumInstanceProxy {
     }
 
     private <K, V> V doAddElementToMap(String fieldName, K key, V value) {
-        Type elementType = getElementTypeOfField(instance.getClass(), fieldName);
-        key = determineKeyFromMappingClosure(fieldName, value, key);
-        if (key == null && isKeyed(getClassFromType(elementType)))
-            key = (K) getProxyFor(value).getKey();
-        Map<K, V> target = getInstanceAttribute(fieldName);
-        value = forceCastClosure(value, elementType);
-        if (key == null)
-            throw new IllegalArgumentException("Key is null");
-        target.put(key, value);
-        return value;
+        return new MapAdder<K, V>(fieldName, getElementClassOfField(fieldName)).put(key, value);
+    }
+
+    private Class<?> getElementClassOfField(String fieldName) {
+        return getClassFromType(getElementTypeOfField(instance.getClass(), fieldName));
+    }
+
+    // field metadata is resolved once per batch, not for every single element
+    private class MapAdder<K, V> {
+        private final Class<?> valueType;
+        private final boolean keyed;
+        private final Closure<K> keyMapping;
+        private final Map<K, V> target;
+
+        MapAdder(String fieldName, Class<?> valueType) {
+            this.valueType = valueType;
+            this.keyed = isKeyed(valueType);
+            checkWritable(fieldName);
+            this.keyMapping = getKeyMappingClosure(fieldName);
+            this.target = getInstanceAttribute(fieldName);
+        }
+
+        V put(K key, V value) {
+            if (keyMapping != null)
+                key = keyMapping.call(value);
+            if (key == null && keyed)
+                key = (K) getProxyFor(value).getKey();
+            value = forceCastClosure(value, valueType);
+            if (key == null)
+                throw new IllegalArgumentException("Key is null");
+            target.put(key, value);
+            return value;
+        }
     }
 
     private <V> V forceCastClosure(Object value, Type elementType) {
@@ -520,13 +783,13 @@ public class KlumInstanceProxy {
             throw new IllegalArgumentException(format("Value is not of type %s", elementType));
     }
 
-    private <K, V> K determineKeyFromMappingClosure(String fieldName, V element, K defaultValue) {
+    private <K> Closure<K> getKeyMappingClosure(String fieldName) {
         //noinspection unchecked
         return DslHelper.getOptionalFieldAnnotation(instance.getClass(), fieldName, FIELD_ANNOTATION)
                 .map(com.blackbuild.groovy.configdsl.transform.Field::keyMapping)
                 .filter(DslHelper::isClosure)
-                .map(value -> (K) ClosureHelper.invokeClosure(value, element))
-                .orElse(defaultValue);
+                .map(value -> (Closure<K>) ClosureHelper.createClosureInstance(value))
+                .orElse(null);
     }
 
     public static final String ADD_ELEMENTS_FROM_SCRIPTS_TO_COLLECTION = "addElementsFromScriptsToCollection";
@@ -539,11 +802,8 @@ public class KlumInstanceProxy {
      */
     @SafeVarargs
     public final void addElementsFromScriptsToCollection(String fieldName, Class<? extends Script>... scripts) {
-        Class<?> elementType = (Class<?>) getElementTypeOfField(instance.getClass(), fieldName);
-        Arrays.stream(scripts).forEach(script -> addElementToCollection(
-                fieldName,
-                InvokerHelper.invokeStaticMethod(elementType, "createFrom", script))
-        );
+        Class<?> elementType = getElementClassOfField(fieldName);
+        addElementsToCollection(fieldName, elementType, createFromScripts(elementType, scripts));
     }
 
     public static final String ADD_ELEMENTS_FROM_SCRIPTS_TO_MAP = "addElementsFromScriptsToMap";
@@ -556,14 +816,26 @@ public class KlumInstanceProxy {
      */
     @SafeVarargs
     public final void addElementsFromScriptsToMap(String fieldName, Class<? extends Script>... scripts) {
-        Class<?> elementType = (Class<?>) getElementTypeOfField(instance.getClass(), fieldName);
-        Arrays.stream(scripts).forEach(script -> addElementToMap(
-                fieldName,
-                null,
-                InvokerHelper.invokeStaticMethod(elementType, "createFrom", script))
+        Class<?> elementType = getElementClassOfField(fieldName);
+        addElementsToMap(fieldName, elementType, createFromScripts(elementType, scripts));
+    }
+
+    // inside a parallel block, scripts are evaluated concurrently, but the elements are added in order by the current thread
+    private List<Object> createFromScripts(Class<?> elementType, Class<? extends Script>[] scripts) {
+        if (parallelBlock == null)
+            return Arrays.stream(scripts).map(script -> createFromScript(elementType, script)).collect(Collectors.toList());
+        // breadcrumbs are created by the calling thread to keep the quantifiers in order, the verb is set by the generated createFrom method
+        return ParallelCreation.createAll(
+                Arrays.asList(scripts),
+                script -> BreadcrumbCollector.captureForChild("createFrom", "script", shortNameFor(script)),
+                script -> createFromScript(elementType, script)
         );
     }
 
+    private static Object createFromScript(Class<?> elementType, Class<? extends Script> script) {
+        return InvokerHelper.invokeStaticMethod(elementType, "createFrom", script);
+    }
+
     Object invokeMethod(String methodName, Object... args) {
         return InvokerHelper.invokeMethod(instance, methodName, args);
     }
@@ -600,12 +872,18 @@ public class KlumInstanceProxy {
     }
 
     public String getBreadcrumbPath() {
+        if (breadcrumbPath == null)
+            return null;
         if (breadCrumbQuantifier > 1)
             return breadcrumbPath + "." + breadCrumbQuantifier;
-        return breadcrumbPath;
+        return breadcrumbPath.toString();
     }
 
     public void setBreadcrumbPath(String breadcrumbPath) {
+        setBreadcrumbPath(BreadcrumbPath.of(breadcrumbPath));
+    }
+
+    public void setBreadcrumbPath(BreadcrumbPath breadcrumbPath) {
         if (this.breadcrumbPath != null)
             throw new IllegalStateException("Breadcrumb path already set to " + this.breadcrumbPath);
         this.breadcrumbPath = Objects.requireNonNull(breadcrumbPath);
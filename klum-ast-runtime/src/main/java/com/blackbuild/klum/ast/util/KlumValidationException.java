@@ -42,7 +42,7 @@ public class KlumValidationException extends KlumException {
 
     private void addException(KlumVisitorException validationError) {
         addSuppressed(validationError);
-        this.validationErrors.computeIfAbsent(validationError.getBreadcrumbPath(), k -> new ArrayList<>()).add(validationError);
+        this.validationErrors.computeIfAbsent(validationError.getLocator(), k -> new ArrayList<>()).add(validationError);
     }
 
     public KlumValidationException() {
@@ -65,7 +65,7 @@ public class KlumValidationException extends KlumException {
         StringBuilder sb = new StringBuilder();
         sb.append("Validation errors:\n");
         validationErrors.forEach((key, value) -> {
-            sb.append("  at ").append(key).append(":\n");
+            sb.append("  at ").append(key != null ? key : "<unknown>").append(":\n");
             value.forEach(e -> sb.append("    - ").append(e.getUnlocalizedMessage()).append("\n"));
         });
         return sb.toString();
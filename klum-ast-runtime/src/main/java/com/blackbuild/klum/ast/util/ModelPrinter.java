@@ -0,0 +1,227 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import com.blackbuild.groovy.configdsl.transform.KlumGenerated;
+import com.blackbuild.groovy.configdsl.transform.Owner;
+import org.codehaus.groovy.reflection.CachedField;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders model objects as strings, used by the generated {@code toString()} methods.
+ * <p>
+ * The output has the same format as the one of {@code groovy.transform.ToString}, i.e. the class name followed by the
+ * values of the fields declared in the model class, owner fields excluded. In order to keep the output of large models
+ * small, it is bounded: nested model objects deeper than the maximum depth are abbreviated as {@code ClassName(...)},
+ * collections and maps are cut after the maximum number of elements, and objects already being rendered (i.e. cycles)
+ * are written as {@code ClassName(<cycle>)}.
+ * </p>
+ * <p>
+ * The default limits can be set via the system properties {@value #MAX_DEPTH_PROPERTY} (default
+ * {@value #DEFAULT_MAX_DEPTH}) and {@value #MAX_ELEMENTS_PROPERTY} (default {@value #DEFAULT_MAX_ELEMENTS}) or the
+ * respective setters. The output is written directly to an {@link Appendable}, so a model can also be written to a
+ * log or a file without creating a string first.
+ * </p>
+ */
+public class ModelPrinter {
+
+    public static final String MAX_DEPTH_PROPERTY = "klum.toString.maxDepth";
+    public static final String MAX_ELEMENTS_PROPERTY = "klum.toString.maxElements";
+    public static final int DEFAULT_MAX_DEPTH = 3;
+    public static final int DEFAULT_MAX_ELEMENTS = 20;
+
+    private static volatile int defaultMaxDepth = Integer.getInteger(MAX_DEPTH_PROPERTY, DEFAULT_MAX_DEPTH);
+    private static volatile int defaultMaxElements = Integer.getInteger(MAX_ELEMENTS_PROPERTY, DEFAULT_MAX_ELEMENTS);
+
+    // the fields rendered for each model class, in declaration order
+    private static final ClassValue<List<CachedField>> FIELDS = new ClassValue<List<CachedField>>() {
+        @Override
+        protected List<CachedField> computeValue(Class<?> type) {
+            return getRenderedFields(type);
+        }
+    };
+
+    // whether objects of a class are rendered by this printer, or by their own toString() method
+    private static final ClassValue<Boolean> RENDERED = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return DslHelper.isDslType(type) && DslHelper.getMethod(type, "toString")
+                    .map(method -> method.isAnnotationPresent(KlumGenerated.class))
+                    .orElse(false);
+        }
+    };
+
+    private final Appendable out;
+    private final int maxDepth;
+    private final int maxElements;
+    private final Set<Object> active = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private ModelPrinter(Appendable out, int maxDepth, int maxElements) {
+        this.out = out;
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+    }
+
+    /**
+     * Renders the given model object using the default limits.
+     * @param model the model object
+     * @return the bounded string representation of the object
+     */
+    public static String toString(Object model) {
+        StringBuilder result = new StringBuilder();
+        try {
+            appendTo(result, model, defaultMaxDepth, defaultMaxElements);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes the given model object to the given target.
+     * @param out the target to write to
+     * @param model the model object
+     * @param maxDepth the number of levels of nested model objects to render, nested objects below are abbreviated
+     * @param maxElements the maximum number of elements rendered for each collection or map
+     * @throws IOException if the target cannot be written to
+     */
+    public static void appendTo(Appendable out, Object model, int maxDepth, int maxElements) throws IOException {
+        new ModelPrinter(out, maxDepth, maxElements).appendModel(model, 0);
+    }
+
+    public static int getDefaultMaxDepth() {
+        return defaultMaxDepth;
+    }
+
+    public static void setDefaultMaxDepth(int maxDepth) {
+        defaultMaxDepth = maxDepth;
+    }
+
+    public static int getDefaultMaxElements() {
+        return defaultMaxElements;
+    }
+
+    public static void setDefaultMaxElements(int maxElements) {
+        defaultMaxElements = maxElements;
+    }
+
+    private void appendModel(Object model, int depth) throws IOException {
+        out.append(model.getClass().getName()).append('(');
+        if (depth > maxDepth) {
+            out.append("...");
+        } else if (!active.add(model)) {
+            out.append("<cycle>");
+        } else {
+            try {
+                boolean first = true;
+                for (CachedField field : FIELDS.get(model.getClass())) {
+                    if (!first)
+                        out.append(", ");
+                    first = false;
+                    appendValue(field.getProperty(model), depth + 1);
+                }
+            } finally {
+                active.remove(model);
+            }
+        }
+        out.append(')');
+    }
+
+    private void appendValue(Object value, int depth) throws IOException {
+        if (value == null)
+            out.append("null");
+        else if (RENDERED.get(value.getClass()))
+            appendModel(value, depth);
+        else if (value instanceof Collection)
+            appendElements(((Collection<?>) value).iterator(), ((Collection<?>) value).size(), depth);
+        else if (value instanceof Map)
+            appendEntries((Map<?, ?>) value, depth);
+        else
+            out.append(InvokerHelper.toString(value));
+    }
+
+    private void appendElements(Iterator<?> elements, int size, int depth) throws IOException {
+        out.append('[');
+        for (int i = 0; i < size && elements.hasNext(); i++) {
+            if (i > 0)
+                out.append(", ");
+            if (i == maxElements) {
+                out.append("... (").append(String.valueOf(size - maxElements)).append(" more)");
+                break;
+            }
+            appendValue(elements.next(), depth);
+        }
+        out.append(']');
+    }
+
+    private void appendEntries(Map<?, ?> map, int depth) throws IOException {
+        if (map.isEmpty()) {
+            out.append("[:]");
+            return;
+        }
+        out.append('[');
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (i > 0)
+                out.append(", ");
+            if (i == maxElements) {
+                out.append("... (").append(String.valueOf(map.size() - maxElements)).append(" more)");
+                break;
+            }
+            appendValue(entry.getKey(), depth);
+            out.append(':');
+            appendValue(entry.getValue(), depth);
+            i++;
+        }
+        out.append(']');
+    }
+
+    // same fields as groovy.transform.ToString(includeFields = true, includeSuper = false) without owners
+    private static List<CachedField> getRenderedFields(Class<?> type) {
+        List<Class<?>> hierarchy = DslHelper.getDslHierarchyOf(type);
+        Class<?> layer = hierarchy.isEmpty() ? type : hierarchy.get(hierarchy.size() - 1);
+        List<CachedField> result = new ArrayList<>();
+        for (Field field : layer.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic() || field.getName().contains("$"))
+                continue;
+            if (field.isAnnotationPresent(Owner.class))
+                continue;
+            result.add(new CachedField(field));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+
+/**
+ * Reads and writes snapshots of completely created models. A snapshot contains a model after all phases have been
+ * run, so reading a snapshot is much cheaper than executing the model script again.
+ * <p>
+ * Snapshots are usually created at build time (see the 'snapshots' option of the KlumAST model Gradle plugin) and
+ * placed next to the model descriptor as 'META-INF/klum-model/&lt;type&gt;.snapshot'. {@link KlumFactory#FromClasspath()}
+ * prefers such a snapshot over executing the model script. If a snapshot does not match the current schema classes,
+ * it is ignored and the script is executed instead. Snapshots can be ignored completely by setting the system property
+ * {@value #ENABLED_PROPERTY} to 'false'.
+ * </p>
+ * <p>
+ * The model itself is encoded by a {@link SnapshotCodec}. Without additional codecs on the classpath, Java serialization
+ * is used. Models containing values that are not serializable (for example closures defined in a model script)
+ * cannot be snapshotted.
+ * </p>
+ */
+public final class ModelSnapshot {
+
+    public static final String ENABLED_PROPERTY = "klum.snapshots.enabled";
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final byte[] MAGIC = "KLUMSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 2;
+    private static final SnapshotCodec JAVA_CODEC = new JavaSerializationCodec();
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+
+    private ModelSnapshot() {
+        // static only
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the use of snapshots by {@link KlumFactory#FromClasspath()}.
+     * @param enabled false to always execute the model script
+     */
+    public static void setEnabled(boolean enabled) {
+        ModelSnapshot.enabled = enabled;
+    }
+
+    /**
+     * Returns the classpath resource containing the snapshot for the given type.
+     * @param type the model type
+     * @return the resource path of the snapshot
+     */
+    public static String resourcePathFor(Class<?> type) {
+        return "META-INF/klum-model/" + type.getName() + SNAPSHOT_SUFFIX;
+    }
+
+    /**
+     * Writes a snapshot of the given model into the given stream. The snapshot is encoded with the first
+     * {@link SnapshotCodec} found by the classloader of the model, or using java serialization if there is none.
+     * @param model the completely created model
+     * @param stream the stream to write to, is not closed
+     */
+    public static void write(Object model, OutputStream stream) throws IOException {
+        write(model, stream, findWriteCodec(model.getClass().getClassLoader()));
+    }
+
+    /**
+     * Writes a snapshot of the given model into the given stream using the given codec.
+     * @param model the completely created model
+     * @param stream the stream to write to, is not closed
+     * @param codec the codec to encode the model with
+     */
+    public static void write(Object model, OutputStream stream, SnapshotCodec codec) throws IOException {
+        DataOutputStream header = new DataOutputStream(stream);
+        header.write(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeUTF(codec.getName());
+        header.writeUTF(model.getClass().getName());
+        header.flush();
+        codec.write(model, stream);
+    }
+
+    /**
+     * Reads a snapshot of a model of the given type from the given stream.
+     * @param type the expected type of the model
+     * @param stream the stream to read from, is not closed
+     * @param loader the classloader to resolve the model classes and the codec with
+     * @param <T> the model type
+     * @return the model
+     * @throws IOException if the stream does not contain a valid snapshot of the given type, if the codec is not
+     *                     available or if the snapshot does not match the current classes
+     */
+    public static <T> T read(Class<T> type, InputStream stream, ClassLoader loader) throws IOException {
+        DataInputStream header = new DataInputStream(stream);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new StreamCorruptedException("Not a model snapshot");
+        int version = header.readInt();
+        if (version != FORMAT_VERSION)
+            throw new StreamCorruptedException("Unsupported snapshot version " + version);
+        SnapshotCodec codec = findReadCodec(header.readUTF(), loader);
+        String modelClass = header.readUTF();
+
+        Object result = codec.read(stream, loader);
+        if (!type.isInstance(result))
+            throw new InvalidObjectException("Snapshot contains " + modelClass + ", expected " + type.getName());
+        return type.cast(result);
+    }
+
+    private static SnapshotCodec findWriteCodec(ClassLoader loader) {
+        for (SnapshotCodec codec : ServiceLoader.load(SnapshotCodec.class, loader))
+            return codec;
+        return JAVA_CODEC;
+    }
+
+    private static SnapshotCodec findReadCodec(String name, ClassLoader loader) throws IOException {
+        if (JAVA_CODEC.getName().equals(name))
+            return JAVA_CODEC;
+        for (SnapshotCodec codec : ServiceLoader.load(SnapshotCodec.class, loader))
+            if (codec.getName().equals(name))
+                return codec;
+        throw new InvalidClassException("Snapshot codec '" + name + "' is not available");
+    }
+
+    /**
+     * Reads the snapshot for the given type from the classpath.
+     * @param type the model type
+     * @param loader the classloader to read the snapshot and resolve the model classes with
+     * @param <T> the model type
+     * @return the model or null if snapshots are disabled, no snapshot is present or the snapshot does not match
+     * the current classes.
+     */
+    public static <T> T readFromClasspath(Class<T> type, ClassLoader loader) {
+        if (!enabled) return null;
+        try (InputStream stream = loader.getResourceAsStream(resourcePathFor(type))) {
+            if (stream == null) return null;
+            return read(type, stream, loader);
+        } catch (IOException | KlumModelException | ClassCastException e) {
+            // outdated or broken snapshot, fall back to the script
+            return null;
+        }
+    }
+
+    /**
+     * Creates snapshots for the given model types by running the model scripts from the classpath.
+     * This is called by the Gradle plugin at build time.
+     * @param args the target directory followed by the names of the model types
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1)
+            throw new IllegalArgumentException("Usage: ModelSnapshot <targetDirectory> <modelType>...");
+        Path targetDirectory = Paths.get(args[0]);
+        Files.createDirectories(targetDirectory);
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        setEnabled(false);
+        for (int i = 1; i < args.length; i++)
+            writeSnapshot(loader.loadClass(args[i]), loader, targetDirectory);
+    }
+
+    private static void writeSnapshot(Class<?> type, ClassLoader loader, Path targetDirectory) throws IOException {
+        Object model = FactoryHelper.createFromClasspath(type, loader);
+        Path target = targetDirectory.resolve(type.getName() + SNAPSHOT_SUFFIX);
+        Path temp = Files.createTempFile(targetDirectory, type.getName(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp)) {
+                write(model, stream);
+            } catch (NotSerializableException e) {
+                throw new KlumModelException("Model for " + type.getName() + " contains a value that can not be serialized: " + e.getMessage(), e);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static class JavaSerializationCodec implements SnapshotCodec {
+        @Override
+        public String getName() {
+            return "java";
+        }
+
+        @Override
+        public void write(Object model, OutputStream stream) throws IOException {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(stream));
+            out.writeObject(model);
+            out.flush();
+        }
+
+        @Override
+        public Object read(InputStream stream, ClassLoader loader) throws IOException {
+            try {
+                return new LoaderAwareObjectInputStream(new BufferedInputStream(stream), loader).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new InvalidClassException(e.getMessage());
+            }
+        }
+    }
+
+    private static class LoaderAwareObjectInputStream extends ObjectInputStream {
+        private final ClassLoader loader;
+
+        LoaderAwareObjectInputStream(InputStream in, ClassLoader loader) throws IOException {
+            super(in);
+            this.loader = loader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, loader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the elements declared inside a {@code parallel} block of a single object. The elements are instantiated
+ * immediately, but their closures are evaluated concurrently when the block is completed. Afterwards, the elements
+ * are added to their fields in the order of their declaration.
+ */
+final class ParallelBlock {
+
+    private final List<DeferredElement> elements = new ArrayList<>();
+    private final Set<List<Object>> mapKeys = new HashSet<>();
+
+    void add(Runnable configuration, Runnable attachment) {
+        elements.add(new DeferredElement(KlumContext.capture(), configuration, attachment));
+    }
+
+    void addToMap(String mapName, Object key, Runnable configuration, Runnable attachment) {
+        if (!mapKeys.add(Arrays.asList(mapName, key)))
+            throw new KlumModelException(String.format("Element '%s' of '%s' is declared more than once in the same parallel block.", key, mapName));
+        add(configuration, attachment);
+    }
+
+    void complete() {
+        ParallelCreation.createAll(elements, element -> element.context, element -> {
+            element.configuration.run();
+            return element;
+        });
+        elements.forEach(element -> element.attachment.run());
+    }
+
+    private static final class DeferredElement {
+        private final KlumContext context;
+        private final Runnable configuration;
+        private final Runnable attachment;
+
+        private DeferredElement(KlumContext context, Runnable configuration, Runnable attachment) {
+            this.context = context;
+            this.configuration = configuration;
+            this.attachment = attachment;
+        }
+    }
+}
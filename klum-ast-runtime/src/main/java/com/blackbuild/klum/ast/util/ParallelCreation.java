@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Creates multiple independent model objects concurrently, for example from a number of files or scripts.
+ * <p>
+ * The objects are created on the configured executor (by default a pool of daemon threads, one per processor).
+ * The {@link KlumContext} of the calling thread, i.e. active templates, the current breadcrumb and the model root,
+ * is captured for each object and bound in the worker thread.
+ * </p>
+ * <p>
+ * If the objects are created as part of an enclosing model, the workers do not run any phases, instead the phases
+ * are run once for the whole model by the calling thread. Otherwise, each object runs its own phases.
+ * </p>
+ * <p>
+ * The results are always returned in the order of the sources. Nested batches (created by a worker) are created
+ * sequentially by that worker.
+ * </p>
+ */
+public final class ParallelCreation {
+
+    // marks contexts of workers, not inherited by contexts captured in a worker
+    private static final KlumContext.Key<Boolean> IN_WORKER = KlumContext.key("parallelWorker", () -> Boolean.TRUE, inWorker -> null);
+    private static volatile Executor executor;
+
+    private ParallelCreation() {
+        // static only
+    }
+
+    /**
+     * Sets the executor to use for concurrent creation. Using {@code Runnable::run} effectively disables
+     * concurrent creation.
+     *
+     * @param executor the executor to use, null to use the default executor
+     */
+    public static void setExecutor(Executor executor) {
+        ParallelCreation.executor = executor;
+    }
+
+    public static Executor getExecutor() {
+        Executor result = executor;
+        if (result == null) {
+            synchronized (ParallelCreation.class) {
+                if (executor == null)
+                    executor = createDefaultExecutor();
+                result = executor;
+            }
+        }
+        return result;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "klum-creation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates an object for each of the given sources using the given creator.
+     *
+     * @param sources the sources to create the objects from
+     * @param creator function creating a single object from a source
+     * @param <S>     the type of the sources
+     * @param <T>     the type of the created objects
+     * @return the created objects, in the order of the sources
+     */
+    public static <S, T> List<T> createAll(Collection<? extends S> sources, Function<? super S, ? extends T> creator) {
+        return createAll(sources, null, creator);
+    }
+
+    /**
+     * Creates an object for each of the given sources, each in its own context. The contexts are provided by the
+     * calling thread, usually by capturing the current context at the point where the object was declared.
+     * Unlike {@link #createAll(Collection, Function)}, the given contexts are used even if the objects are created
+     * sequentially.
+     *
+     * @param sources  the sources to create the objects from
+     * @param contexts function providing the context for a source, if null, the current context is captured
+     * @param creator  function creating a single object from a source
+     * @param <S>      the type of the sources
+     * @param <T>      the type of the created objects
+     * @return the created objects, in the order of the sources
+     */
+    static <S, T> List<T> createAll(Collection<? extends S> sources, Function<? super S, KlumContext> contexts, Function<? super S, ? extends T> creator) {
+        List<T> result = new ArrayList<>(sources.size());
+        boolean inWorker = KlumContext.peekCurrent(IN_WORKER) != null;
+        boolean concurrent = sources.size() > 1 && !inWorker;
+        if (!concurrent && contexts == null) {
+            sources.forEach(source -> result.add(creator.apply(source)));
+            return result;
+        }
+
+        List<KlumContext> sourceContexts = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            KlumContext context = contexts != null ? contexts.apply(source) : KlumContext.capture();
+            if (concurrent || inWorker)
+                context.set(IN_WORKER, Boolean.TRUE);
+            sourceContexts.add(context);
+        }
+
+        if (!concurrent) {
+            Iterator<KlumContext> contextIterator = sourceContexts.iterator();
+            sources.forEach(source -> result.add(contextIterator.next().call(() -> creator.apply(source))));
+            return result;
+        }
+
+        Executor currentExecutor = getExecutor();
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(sources.size());
+        Iterator<KlumContext> contextIterator = sourceContexts.iterator();
+        for (S source : sources) {
+            KlumContext context = contextIterator.next();
+            futures.add(CompletableFuture.supplyAsync(() -> context.call(() -> creator.apply(source)), currentExecutor));
+        }
+
+        // wait for all objects, even if one fails, and report the first failure in source order
+        RuntimeException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                result.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null)
+                    failure = unwrap(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+        return result;
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return new KlumModelException(cause);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+import groovy.util.DelegatingScript;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Caches compiled model scripts, so that creating a model from the same text (or file or url) multiple times
+ * only compiles the script once.
+ * <p>
+ * Scripts are cached by their text, name and parent classloader. The cache is bounded (by default 256 scripts,
+ * can be changed using the system property {@value #MAX_SIZE_PROPERTY} or {@link #setMaxSize(int)}), a size of 0
+ * disables caching completely.
+ * </p>
+ * <p>
+ * Optionally, compiled scripts can additionally be stored in a directory (set via the system property
+ * {@value #DIRECTORY_PROPERTY} or {@link #setDirectory(Path)}). Scripts found in that directory are loaded
+ * without invoking the Groovy compiler at all. Persistent entries are identified by the script text and name, the
+ * Groovy and KlumAST versions, and a fingerprint of the classpath of the parent classloader.
+ * </p>
+ * <p>
+ * Each script is compiled by its own classloader, so that a script class (and its classloader) can be garbage
+ * collected as soon as it has been evicted from the cache and no model objects reference it. The cache neither keeps
+ * the parent classloaders nor the script classes alive: the parent is only weakly referenced, the compiled classes
+ * only softly, so that unused parents (e.g. of undeployed applications) can be collected together with the scripts
+ * compiled for them.
+ * </p>
+ */
+public final class ScriptCache {
+
+    public static final String MAX_SIZE_PROPERTY = "klum.scriptCache.maxSize";
+    public static final String DIRECTORY_PROPERTY = "klum.scriptCache.directory";
+    private static final String PERSISTENT_ENTRY_SUFFIX = ".klumscript";
+
+    private static final CompilerConfiguration COMPILER_CONFIGURATION = createCompilerConfiguration();
+    private static final AtomicInteger SCRIPT_COUNTER = new AtomicInteger();
+
+    private static volatile int maxSize = Integer.getInteger(MAX_SIZE_PROPERTY, 256);
+    private static volatile Path directory = System.getProperty(DIRECTORY_PROPERTY) != null ? Paths.get(System.getProperty(DIRECTORY_PROPERTY)) : null;
+
+    // access order for LRU semantics, guarded by itself. The values would keep their parent loader alive, so they are soft
+    private static final Map<ScriptKey, SoftReference<Class<? extends Script>>> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+
+    // loaders used by the compiler of the persistent cache, only weakly referenced, since they reference their parent. Guarded by itself.
+    private static final Map<ClassLoader, WeakReference<GroovyClassLoader>> RESOLVERS = new WeakHashMap<>();
+
+    // classpath fingerprints are only computed once per loader. Guarded by itself.
+    private static final Map<ClassLoader, String> FINGERPRINTS = new WeakHashMap<>();
+
+    private ScriptCache() {
+        // static only
+    }
+
+    /**
+     * Sets the maximum number of cached scripts. If the cache currently contains more scripts,
+     * the least recently used ones are evicted.
+     *
+     * @param maxSize The new maximum size, 0 disables the cache.
+     */
+    public static void setMaxSize(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize must not be negative");
+        ScriptCache.maxSize = maxSize;
+        synchronized (CACHE) {
+            evictIfNecessary();
+        }
+    }
+
+    public static int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the directory for persistent script entries.
+     *
+     * @param directory the directory to use, null disables the persistent cache.
+     */
+    public static void setDirectory(Path directory) {
+        ScriptCache.directory = directory;
+    }
+
+    public static Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Removes all scripts from the in memory cache. Persistent entries are not touched.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * Returns a new instance of the script compiled from the given text.
+     *
+     * @param name   the name of the script, or null to use a generated name
+     * @param text   the script text
+     * @param parent the parent classloader, if null, the context classloader is used
+     * @return a new, unbound script instance
+     */
+    static DelegatingScript createScript(String name, String text, ClassLoader parent) {
+        if (parent == null)
+            parent = Thread.currentThread().getContextClassLoader();
+        return (DelegatingScript) InvokerHelper.createScript(getScriptClass(name, text, parent), new Binding());
+    }
+
+    private static Class<? extends Script> getScriptClass(String name, String text, ClassLoader parent) {
+        if (maxSize == 0)
+            return loadOrCompile(name, text, parent);
+
+        ScriptKey key = new ScriptKey(parent, name, text);
+        Class<? extends Script> result;
+        synchronized (CACHE) {
+            SoftReference<Class<? extends Script>> cached = CACHE.get(key);
+            result = cached != null ? cached.get() : null;
+        }
+        if (result != null)
+            return result;
+
+        // compile outside the lock, concurrent compilation of the same script is harmless
+        result = loadOrCompile(name, text, parent);
+        synchronized (CACHE) {
+            CACHE.put(key, new SoftReference<>(result));
+            evictIfNecessary();
+        }
+        return result;
+    }
+
+    private static void evictIfNecessary() {
+        CACHE.entrySet().removeIf(entry -> entry.getKey().isStale() || entry.getValue().get() == null);
+        Iterator<Map.Entry<ScriptKey, SoftReference<Class<? extends Script>>>> iterator = CACHE.entrySet().iterator();
+        while (CACHE.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static Class<? extends Script> loadOrCompile(String name, String text, ClassLoader parent) {
+        Path persistentDirectory = directory;
+        if (persistentDirectory == null)
+            return compile(name, text, parent);
+
+        String persistentKey = persistentKey(name, text, parent);
+        Path file = persistentDirectory.resolve(persistentKey + PERSISTENT_ENTRY_SUFFIX);
+        CompiledScript compiled = CompiledScript.read(file);
+        if (compiled != null) {
+            try {
+                return compiled.define(parent);
+            } catch (LinkageError e) {
+                // corrupt or incompatible bytecode, replaced by a freshly compiled entry
+                CompiledScript.delete(file);
+            }
+        }
+        // unnamed scripts get a stable name, derived from the key
+        String fileName = name != null ? name : "Script_" + persistentKey.substring(0, 16) + ".groovy";
+        compiled = CompiledScript.compile(fileName, text, acquireResolver(parent), COMPILER_CONFIGURATION);
+        compiled.write(file);
+        return compiled.define(parent);
+    }
+
+    // the resolvers only resolve classes for the compiler and never define any, so they can be shared by all scripts
+    private static GroovyClassLoader acquireResolver(ClassLoader parent) {
+        synchronized (RESOLVERS) {
+            WeakReference<GroovyClassLoader> reference = RESOLVERS.get(parent);
+            GroovyClassLoader resolver = reference != null ? reference.get() : null;
+            if (resolver == null) {
+                resolver = new GroovyClassLoader(parent, COMPILER_CONFIGURATION);
+                RESOLVERS.put(parent, new WeakReference<>(resolver));
+            }
+            return resolver;
+        }
+    }
+
+    static String persistentKey(String name, String text, ClassLoader parent) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, GroovySystem.getVersion());
+            update(digest, getKlumVersion());
+            update(digest, getClasspathFingerprint(parent));
+            update(digest, name);
+            update(digest, text);
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest())
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // length prefix to keep the boundaries between values unambiguous
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static String getKlumVersion() {
+        String version = ScriptCache.class.getPackage().getImplementationVersion();
+        return version != null ? version : "unknown";
+    }
+
+    private static String getClasspathFingerprint(ClassLoader loader) {
+        synchronized (FINGERPRINTS) {
+            return FINGERPRINTS.computeIfAbsent(loader, ScriptCache::computeClasspathFingerprint);
+        }
+    }
+
+    /**
+     * Fingerprints the classpath visible by the given loader, i.e. the urls of all URLClassLoaders in the
+     * loader hierarchy as well as the system classpath. Each entry contributes its path, size and last
+     * modification time (for directories the newest modification time of any contained file).
+     */
+    private static String computeClasspathFingerprint(ClassLoader loader) {
+        Set<String> entries = new LinkedHashSet<>();
+        for (ClassLoader current = loader; current != null; current = current.getParent())
+            if (current instanceof URLClassLoader)
+                for (URL url : ((URLClassLoader) current).getURLs())
+                    entries.add(url.toString());
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator))
+            if (!entry.isEmpty())
+                entries.add(new File(entry).toURI().toString());
+
+        StringBuilder result = new StringBuilder();
+        for (String entry : entries)
+            result.append(entry).append('@').append(getModificationStamp(entry)).append(';');
+        return result.toString();
+    }
+
+    private static String getModificationStamp(String url) {
+        try {
+            Path path = Paths.get(URI.create(url));
+            if (!Files.isDirectory(path))
+                return Files.exists(path) ? Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis() : "-";
+            try (Stream<Path> files = Files.walk(path)) {
+                return String.valueOf(files.mapToLong(ScriptCache::lastModified).max().orElse(0));
+            }
+        } catch (IOException | IllegalArgumentException | FileSystemNotFoundException e) {
+            // not a local file, cannot be fingerprinted
+            return "?";
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Script> compile(String name, String text, ClassLoader parent) {
+        String fileName = name != null ? name : "Script" + SCRIPT_COUNTER.incrementAndGet() + ".groovy";
+        GroovyCodeSource codeSource = new GroovyCodeSource(text, fileName, GroovyShell.DEFAULT_CODE_BASE);
+        // a separate loader per script, so unrelated scripts never keep each other alive
+        return (Class<? extends Script>) new GroovyClassLoader(parent, COMPILER_CONFIGURATION).parseClass(codeSource, false);
+    }
+
+    private static CompilerConfiguration createCompilerConfiguration() {
+        CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
+        compilerConfiguration.setScriptBaseClass(DelegatingScript.class.getName());
+        return compilerConfiguration;
+    }
+
+    private static final class ScriptKey {
+        private final WeakReference<ClassLoader> parent;
+        private final String name;
+        private final String text;
+        private final int hash;
+
+        private ScriptKey(ClassLoader parent, String name, String text) {
+            this.parent = new WeakReference<>(parent);
+            this.name = name;
+            this.text = text;
+            this.hash = 31 * (31 * System.identityHashCode(parent) + Objects.hashCode(name)) + text.hashCode();
+        }
+
+        // the parent loader has been collected, so the entry can never be hit again
+        boolean isStale() {
+            return parent.get() == null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ScriptKey)) return false;
+            ScriptKey other = (ScriptKey) o;
+            ClassLoader loader = parent.get();
+            return loader != null && loader == other.parent.get() && hash == other.hash && Objects.equals(name, other.name) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes complete models for {@link ModelSnapshot}. Additional codecs are registered using the {@link java.util.ServiceLoader}
+ * mechanism. If a codec other than the built-in java serialization codec is available, it is used for writing snapshots.
+ */
+public interface SnapshotCodec {
+
+    /**
+     * The name of the codec, which is stored in each snapshot to select the codec for reading.
+     * @return the name of the codec
+     */
+    String getName();
+
+    /**
+     * Writes the given model into the given stream.
+     * @param model the model to write
+     * @param stream the stream to write to, must not be closed by the codec
+     */
+    void write(Object model, OutputStream stream) throws IOException;
+
+    /**
+     * Reads a model from the given stream.
+     * @param stream the stream to read from, must not be closed by the codec
+     * @param loader the classloader to resolve the model classes with
+     * @return the model
+     */
+    Object read(InputStream stream, ClassLoader loader) throws IOException;
+}
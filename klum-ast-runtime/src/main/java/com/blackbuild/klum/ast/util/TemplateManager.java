@@ -36,14 +36,14 @@ import static java.util.stream.Collectors.toMap;
 /**
  * Handles templates for a given dsl-class.
  * <p>
- * The template manager is a thread-local singleton that can be used to apply templates to objects created in a given scope.
+ * The template manager is a singleton per {@link KlumContext} that can be used to apply templates to objects created in a given scope.
  * All important methods are static and can be used from anywhere in the code.
  * </p>
  */
 @InlineJavadocs
 public class TemplateManager {
 
-    private static final ThreadLocal<TemplateManager> INSTANCE = new ThreadLocal<>();
+    private static final KlumContext.Key<TemplateManager> KEY = KlumContext.key("templates", TemplateManager::new, TemplateManager::copy);
 
     /**
      * Returns the current instance of the TemplateManager.
@@ -52,18 +52,24 @@ public class TemplateManager {
      * @return the current instance
      */
     public static TemplateManager getInstance() {
-        if (INSTANCE.get() == null)
-            INSTANCE.set(new TemplateManager());
-        return INSTANCE.get();
+        return KlumContext.current().get(KEY);
     }
 
     private TemplateManager() {
-        // Thread local singleton
+        // Context singleton
+    }
+
+    private static TemplateManager copy(TemplateManager manager) {
+        if (manager.templates.isEmpty())
+            return null;
+        TemplateManager result = new TemplateManager();
+        result.templates.putAll(manager.templates);
+        return result;
     }
 
     private void deregister() {
         if (templates.isEmpty())
-            INSTANCE.remove();
+            KlumContext.removeFromCurrent(KEY);
     }
 
     private final Map<Class<?>, Object> templates = new HashMap<>();
@@ -81,15 +87,17 @@ public class TemplateManager {
      * @return the result of the closure
      */
     public static <T> Object withTemplate(Class<T> type, T template, Closure<?> body) {
-        TemplateManager manager = getInstance();
-        T oldTemplate = manager.getTemplate(type);
-        try {
-            manager.setTemplate(type, template);
-            return body.call();
-        } finally {
-            manager.setTemplate(type, oldTemplate);
-            manager.deregister();
-        }
+        return KlumContext.withContext(() -> {
+            TemplateManager manager = getInstance();
+            T oldTemplate = manager.getTemplate(type);
+            try {
+                manager.setTemplate(type, template);
+                return body.call();
+            } finally {
+                manager.setTemplate(type, oldTemplate);
+                manager.deregister();
+            }
+        });
     }
 
     /**
@@ -128,18 +136,19 @@ public class TemplateManager {
         if (newTemplates.isEmpty())
             return body.call();
 
-        TemplateManager manager = getInstance();
-
         Map<Class<?>, Object> effectiveTemplates = newTemplates.entrySet().stream().collect(toMap(Map.Entry::getKey, TemplateManager::mapToTemplate));
-        Map<Class<?>, Object> oldTemplates = new HashMap<>(manager.templates);
 
-        try {
-            manager.addTemplates(effectiveTemplates);
-            return body.call();
-        } finally {
-            manager.setTemplates(oldTemplates);
-            manager.deregister();
-        }
+        return KlumContext.withContext(() -> {
+            TemplateManager manager = getInstance();
+            Map<Class<?>, Object> oldTemplates = new HashMap<>(manager.templates);
+            try {
+                manager.addTemplates(effectiveTemplates);
+                return body.call();
+            } finally {
+                manager.setTemplates(oldTemplates);
+                manager.deregister();
+            }
+        });
     }
 
     private static Object mapToTemplate(Map.Entry<Class<?>, Object> entry) {
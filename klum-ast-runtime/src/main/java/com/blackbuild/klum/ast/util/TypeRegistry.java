@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the known instantiable subtypes of model classes, used to resolve type hints like the "@type" entry
+ * of {@link KlumFactory#FromMap(Map)} without probing the classloader.
+ * <p>
+ * The registry of a model class is created by the AST transformation as the synthetic static method
+ * {@value #KNOWN_SUBTYPES_METHOD}. It contains all subclasses compiled together with the model class (including
+ * the class itself, if it is not abstract), keyed by their short name (see {@code DSL.shortName()}), their
+ * simple name with and without the stripped suffix (see {@code DSL.stripSuffix()}) and their fully qualified
+ * name. Names that would be ambiguous are not included. Subclasses compiled separately are not part of the
+ * registry, these must be resolved by other means.
+ * </p>
+ */
+public final class TypeRegistry {
+
+    public static final String KNOWN_SUBTYPES_METHOD = "$knownSubtypes";
+
+    private static final ClassValue<Registry> REGISTRIES = new ClassValue<Registry>() {
+        @Override
+        protected Registry computeValue(Class<?> type) {
+            return new Registry(readKnownSubtypes(type));
+        }
+    };
+
+    private TypeRegistry() {
+        // static only
+    }
+
+    /**
+     * Returns the registered subtype of the given base type for the given hint.
+     *
+     * @param baseType the base type
+     * @param typeHint the name of the subtype
+     * @param <T>      the base type
+     * @return the matching subtype or null if the hint is not registered
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> @Nullable Class<? extends T> resolve(Class<T> baseType, String typeHint) {
+        return (Class<? extends T>) REGISTRIES.get(baseType).subtypes.get(typeHint);
+    }
+
+    /**
+     * Returns all registered names of subtypes of the given type.
+     *
+     * @param baseType the base type
+     * @return an unmodifiable map of names to subtypes
+     */
+    public static Map<String, Class<?>> getKnownSubtypes(Class<?> baseType) {
+        return REGISTRIES.get(baseType).subtypes;
+    }
+
+    /**
+     * Returns the registered subtypes of the given type, each with its preferred name, i.e. its short name
+     * if not ambiguous.
+     *
+     * @param baseType the base type
+     * @return an unmodifiable map of subtypes to names
+     */
+    public static Map<Class<?>, String> getPreferredNames(Class<?> baseType) {
+        return REGISTRIES.get(baseType).preferredNames;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Class<?>> readKnownSubtypes(Class<?> type) {
+        Method method;
+        try {
+            method = type.getDeclaredMethod(KNOWN_SUBTYPES_METHOD);
+        } catch (NoSuchMethodException e) {
+            // not a model class or compiled with an older version
+            return Collections.emptyMap();
+        }
+        try {
+            return (Map<String, Class<?>>) method.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new KlumModelException("Could not read known subtypes of " + type.getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new KlumModelException("Could not read known subtypes of " + type.getName(), e.getCause());
+        }
+    }
+
+    private static final class Registry {
+        private final Map<String, Class<?>> subtypes;
+        private final Map<Class<?>, String> preferredNames;
+
+        private Registry(Map<String, Class<?>> subtypes) {
+            this.subtypes = Collections.unmodifiableMap(new LinkedHashMap<>(subtypes));
+            // the generated registry lists the preferred name of each type first
+            Map<Class<?>, String> names = new LinkedHashMap<>();
+            subtypes.forEach((name, subtype) -> names.putIfAbsent(subtype, name));
+            this.preferredNames = Collections.unmodifiableMap(names);
+        }
+    }
+}
@@ -26,6 +26,10 @@ package com.blackbuild.klum.ast.util.layer3;
 import com.blackbuild.klum.ast.util.DslHelper;
 import com.blackbuild.klum.ast.util.KlumException;
 import com.blackbuild.klum.ast.util.KlumInstanceProxy;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.lang.reflect.Field;
+import java.util.Optional;
 
 /**
  * An Exception that is bound to a specific object in the model.
@@ -33,6 +37,7 @@ import com.blackbuild.klum.ast.util.KlumInstanceProxy;
 public class KlumVisitorException extends KlumException {
 
     private final String breadcrumbPath;
+    private final String locator;
 
     public KlumVisitorException(String message, Object responsibleObject, Throwable cause) {
         super(message, cause);
@@ -40,6 +45,7 @@ public class KlumVisitorException extends KlumException {
             this.breadcrumbPath = KlumInstanceProxy.getProxyFor(responsibleObject).getBreadcrumbPath();
         else
             this.breadcrumbPath = null;
+        this.locator = breadcrumbPath != null ? breadcrumbPath : locatorOf(responsibleObject);
     }
 
     public KlumVisitorException(String message, Object responsibleObject) {
@@ -50,14 +56,33 @@ public class KlumVisitorException extends KlumException {
         return breadcrumbPath;
     }
 
+    /**
+     * Returns the location of the responsible object. This is the breadcrumb path if available, otherwise (for
+     * example if breadcrumbs are disabled) the class name of the object together with its key or, for non keyed
+     * objects, its identity hash code.
+     * @return the location of the responsible object or null if there was no responsible object
+     */
+    public String getLocator() {
+        return locator;
+    }
+
     @Override
     public String getMessage() {
-        if (breadcrumbPath == null)
+        if (locator == null)
             return super.getMessage();
-        return breadcrumbPath + ": " + super.getBasicMessage();
+        return locator + ": " + super.getBasicMessage();
     }
 
     public String getUnlocalizedMessage() {
         return super.getMessage();
     }
+
+    private static String locatorOf(Object object) {
+        if (object == null)
+            return null;
+        Optional<Field> keyField = DslHelper.isDslObject(object) ? DslHelper.getKeyField(object.getClass()) : Optional.empty();
+        if (keyField.isPresent())
+            return object.getClass().getName() + "(" + InvokerHelper.getProperty(object, keyField.get().getName()) + ")";
+        return object.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(object));
+    }
 }
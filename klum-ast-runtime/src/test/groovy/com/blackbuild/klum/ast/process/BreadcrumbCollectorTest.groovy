@@ -33,6 +33,7 @@ class BreadcrumbCollectorTest extends Specification {
 
     def cleanup() {
         collector.cleanup()
+        BreadcrumbCollector.enabled = true
     }
 
     def "multiple breadcrumbs work"() {
@@ -59,5 +60,56 @@ class BreadcrumbCollectorTest extends Specification {
         collector.fullPath == '$/a/b[2]'
     }
 
+    def "type and qualifier are part of the quantified path"() {
+        given:
+        collector.setVerb("a").enter()
+
+        when:
+        collector.setVerb("b").setType("file").setQualifier("x").enter()
+
+        then:
+        collector.fullPath == '$/a/b:file(x)'
+
+        when:
+        collector.leave()
+        collector.setVerb("b").enter()
+
+        then:
+        collector.fullPath == '$/a/b'
+
+        when:
+        collector.leave()
+        collector.setVerb("b").setType("file").setQualifier("x").enter()
+
+        then:
+        collector.fullPath == '$/a/b:file(x)[2]'
+    }
+
+    def "paths are kept after leaving the breadcrumb"() {
+        given:
+        collector.setVerb("a").enter()
+        collector.setVerb("b").enter()
+
+        when:
+        def path = collector.currentPath
+        collector.leave()
+        collector.setVerb("c").enter()
 
+        then:
+        path.toString() == '$/a/b'
+        path.extend("{x}").toString() == '$/a/b/{x}'
+        collector.fullPath == '$/a/c'
+    }
+
+    def "disabled collector does not collect breadcrumbs"() {
+        given:
+        BreadcrumbCollector.enabled = false
+
+        when:
+        def path = BreadcrumbCollector.withBreadcrumb("a", null, null) { BreadcrumbCollector.instance.fullPath }
+
+        then:
+        path == ""
+        !BreadcrumbCollector.hasInstance()
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.process
+
+import com.blackbuild.klum.ast.util.FreezePhase
+import spock.lang.Specification
+
+class PhaseDriverTest extends Specification {
+
+    def "actions with the same phase number are all kept"() {
+        given:
+        def driver = new PhaseDriver()
+
+        when:
+        driver.addPhase(new FirstCompletionAction())
+        driver.addPhase(new SecondCompletionAction())
+
+        then:
+        driver.@phaseActions.findAll { it.phaseNumber == DefaultKlumPhase.COMPLETE.number }*.class == [FirstCompletionAction, SecondCompletionAction]
+    }
+
+    def "the model is frozen after all other phases"() {
+        when:
+        def driver = new PhaseDriver()
+        driver.addPhase(new FirstCompletionAction())
+
+        then:
+        driver.@phaseActions.last() instanceof FreezePhase
+    }
+
+    static class FirstCompletionAction extends AbstractPhaseAction {
+        FirstCompletionAction() { super(DefaultKlumPhase.COMPLETE) }
+
+        @Override
+        protected void doExecute() {}
+    }
+
+    static class SecondCompletionAction extends AbstractPhaseAction {
+        SecondCompletionAction() { super(DefaultKlumPhase.COMPLETE) }
+
+        @Override
+        protected void doExecute() {}
+    }
+}
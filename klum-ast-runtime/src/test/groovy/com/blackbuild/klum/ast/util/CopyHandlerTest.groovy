@@ -348,5 +348,62 @@ import com.blackbuild.klum.ast.util.copy.OverwriteStrategy
         receiver.innerLists == ["aFromTemplate"]
     }
 
+    def "copy between instances of the same class copies all layers and keeps the key"() {
+        given:
+        createClass('''
+            package pk
+
+            import com.blackbuild.groovy.configdsl.transform.DSL
+            import com.blackbuild.groovy.configdsl.transform.Key
+            import com.blackbuild.klum.ast.util.copy.Overwrite
+            import com.blackbuild.klum.ast.util.copy.OverwriteStrategy
+
+            @SuppressWarnings('UnnecessaryQualifiedReference')
+            @DSL
+            class Parent {
+                KlumInstanceProxy $proxy = new KlumInstanceProxy(this)
+                @Key final String name
+                Parent(String name) { this.name = name }
+                String value
+                @Overwrite.Single(OverwriteStrategy.Single.SET_IF_NULL) String kept
+            }
+
+            @DSL
+            class Child extends Parent {
+                Child(String name) { super(name) }
+                List<Parent> others = []
+            }
+         ''')
+
+        def other = newInstanceOf("pk.Parent", "other")
+        other.value = "ov"
+        def donor = newInstanceOf("pk.Child", "donor")
+        donor.value = "dv"
+        donor.kept = "fromDonor"
+        donor.others.add(other)
+
+        when:
+        def receiver = newInstanceOf("pk.Child", "receiver")
+        receiver.kept = "fromReceiver"
+        CopyHandler.copyToFrom(receiver, donor)
 
-}
\ No newline at end of file
+        then:
+        receiver.name == "receiver"
+        receiver.value == "dv"
+        receiver.kept == "fromReceiver"
+        receiver.others.size() == 1
+        receiver.others[0].name == "other"
+        receiver.others[0].value == "ov"
+        !receiver.others[0].is(other)
+
+        when:
+        def clone = KlumInstanceProxy.getProxyFor(donor).cloneInstance()
+
+        then:
+        clone.getClass() == donor.getClass()
+        clone.name == "donor"
+        clone.kept == "fromDonor"
+        clone.others[0].value == "ov"
+        !clone.others.is(donor.others)
+    }
+}
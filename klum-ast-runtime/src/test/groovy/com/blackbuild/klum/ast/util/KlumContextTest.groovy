@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util
+
+import com.blackbuild.klum.ast.process.BreadcrumbCollector
+import com.blackbuild.klum.ast.process.PhaseDriver
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.function.Supplier
+
+class KlumContextTest extends Specification {
+
+    def "failing creations do not leave a context behind"() {
+        when:
+        PhaseDriver.withPhase({ throw new IllegalStateException("preparation") }, {})
+
+        then:
+        thrown(IllegalStateException)
+        KlumContext.currentOrNull() == null
+
+        when:
+        PhaseDriver.withPhase({ "root" }, { throw new IllegalStateException("action") })
+
+        then:
+        thrown(IllegalStateException)
+        KlumContext.currentOrNull() == null
+
+        when:
+        BreadcrumbCollector.withBreadcrumb("With", "Foo", null, { throw new IllegalStateException("body") } as Supplier)
+
+        then:
+        thrown(IllegalStateException)
+        KlumContext.currentOrNull() == null
+    }
+
+    def "state set up before a creation is discarded with the creation"() {
+        given:
+        BreadcrumbCollector.instance.setVerb("From")
+
+        when:
+        def path = BreadcrumbCollector.withBreadcrumb {
+            TemplateManager.instance
+            BreadcrumbCollector.instance.fullPath
+        }
+
+        then:
+        path == '$/From'
+        KlumContext.currentOrNull() == null
+    }
+
+    def "a captured context continues the creation in another thread"() {
+        given:
+        def executor = Executors.newSingleThreadExecutor()
+
+        when:
+        def result = BreadcrumbCollector.withBreadcrumb("With", "Root", null, {
+            PhaseDriver.enter("root")
+            try {
+                def context = KlumContext.capture()
+                executor.submit({
+                    context.call { [PhaseDriver.activeRootObject, BreadcrumbCollector.instance.fullPath] }
+                } as Callable).get()
+            } finally {
+                PhaseDriver.leave()
+            }
+        } as Supplier)
+
+        then:
+        result == ["root", '$/With:Root']
+        KlumContext.currentOrNull() == null
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "contexts of concurrent creations are isolated"() {
+        given:
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def roots = (1..50).collect { i ->
+            executor.submit({
+                KlumContext.create().call {
+                    PhaseDriver.enter("root$i")
+                    try {
+                        sleep 1
+                        PhaseDriver.activeRootObject
+                    } finally {
+                        PhaseDriver.leave()
+                    }
+                }
+            } as Callable)
+        }*.get()
+
+        then:
+        roots == (1..50).collect { "root$it" }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "binding a context restores the previous binding"() {
+        given:
+        def outer = KlumContext.create()
+        def inner = KlumContext.create()
+
+        when:
+        def bound = outer.call { [KlumContext.current(), inner.call { KlumContext.current() }, KlumContext.current()] }
+
+        then:
+        bound[0].is(outer)
+        bound[1].is(inner)
+        bound[2].is(outer)
+        KlumContext.currentOrNull() == null
+    }
+}
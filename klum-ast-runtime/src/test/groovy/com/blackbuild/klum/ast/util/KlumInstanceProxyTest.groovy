@@ -146,6 +146,66 @@ class KlumInstanceProxyTest extends AbstractRuntimeTest {
         !proxy.resolveKeyForFieldFromAnnotation("noFieldAnnotation", proxy.getField("noFieldAnnotation")).isPresent()
     }
 
+    def "elements can be added with a given element type"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                List<String> names = []
+                Map<String, Bar> bars = [:]
+            }
+            @DSL
+            class Bar {
+                @Key String name
+            }
+        ''')
+
+        def bar = { String name -> newInstanceOf("pk.Bar").tap { it.name = name } }
+
+        when:
+        instance = newInstanceOf("pk.Foo")
+        proxy = new KlumInstanceProxy(instance)
+        proxy.addElementToCollection("names", String, "a")
+        proxy.addElementsToCollection("names", String, "b", "c")
+        proxy.addElementsToCollection("names", String, ["d"])
+        proxy.addElementToMap("bars", getClass("pk.Bar"), null, bar("x"))
+        proxy.addElementsToMap("bars", getClass("pk.Bar"), [bar("y")])
+
+        then:
+        instance.names == ["a", "b", "c", "d"]
+        instance.bars.keySet() == ["x", "y"] as Set
+
+        when:
+        proxy.addElementToCollection("names", String, 5)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "keyMapping is applied to all elements of a batch"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                @Field(keyMapping = { it.toUpperCase() })
+                Map<String, String> values = [:]
+            }
+        ''')
+
+        when:
+        instance = newInstanceOf("pk.Foo")
+        proxy = new KlumInstanceProxy(instance)
+        proxy.addElementsToMap("values", String, "a", "b")
+        proxy.addElementsToMap("values", ["c"])
+        proxy.addElementToMap("values", String, null, "d")
+
+        then:
+        instance.values == [A: "a", B: "b", C: "c", D: "d"]
+    }
 
     // TODO: List of Lists, mixed dsl / non dsl elements
 }
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util
+
+import com.blackbuild.klum.ast.process.BreadcrumbCollector
+import spock.lang.Specification
+
+class ParallelCreationTest extends Specification {
+
+    def cleanup() {
+        ParallelCreation.executor = null
+    }
+
+    def "results are returned in the order of the sources"() {
+        when:
+        def result = ParallelCreation.createAll(1..20) { Integer it -> sleep(20 - it); it * 2 }
+
+        then:
+        result == (1..20).collect { it * 2 }
+    }
+
+    def "objects are created by the executor"() {
+        given:
+        def threads = Collections.synchronizedSet(new HashSet<Thread>())
+
+        when:
+        ParallelCreation.createAll(1..4) { threads << Thread.currentThread() }
+
+        then:
+        !threads.contains(Thread.currentThread())
+    }
+
+    def "nested batches are created sequentially by the worker"() {
+        when:
+        def result = ParallelCreation.createAll(1..2) { outer ->
+            def worker = Thread.currentThread()
+            ParallelCreation.createAll(1..3) { Thread.currentThread().is(worker) }
+        }
+
+        then:
+        result == [[true, true, true], [true, true, true]]
+    }
+
+    def "the first failure in source order is rethrown"() {
+        when:
+        ParallelCreation.createAll(1..4) { Integer it ->
+            if (it > 1)
+                throw new IllegalStateException("failed $it")
+            it
+        }
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "failed 2"
+    }
+
+    def "breadcrumbs of the calling thread are continued by the workers"() {
+        given:
+        BreadcrumbCollector.getInstance().setVerb("From").setType("Outer").enter()
+        def callerPath = BreadcrumbCollector.getInstance().fullPath
+
+        when:
+        def paths = ParallelCreation.createAll(1..2) { BreadcrumbCollector.getInstance().fullPath }
+
+        then:
+        paths == [callerPath, callerPath]
+
+        cleanup:
+        BreadcrumbCollector.getInstance().leave()
+    }
+
+    def "quantifiers of reserved breadcrumbs follow the order of the sources"() {
+        given:
+        BreadcrumbCollector.getInstance().setVerb("From").setType("Outer").enter()
+
+        when:
+        def paths = ParallelCreation.createAll(1..3, { BreadcrumbCollector.captureForChild("From", "file", "x") }) { Integer it ->
+            sleep(30 - it * 10)
+            BreadcrumbCollector.withBreadcrumb("Other", "y", "z") { BreadcrumbCollector.getInstance().fullPath }
+        }
+
+        then:
+        paths == ['$/From:Outer/From:file(x)', '$/From:Outer/From:file(x)[2]', '$/From:Outer/From:file(x)[3]']
+
+        cleanup:
+        BreadcrumbCollector.getInstance().leave()
+    }
+
+    def "a custom executor can be used"() {
+        given:
+        ParallelCreation.executor = { Runnable it -> it.run() }
+
+        when:
+        def threads = ParallelCreation.createAll(1..3) { Thread.currentThread() }
+
+        then:
+        threads.every { it.is(Thread.currentThread()) }
+    }
+}
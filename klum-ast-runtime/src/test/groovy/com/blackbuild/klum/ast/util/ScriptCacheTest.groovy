@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.klum.ast.util
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class ScriptCacheTest extends Specification {
+
+    Path directory
+
+    def cleanup() {
+        ScriptCache.maxSize = 256
+        ScriptCache.directory = null
+        ScriptCache.clear()
+        directory?.toFile()?.deleteDir()
+    }
+
+    def "identical scripts are only compiled once"() {
+        when:
+        def first = ScriptCache.createScript(null, 'value "bla"', null)
+        def second = ScriptCache.createScript(null, 'value "bla"', null)
+
+        then:
+        !first.is(second)
+        first.getClass().is(second.getClass())
+    }
+
+    def "different texts, names or loaders result in different scripts"() {
+        given:
+        def otherLoader = new URLClassLoader(new URL[0], getClass().classLoader)
+
+        when:
+        def original = ScriptCache.createScript("a", 'value "bla"', null).getClass()
+
+        then:
+        !ScriptCache.createScript("a", 'value "blub"', null).getClass().is(original)
+        !ScriptCache.createScript("b", 'value "bla"', null).getClass().is(original)
+        !ScriptCache.createScript("a", 'value "bla"', otherLoader).getClass().is(original)
+    }
+
+    def "unrelated scripts do not share a classloader"() {
+        when:
+        def first = ScriptCache.createScript(null, 'value "a"', null).getClass()
+        def second = ScriptCache.createScript(null, 'value "b"', null).getClass()
+
+        then:
+        !first.classLoader.is(second.classLoader)
+        first.classLoader.parent.is(second.classLoader.parent)
+    }
+
+    def "cache is bounded"() {
+        given:
+        ScriptCache.maxSize = 5
+
+        when:
+        10.times { ScriptCache.createScript(null, "value $it", null) }
+
+        then:
+        ScriptCache.size() == 5
+    }
+
+    def "cache can be disabled"() {
+        given:
+        ScriptCache.maxSize = 0
+
+        when:
+        def first = ScriptCache.createScript(null, 'value "bla"', null)
+        def second = ScriptCache.createScript(null, 'value "bla"', null)
+
+        then:
+        !first.getClass().is(second.getClass())
+        ScriptCache.size() == 0
+    }
+
+    def "persistent cache stores and reuses compiled scripts"() {
+        given:
+        directory = Files.createTempDirectory("klum-scripts")
+        ScriptCache.directory = directory
+        ScriptCache.maxSize = 0
+
+        when:
+        def first = ScriptCache.createScript(null, 'def c = { it * 2 }; c(21)', null)
+
+        then:
+        first.run() == 42
+        directory.toFile().listFiles().length == 1
+
+        when:
+        def entry = directory.toFile().listFiles()[0]
+        def lastModified = entry.lastModified()
+        def second = ScriptCache.createScript(null, 'def c = { it * 2 }; c(21)', null)
+
+        then: "the script is loaded from the existing entry"
+        second.run() == 42
+        !second.getClass().is(first.getClass())
+        second.getClass().name == first.getClass().name
+        directory.toFile().listFiles().length == 1
+        entry.lastModified() == lastModified
+    }
+
+    def "broken persistent entries are recompiled"() {
+        given:
+        directory = Files.createTempDirectory("klum-scripts")
+        ScriptCache.directory = directory
+        ScriptCache.maxSize = 0
+        ScriptCache.createScript(null, '42', null)
+        directory.toFile().listFiles()[0].text = "broken"
+
+        when:
+        def script = ScriptCache.createScript(null, '42', null)
+
+        then:
+        script.run() == 42
+    }
+
+    def "persistent entries with corrupt bytecode are deleted and recompiled"() {
+        given:
+        directory = Files.createTempDirectory("klum-scripts")
+        ScriptCache.directory = directory
+        ScriptCache.maxSize = 0
+        ScriptCache.createScript(null, '42', null)
+        def entry = directory.toFile().listFiles()[0]
+        entry.withDataOutputStream { out ->
+            out.writeInt(1)
+            out.writeUTF("BrokenScript")
+            out.writeInt(1)
+            out.writeUTF("BrokenScript")
+            out.writeInt(4)
+            out.write([1, 2, 3, 4] as byte[])
+        }
+
+        when:
+        def script = ScriptCache.createScript(null, '42', null)
+
+        then:
+        script.run() == 42
+        ScriptCache.createScript(null, '42', null).run() == 42
+        entry.length() > 20
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.groovy.configdsl.transform.benchmark
+
+import com.blackbuild.groovy.configdsl.transform.DSL
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the calls from generated model methods into the instance proxy. {@code dynamicProxyCall} performs the
+ * same proxy call as the generated getter, but through a Groovy call site, which is how the generated methods
+ * called the proxy before they were bound directly to their targets.
+ * <p>
+ * Run with {@code ./gradlew :klum-ast:jmh}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@CompileStatic
+class ProxyCallsBenchmark {
+
+    BenchmarkModel model
+    BenchmarkModel equalModel
+    BenchmarkModel frozenModel
+
+    @Setup
+    @CompileDynamic
+    void setup() {
+        model = BenchmarkModel.Create.With(name: "benchmark", count: 5, tags: ["a", "b"])
+        equalModel = BenchmarkModel.Create.With(name: "benchmark", count: 5, tags: ["a", "b"])
+        frozenModel = BenchmarkModel.Create.With(name: "benchmark", count: 5, tags: ["a", "b"])
+        KlumInstanceProxy.getProxyFor(frozenModel).freeze()
+    }
+
+    @Benchmark
+    String generatedGetter() {
+        model.name
+    }
+
+    @Benchmark
+    @CompileDynamic
+    String dynamicProxyCall() {
+        model.$proxy.getInstanceAttribute("name")
+    }
+
+    @Benchmark
+    int structuralHashCode() {
+        model.hashCode()
+    }
+
+    @Benchmark
+    int cachedHashCode() {
+        frozenModel.hashCode()
+    }
+
+    @Benchmark
+    boolean generatedEquals() {
+        model == equalModel
+    }
+}
+
+@DSL
+class BenchmarkModel {
+    String name
+    int count
+    List<String> tags
+}
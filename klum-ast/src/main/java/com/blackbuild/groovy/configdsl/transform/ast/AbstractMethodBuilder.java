@@ -203,6 +203,7 @@ public abstract class AbstractMethodBuilder<T extends AbstractMethodBuilder<?>>
 
         if (!hasAnnotation(target, KLUM_GENERATED_CLASSNODE))
             method.addAnnotation(createGeneratedAnnotation(DSLASTTransformation.class, tags));
+        emitBreadcrumbVerb(method);
         postProcessMethod(method);
         return method;
     }
@@ -34,7 +34,6 @@ import org.codehaus.groovy.ast.expr.Expression;
 import org.codehaus.groovy.ast.expr.MapEntryExpression;
 import org.codehaus.groovy.ast.expr.MapExpression;
 
-import java.beans.Introspector;
 import java.util.*;
 
 import static com.blackbuild.groovy.configdsl.transform.ast.DSLASTTransformation.DSL_CONFIG_ANNOTATION;
@@ -48,7 +47,6 @@ import static java.lang.String.format;
 import static org.codehaus.groovy.ast.ClassHelper.*;
 import static org.codehaus.groovy.ast.tools.GeneralUtils.*;
 import static org.codehaus.groovy.ast.tools.GenericsUtils.*;
-import static org.codehaus.groovy.transform.AbstractASTTransformation.getMemberStringValue;
 
 /**
  * Created by steph on 29.04.2017.
@@ -374,32 +372,6 @@ class AlternativesClassBuilder {
         if (shortName != null)
             return shortName;
 
-        Optional<AnnotationNode> annotationNode = CommonAstHelper.getOptionalAnnotation(subclass, DSL_CONFIG_ANNOTATION);
-
-        if (annotationNode.isPresent())
-            shortName = getMemberStringValue(annotationNode.get(), "shortName");
-
-        if (shortName != null)
-            return shortName;
-
-        String stringSuffix = findStripSuffixForHierarchy(subclass);
-        String subclassName = subclass.getNameWithoutPackage();
-
-        if (stringSuffix != null && subclassName.endsWith(stringSuffix))
-            subclassName = subclassName.substring(0, subclassName.length() - stringSuffix.length());
-
-        return Introspector.decapitalize(subclassName);
-    }
-
-    private String findStripSuffixForHierarchy(ClassNode subclass) {
-        Deque<ClassNode> superSchemaClasses = getHierarchyOfDSLObjectAncestors(subclass.getSuperClass());
-
-        String stringSuffix = null;
-        for (Iterator<ClassNode> it = superSchemaClasses.descendingIterator(); it.hasNext() && stringSuffix == null; ) {
-            ClassNode ancestor = it.next();
-            AnnotationNode ancestorAnnotation = ancestor.getAnnotations(DSL_CONFIG_ANNOTATION).get(0);
-            stringSuffix = getMemberStringValue(ancestorAnnotation, "stripSuffix");
-        }
-        return stringSuffix;
+        return DslAstHelper.getShortNameFor(subclass);
     }
 }
@@ -30,7 +30,9 @@ import com.blackbuild.groovy.configdsl.transform.KlumGenerated;
 import com.blackbuild.klum.common.CommonAstHelper;
 import com.blackbuild.klum.common.Groovy3To4MigrationHelper;
 import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
 import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.Expression;
 import org.codehaus.groovy.ast.tools.GenericsUtils;
 
 import java.util.*;
@@ -48,6 +50,11 @@ import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
 import static org.codehaus.groovy.ast.ClassHelper.STRING_TYPE;
 import static org.codehaus.groovy.ast.ClassHelper.make;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.classX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ctorX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
 import static org.codehaus.groovy.ast.tools.GenericsUtils.correctToGenericsSpecRecurse;
 
 /**
@@ -235,21 +242,23 @@ class ConverterBuilder {
                 .optional()
                 .returning(elementType)
                 .sourceLinkTo(sourceMethod)
-                .constantParam(fieldNode.getName())
-                .constantClassParam(converterType)
-                .constantParam(converterMethod);
+                .constantParam(fieldNode.getName());
+
+        if (isCollection(fieldNode.getType()) || isMap(fieldNode.getType()))
+            method.elementTypeParam(elementType);
 
         if (withKey)
             method.param(STRING_TYPE, "$key", "the key for the new object");
         else if (isDslMap(fieldNode))
             method.constantParam(null);
 
-        stream(sourceParameters).forEach( parameter -> method.param(
-                correctToGenericsSpecRecurse(genericsSpec, parameter.getOriginType()),
-                parameter.getName(),
-                parameter.getInitialExpression(),
-                null
-        ));
+        List<Parameter> parameters = stream(sourceParameters)
+                .map(parameter -> new Parameter(
+                        correctToGenericsSpecRecurse(genericsSpec, parameter.getOriginType()),
+                        parameter.getName(),
+                        parameter.getInitialExpression()))
+                .collect(Collectors.toList());
+        method.convertedParams(parameters, converterCallX(converterType, converterMethod, parameters));
 
         method.copyDocFrom(sourceMethod);
 
@@ -261,6 +270,19 @@ class ConverterBuilder {
         method.addTo(rwClass);
     }
 
+    // the converter is known at compile time, so it is called directly instead of being looked up by name at runtime
+    private Expression converterCallX(ClassNode converterType, String converterMethod, List<Parameter> parameters) {
+        ArgumentListExpression arguments = args(parameters.stream().map(parameter -> varX(parameter.getName())).toArray(Expression[]::new));
+        if (converterMethod == null)
+            return ctorX(converterType, arguments);
+
+        return MethodAstHelper.withDirectTarget(
+                callX(classX(converterType), converterMethod, arguments),
+                converterType,
+                parameters.stream().map(Parameter::getType).collect(Collectors.toList())
+        );
+    }
+
     private void checkForUnmatchedGenericPlaceholders(MethodNode sourceMethod, Map<String, ClassNode> genericsSpec) {
         if (sourceMethod.getGenericsTypes() == null) return;
         Set<String> unmappedPlaceholder = stream(sourceMethod.getGenericsTypes()).filter(GenericsType::isPlaceholder).map(GenericsType::getName).filter(name -> !genericsSpec.containsKey(name)).collect(Collectors.toSet());
@@ -270,11 +292,11 @@ class ConverterBuilder {
 
     private String getProxyMethodName() {
         if (isCollection(fieldNode.getType()))
-            return "addElementToCollectionViaConverter";
+            return "addElementToCollection";
         else if (isMap(fieldNode.getType()))
-            return "addElementToMapViaConverter";
+            return "addElementToMap";
 
-        return "setSingleFieldViaConverter";
+        return "setSingleField";
     }
 
     private void createConverterFactoryCall(MethodNode converterMethod) {
@@ -30,6 +30,8 @@ import com.blackbuild.groovy.configdsl.transform.ast.mutators.WriteAccessMethods
 import com.blackbuild.klum.ast.doc.DocUtil;
 import com.blackbuild.klum.ast.util.KlumFactory;
 import com.blackbuild.klum.ast.util.KlumInstanceProxy;
+import com.blackbuild.klum.ast.util.ModelPrinter;
+import com.blackbuild.klum.ast.util.TypeRegistry;
 import com.blackbuild.klum.ast.util.reflect.AstReflectionBridge;
 import com.blackbuild.klum.common.CommonAstHelper;
 import groovy.lang.Closure;
@@ -47,6 +49,7 @@ import org.codehaus.groovy.control.CompilePhase;
 import org.codehaus.groovy.control.SourceUnit;
 import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.transform.AbstractASTTransformation;
+import org.codehaus.groovy.util.HashCodeHelper;
 import org.codehaus.groovy.transform.GroovyASTTransformation;
 
 import java.io.File;
@@ -56,6 +59,7 @@ import java.net.URL;
 import java.util.*;
 
 import static com.blackbuild.groovy.configdsl.transform.ast.DslAstHelper.*;
+import static com.blackbuild.groovy.configdsl.transform.ast.MethodAstHelper.proxyCallX;
 import static com.blackbuild.groovy.configdsl.transform.ast.MethodBuilder.*;
 import static com.blackbuild.groovy.configdsl.transform.ast.ProxyMethodBuilder.createFactoryMethod;
 import static com.blackbuild.groovy.configdsl.transform.ast.ProxyMethodBuilder.createProxyMethod;
@@ -66,7 +70,6 @@ import static org.codehaus.groovy.ast.expr.MethodCallExpression.NO_ARGUMENTS;
 import static org.codehaus.groovy.ast.tools.GeneralUtils.*;
 import static org.codehaus.groovy.ast.tools.GenericsUtils.*;
 import static org.codehaus.groovy.transform.EqualsAndHashCodeASTTransformation.createEquals;
-import static org.codehaus.groovy.transform.ToStringASTTransformation.createToString;
 
 /**
  * Transformation class for the @DSL annotation.
@@ -90,7 +93,9 @@ public class DSLASTTransformation extends AbstractASTTransformation {
     public static final ClassNode UNKEYED_FACTORY = make(KlumFactory.Unkeyed.class);
     public static final ClassNode INSTANCE_PROXY = make(KlumInstanceProxy.class);
     public static final ClassNode EQUALS_HASHCODE_ANNOT = make(EqualsAndHashCode.class);
+    public static final ClassNode HASHCODE_HELPER_TYPE = make(HashCodeHelper.class);
     public static final ClassNode TOSTRING_ANNOT = make(ToString.class);
+    public static final ClassNode MODEL_PRINTER_TYPE = make(ModelPrinter.class);
     public static final String VALIDATE_METHOD = "validate";
     public static final String RW_CLASS_SUFFIX = "$_RW";
     public static final String RWCLASS_METADATA_KEY = DSLASTTransformation.class.getName() + ".rwclass";
@@ -100,6 +105,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
     public static final String CREATE_METHOD_NAME = "create";
     public static final String CREATE_FROM_CLASSPATH = "createFromClasspath";
     public static final String FACTORY_FIELD_NAME = "Create";
+    public static final String STRUCTURAL_HASH_CODE_METHOD = "$structuralHashCode";
 
     ClassNode annotatedClass;
     ClassNode dslParent;
@@ -140,6 +146,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         createApplyMethods();
         createTemplateMethods();
         createFactoryField();
+        createKnownSubtypesRegistry();
         createFactoryMethods();
         createConvenienceFactories();
 
@@ -150,6 +157,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         createOwnerClosureMethods();
 
         delegateRwToModel();
+        createParallelMethod();
 
         runDelayedActions(annotatedClass);
 
@@ -425,9 +433,13 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         if (!hasAnnotation(annotatedClass, EQUALS_HASHCODE_ANNOT)) {
             createHashCodeIfNotDefined();
             createEquals(annotatedClass, true, dslParent != null, true, getAllIgnoredFieldNames(), null);
+            shortCircuitEqualsOnCachedHashCodes();
         }
-        if (!hasAnnotation(annotatedClass, TOSTRING_ANNOT)) {
-            createToString(annotatedClass, false, true, getOwnerFieldNames(annotatedClass), null, false);
+        if (!hasAnnotation(annotatedClass, TOSTRING_ANNOT) && !hasDeclaredMethod(annotatedClass, "toString", 0)) {
+            createPublicMethod("toString")
+                    .returning(STRING_TYPE)
+                    .doReturn(callX(MODEL_PRINTER_TYPE, "toString", varX("this")))
+                    .addTo(annotatedClass);
         }
     }
 
@@ -453,13 +465,72 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                     .doReturn(callX(varX(keyField.getName()), "hashCode"))
                     .addTo(annotatedClass);
         } else {
-            createPublicMethod("hashCode")
-                    .returning(ClassHelper.int_TYPE)
-                    .doReturn(constX(0))
-                    .addTo(annotatedClass);
+            createStructuralHashCode();
         }
     }
 
+    // like equals, the hash code of unkeyed objects is computed from their fields, it is only cached once the object is frozen
+    private void createStructuralHashCode() {
+        boolean parentHasStructuralHashCode = parentHasStructuralHashCode();
+        MethodBuilder fieldsHashCode = createProtectedMethod(STRUCTURAL_HASH_CODE_METHOD)
+                .mod(ACC_SYNTHETIC)
+                .returning(ClassHelper.int_TYPE)
+                .param(ClassHelper.int_TYPE, "$hash")
+                .statementIf(parentHasStructuralHashCode, assignS(varX("$hash"), callSuperX(STRUCTURAL_HASH_CODE_METHOD, args("$hash"))))
+                .statementIf(dslParent != null && !parentHasStructuralHashCode, assignS(varX("$hash"), updateHashX(callSuperX("hashCode"))));
+        getFieldNamesForStructuralHashCode().forEach(name -> fieldsHashCode.statement(assignS(varX("$hash"), updateHashX(varX(name)))));
+        fieldsHashCode
+                .doReturn("$hash")
+                .addTo(annotatedClass);
+
+        createPublicMethod("hashCode")
+                .returning(ClassHelper.int_TYPE)
+                .declareVariable("hash", proxyCallX("getCachedHashCode", Collections.emptyList()))
+                .statement(ifS(
+                        eqX(varX("hash"), constX(0)),
+                        assignS(varX("hash"), proxyCallX(
+                                "cacheHashCode",
+                                Collections.singletonList(ClassHelper.int_TYPE),
+                                callThisX(STRUCTURAL_HASH_CODE_METHOD, callX(HASHCODE_HELPER_TYPE, "initHash"))
+                        ))
+                ))
+                .doReturn("hash")
+                .addTo(annotatedClass);
+    }
+
+    private static Expression updateHashX(Expression value) {
+        return callX(HASHCODE_HELPER_TYPE, "updateHash", args(varX("$hash"), value));
+    }
+
+    private List<String> getFieldNamesForStructuralHashCode() {
+        List<String> ignored = getAllIgnoredFieldNames();
+        return annotatedClass.getFields()
+                .stream()
+                .filter(fieldNode -> !fieldNode.isStatic() && !fieldNode.isSynthetic())
+                .map(FieldNode::getName)
+                .filter(name -> !name.contains("$") && !ignored.contains(name))
+                .collect(toList());
+    }
+
+    // a parent compiled with an older version only has a constant hashCode, a parent with a custom hashCode is called directly
+    private boolean parentHasStructuralHashCode() {
+        if (dslParent == null || hasAnnotation(dslParent, EQUALS_HASHCODE_ANNOT))
+            return false;
+        if (dslParent.getMethod(STRUCTURAL_HASH_CODE_METHOD, params(param(ClassHelper.int_TYPE, "hash"))) != null)
+            return true;
+        return !hasDeclaredMethod(dslParent, "hashCode", 0);
+    }
+
+    private void shortCircuitEqualsOnCachedHashCodes() {
+        MethodNode equals = annotatedClass.getDeclaredMethod("equals", params(param(OBJECT_TYPE, "other")));
+        if (equals == null || !(equals.getCode() instanceof BlockStatement))
+            return;
+        ((BlockStatement) equals.getCode()).getStatements().add(0, ifS(
+                proxyCallX("hasDifferentCachedHashCode", Collections.singletonList(OBJECT_TYPE), varX(equals.getParameters()[0])),
+                returnS(constX(false))
+        ));
+    }
+
     private void createFieldDSLMethods() {
         annotatedClass.getFields().forEach(this::createDSLMethodsForSingleField);
         annotatedClass
@@ -590,6 +661,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .linkToField(fieldNode)
                 .documentationTitle(DocUtil.getCollectionMultiAdderText(fieldNode))
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .arrayParam(elementType, "values", "The values to add")
                 .addTo(rwClass);
 
@@ -599,6 +671,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .linkToField(fieldNode)
                 .documentationTitle(DocUtil.getCollectionMultiAdderText(fieldNode))
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .param(GenericsUtils.makeClassSafeWithGenerics(Iterable.class, elementType), "values", "The values to add")
                 .addTo(rwClass);
 
@@ -609,6 +682,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .linkToField(fieldNode)
                 .documentationTitle(DocUtil.getCollectionAdderText(fieldNode))
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .param(elementType, "value", "The value to add")
                 .addTo(rwClass);
 
@@ -675,6 +749,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .mod(visibility)
                 .linkToField(fieldNode)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .arrayParam(elementType, "values")
                 .addTo(rwClass);
 
@@ -683,6 +758,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .mod(visibility)
                 .linkToField(fieldNode)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .param(GenericsUtils.makeClassSafeWithGenerics(Iterable.class, elementType), "values")
                 .addTo(rwClass);
 
@@ -692,6 +768,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .linkToField(fieldNode)
                 .returning(elementType)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .param(elementType, "value")
                 .addTo(rwClass);
 
@@ -745,6 +822,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                     .mod(visibility)
                     .linkToField(fieldNode)
                     .constantParam(methodName)
+                    .elementTypeParam(valueType)
                     .param(makeClassSafeWithGenerics(MAP_TYPE, new GenericsType(keyType), new GenericsType(valueType)), "values")
                     .addTo(rwClass);
         } else {
@@ -753,6 +831,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                     .mod(visibility)
                     .linkToField(fieldNode)
                     .constantParam(methodName)
+                    .elementTypeParam(valueType)
                     .param(makeClassSafeWithGenerics(CommonAstHelper.COLLECTION_TYPE, new GenericsType(valueType)), "values")
                     .addTo(rwClass);
             createProxyMethod(methodName, "addElementsToMap")
@@ -760,6 +839,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                     .mod(visibility)
                     .linkToField(fieldNode)
                     .constantParam(methodName)
+                    .elementTypeParam(valueType)
                     .arrayParam(valueType, "values")
                     .addTo(rwClass);
         }
@@ -770,6 +850,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .returning(valueType)
                 .linkToField(fieldNode)
                 .constantParam(methodName)
+                .elementTypeParam(valueType)
                 .optionalParam(keyType, "key", keyMappingClosure == null)
                 .param(valueType, "value")
                 .addTo(rwClass);
@@ -845,6 +926,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .mod(visibility)
                 .linkToField(fieldNode)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .param(makeClassSafeWithGenerics(CommonAstHelper.COLLECTION_TYPE, new GenericsType(elementType)), "values")
                 .addTo(rwClass);
         createProxyMethod(fieldName, "addElementsToMap")
@@ -852,6 +934,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .mod(visibility)
                 .linkToField(fieldNode)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .arrayParam(elementType, "values")
                 .addTo(rwClass);
 
@@ -861,6 +944,7 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .returning(elementType)
                 .linkToField(fieldNode)
                 .constantParam(fieldName)
+                .elementTypeParam(elementType)
                 .constantParam(null)
                 .param(elementType, elementToAddVarName)
                 .addTo(rwClass);
@@ -1014,6 +1098,19 @@ public class DSLASTTransformation extends AbstractASTTransformation {
                 .addTo(annotatedClass);
     }
 
+    private void createParallelMethod() {
+        // a field named 'parallel', a mutator, a model method or a parent class might already provide that signature,
+        // which takes precedence
+        if (rwClass.getMethod("parallel", params(param(CLOSURE_TYPE, "body"))) != null)
+            return;
+
+        createProxyMethod("parallel")
+                .mod(ACC_PUBLIC)
+                .delegatingClosureParam(rwClass, null, "The closure declaring the elements to create")
+                .documentationTitle("Creates the collection and map elements declared in the closure concurrently.")
+                .addTo(rwClass);
+    }
+
     private void createFactoryField() {
         ClassNode defaultImpl = getNullSafeClassMember(getAnnotation(annotatedClass, DSL_CONFIG_ANNOTATION), "defaultImpl", annotatedClass);
         ClassNode factoryType = getFactoryBase(defaultImpl);
@@ -1028,7 +1125,10 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         );
         AnnoDocUtil.addDocumentation(factoryClass, "Factory for creating instances of " + annotatedClass.getName());
 
-        DslAstHelper.registerAsVerbProvider(factoryClass);
+        DslAstHelper.registerAsFactoryVerbProvider(factoryClass);
+        // custom factory methods are verbs as well, this only works for factories that are compiled together with the model
+        if (factoryType.redirect().isPrimaryClassNode())
+            DslAstHelper.registerAsFactoryVerbProvider(factoryType);
 
         if (factoryIsGeneric)
             factoryClass.addConstructor(0, Parameter.EMPTY_ARRAY, ClassNode.EMPTY_ARRAY,
@@ -1052,6 +1152,47 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         annotatedClass.addField(factoryField);
     }
 
+    private void createKnownSubtypesRegistry() {
+        MapExpression registry = new MapExpression();
+        getKnownSubtypeNames().forEach((name, type) -> registry.addMapEntryExpression(constX(name), classX(type)));
+
+        MethodNode registryMethod = annotatedClass.addMethod(
+                TypeRegistry.KNOWN_SUBTYPES_METHOD,
+                ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC,
+                newClass(MAP_TYPE),
+                Parameter.EMPTY_ARRAY,
+                NO_EXCEPTIONS,
+                returnS(registry)
+        );
+        registryMethod.addAnnotation(createGeneratedAnnotation(DSLASTTransformation.class));
+    }
+
+    // preferred names come first, ambiguous names (except the full class name) are dropped
+    private Map<String, ClassNode> getKnownSubtypeNames() {
+        Set<ClassNode> subtypes = new LinkedHashSet<>();
+        if (isInstantiable(annotatedClass))
+            subtypes.add(annotatedClass);
+        findAllKnownSubclassesOf(annotatedClass).stream()
+                .filter(type -> (type.getModifiers() & ACC_SYNTHETIC) == 0)
+                .filter(DslAstHelper::isDSLObject)
+                .filter(DslAstHelper::isInstantiable)
+                .forEach(subtypes::add);
+
+        Map<String, Set<ClassNode>> candidates = new LinkedHashMap<>();
+        for (ClassNode subtype : subtypes) {
+            for (String name : Arrays.asList(getShortNameFor(subtype), getStrippedNameFor(subtype), subtype.getNameWithoutPackage(), subtype.getName()))
+                candidates.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(subtype);
+        }
+
+        Map<String, ClassNode> result = new LinkedHashMap<>();
+        candidates.forEach((name, types) -> {
+            ClassNode type = types.iterator().next();
+            if (types.size() == 1 || name.equals(type.getName()))
+                result.put(name, type);
+        });
+        return result;
+    }
+
     private ClassNode getFactoryBase(ClassNode defaultImpl) {
         ClassNode factoryBase = getMemberClassValue(dslAnnotation, "factory");
         if (factoryBase == null) factoryBase = getInnerClass(annotatedClass, "Factory");
@@ -1121,8 +1262,10 @@ public class DSLASTTransformation extends AbstractASTTransformation {
         String originalDocumentation = ASTExtractor.extractDocumentation(methodNode, null);
         AnnoDocUtil.addDocumentation(newMethod, originalDocumentation);
         MethodNode existing = factoryClass.getDeclaredMethod(methodNode.getName(), parameters);
-        if (existing == null)
+        if (existing == null) {
             factoryClass.addMethod(newMethod);
+            DslAstHelper.emitBreadcrumbVerb(newMethod);
+        }
     }
 
     private void createFactoryMethods() {
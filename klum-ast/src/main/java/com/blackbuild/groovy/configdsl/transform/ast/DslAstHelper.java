@@ -26,21 +26,26 @@ package com.blackbuild.groovy.configdsl.transform.ast;
 import com.blackbuild.groovy.configdsl.transform.Field;
 import com.blackbuild.groovy.configdsl.transform.FieldType;
 import com.blackbuild.groovy.configdsl.transform.KlumGenerated;
-import com.blackbuild.klum.ast.util.BreadCrumbVerbInterceptor;
+import com.blackbuild.klum.ast.process.BreadcrumbCollector;
 import com.blackbuild.klum.ast.util.LanguageHelper;
 import com.blackbuild.klum.common.CommonAstHelper;
 import groovyjarjarasm.asm.Opcodes;
 import org.codehaus.groovy.ast.*;
 import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
 import org.codehaus.groovy.classgen.Verifier;
 import org.jetbrains.annotations.Nullable;
 
+import java.beans.Introspector;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static com.blackbuild.klum.common.CommonAstHelper.*;
 import static org.codehaus.groovy.ast.tools.GeneralUtils.*;
+import static org.codehaus.groovy.transform.AbstractASTTransformation.getMemberStringValue;
 
 /**
  * Created by stephan on 05.12.2016.
@@ -53,7 +58,9 @@ public class DslAstHelper {
     public static final ClassNode KLUM_GENERATED_CLASSNODE = ClassHelper.make(KlumGenerated.class);
 
     private static final String DELAYED_ACTIONS_METADATA_KEY = DSLASTTransformation.class.getName() + ".delayedActions";
-    private static final ClassNode BREADCRUMB_VERB_INTERCEPTOR = ClassHelper.make(BreadCrumbVerbInterceptor.class);
+    private static final String VERB_PROVIDER_METADATA_KEY = DSLASTTransformation.class.getName() + ".verbProvider";
+    private static final String VERB_EMITTED_METADATA_KEY = DSLASTTransformation.class.getName() + ".verbEmitted";
+    private static final ClassNode BREADCRUMB_COLLECTOR = ClassHelper.make(BreadcrumbCollector.class);
 
     private DslAstHelper() {}
 
@@ -247,19 +254,48 @@ public class DslAstHelper {
         return result;
     }
 
-    static List<String> getOwnerFieldNames(ClassNode target) {
-        List<FieldNode> ownerFieldsOfElement = getOwnerFields(target);
-        ArrayList<String> result = new ArrayList<>(ownerFieldsOfElement.size());
+    public static boolean isInstantiable(ClassNode classNode) {
+        return !classNode.isInterface() && !isAbstract(classNode);
+    }
 
-        for (FieldNode fieldNode : ownerFieldsOfElement) {
-            result.add(fieldNode.getName());
-        }
+    /**
+     * Returns the short name of the given model class, i.e. the explicit {@code shortName} of its DSL annotation
+     * or the decapitalized simple name of the class, stripped of the {@code stripSuffix} of its ancestors.
+     */
+    static String getShortNameFor(ClassNode type) {
+        Optional<AnnotationNode> annotationNode = CommonAstHelper.getOptionalAnnotation(type, DSLASTTransformation.DSL_CONFIG_ANNOTATION);
 
-        return result;
+        String shortName = annotationNode.map(it -> getMemberStringValue(it, "shortName")).orElse(null);
+
+        if (shortName != null)
+            return shortName;
+
+        return Introspector.decapitalize(getStrippedNameFor(type));
     }
 
-    public static boolean isInstantiable(ClassNode classNode) {
-        return !classNode.isInterface() && !isAbstract(classNode);
+    /**
+     * Returns the simple name of the given model class without the {@code stripSuffix} of its ancestors.
+     */
+    static String getStrippedNameFor(ClassNode type) {
+        String stringSuffix = findStripSuffixForHierarchy(type);
+        String simpleName = type.getNameWithoutPackage();
+
+        if (stringSuffix != null && simpleName.endsWith(stringSuffix))
+            return simpleName.substring(0, simpleName.length() - stringSuffix.length());
+
+        return simpleName;
+    }
+
+    private static String findStripSuffixForHierarchy(ClassNode type) {
+        Deque<ClassNode> superSchemaClasses = getHierarchyOfDSLObjectAncestors(type.getSuperClass());
+
+        String stringSuffix = null;
+        for (Iterator<ClassNode> it = superSchemaClasses.descendingIterator(); it.hasNext() && stringSuffix == null; ) {
+            ClassNode ancestor = it.next();
+            AnnotationNode ancestorAnnotation = ancestor.getAnnotations(DSLASTTransformation.DSL_CONFIG_ANNOTATION).get(0);
+            stringSuffix = getMemberStringValue(ancestorAnnotation, "stripSuffix");
+        }
+        return stringSuffix;
     }
 
     @Nullable
@@ -394,8 +430,54 @@ public class DslAstHelper {
                 .forEach(target::addAnnotation);
     }
 
+    /**
+     * Marks the given class as breadcrumb verb provider, i.e. every public method of the class sets its name as the
+     * verb of the next breadcrumb. Existing methods are changed directly, methods added later by method builders
+     * are changed on creation.
+     */
     public static void registerAsVerbProvider(ClassNode clazz) {
-        clazz.addStaticInitializerStatements(Collections.singletonList(stmt(callX(BREADCRUMB_VERB_INTERCEPTOR, "registerClass", args(classX(clazz))))), false);
+        registerAsVerbProvider(clazz, method -> setBreadcrumbVerbS(method.getName()));
+    }
+
+    /**
+     * Creates a statement setting the verb of the next breadcrumb.
+     */
+    public static Statement setBreadcrumbVerbS(String verb) {
+        return stmt(callX(callX(BREADCRUMB_COLLECTOR, "getInstance"), "setVerb", constX(verb)));
+    }
+
+    /**
+     * Marks the given factory class as breadcrumb verb provider. Factory verbs are prefixed with the short name of
+     * the created type by {@code KlumFactory.setBreadcrumbVerb()}.
+     */
+    public static void registerAsFactoryVerbProvider(ClassNode clazz) {
+        registerAsVerbProvider(clazz, method -> stmt(callThisX("setBreadcrumbVerb", constX(method.getName()))));
+    }
+
+    private static void registerAsVerbProvider(ClassNode clazz, Function<MethodNode, Statement> verbStatementProvider) {
+        if (clazz.redirect().getNodeMetaData(VERB_PROVIDER_METADATA_KEY) == null)
+            clazz.redirect().setNodeMetaData(VERB_PROVIDER_METADATA_KEY, verbStatementProvider);
+        clazz.getMethods().forEach(DslAstHelper::emitBreadcrumbVerb);
+    }
+
+    /**
+     * Inserts the breadcrumb verb as first statement of the given method, if the declaring class of the method
+     * is a verb provider. Methods are only changed once.
+     */
+    public static void emitBreadcrumbVerb(MethodNode method) {
+        ClassNode owner = method.getDeclaringClass();
+        if (owner == null) return;
+        Function<MethodNode, Statement> verbStatementProvider = owner.redirect().getNodeMetaData(VERB_PROVIDER_METADATA_KEY);
+        if (verbStatementProvider == null) return;
+        if (!method.isPublic() || method.isStatic() || method.isAbstract() || method.getCode() == null) return;
+        if (method.getNodeMetaData(VERB_EMITTED_METADATA_KEY) != null) return;
+        method.setNodeMetaData(VERB_EMITTED_METADATA_KEY, Boolean.TRUE);
+
+        Statement verbStatement = verbStatementProvider.apply(method);
+        if (method.getCode() instanceof BlockStatement)
+            ((BlockStatement) method.getCode()).getStatements().add(0, verbStatement);
+        else
+            method.setCode(block(verbStatement, method.getCode()));
     }
 
 }
@@ -23,12 +23,22 @@
  */
 package com.blackbuild.groovy.configdsl.transform.ast;
 
+import com.blackbuild.klum.ast.util.KlumInstanceProxy;
 import org.codehaus.groovy.ast.ClassHelper;
 import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
 
+import java.lang.reflect.Modifier;
 import java.util.List;
 
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
+
 public class MethodAstHelper {
 
     private MethodAstHelper() {
@@ -63,6 +73,60 @@ public class MethodAstHelper {
         return bestMethod;
     }
 
+    /**
+     * Binds the given call directly to its target method, so that the generated bytecode invokes the method
+     * without going through a dynamic call site. This is only done if the binding is unambiguous, i.e. if
+     * there is exactly one public candidate with the given name that accepts the argument types, so that
+     * dynamic dispatch would have selected the same method. Otherwise, the call is left dynamic.
+     * @param call The call to bind, its receiver must be of type {@code targetType}
+     * @param targetType The type declaring the target method
+     * @param args The static types of the arguments
+     * @return the call itself
+     */
+    public static MethodCallExpression withDirectTarget(MethodCallExpression call, ClassNode targetType, List<ClassNode> args) {
+        if (targetType == null) return call;
+        MethodNode target = null;
+        for (MethodNode candidate : targetType.redirect().getMethods(call.getMethodAsString())) {
+            if (candidate.getParameters().length != args.size() && !isVarargs(candidate)) continue;
+            if (target != null) return call;
+            target = candidate;
+        }
+        if (target == null || !target.isPublic() || !Modifier.isPublic(targetType.redirect().getModifiers()))
+            return call;
+        if (target.isStatic() != call.getObjectExpression() instanceof ClassExpression)
+            return call;
+        if (argumentDistance(target, args) < 0)
+            return call;
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).isGenericsPlaceHolder()) return call;
+            if (args.get(i).equals(ClassHelper.VOID_TYPE) && ClassHelper.isPrimitiveType(target.getParameters()[i].getType()))
+                return call;
+        }
+        call.setMethodTarget(target);
+        return call;
+    }
+
+    /**
+     * Creates a call of the given method on the instance proxy of the current model object, bound directly
+     * to its target if possible (see {@link #withDirectTarget(MethodCallExpression, ClassNode, List)}).
+     * @param methodName The name of the proxy method
+     * @param argumentTypes The static types of the arguments
+     * @param args The arguments
+     * @return the call expression
+     */
+    public static MethodCallExpression proxyCallX(String methodName, List<ClassNode> argumentTypes, Expression... args) {
+        return withDirectTarget(
+                callX(varX(KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS), methodName, args(args)),
+                DSLASTTransformation.INSTANCE_PROXY,
+                argumentTypes
+        );
+    }
+
+    private static boolean isVarargs(MethodNode method) {
+        Parameter[] parameters = method.getParameters();
+        return parameters.length > 0 && parameters[parameters.length - 1].getType().isArray();
+    }
+
     public static Integer argumentDistance(MethodNode methodNode, List<ClassNode> args) {
         int result = 0;
         if (methodNode.getParameters().length != args.size())
@@ -24,11 +24,11 @@
 package com.blackbuild.groovy.configdsl.transform.ast;
 
 import com.blackbuild.groovy.configdsl.transform.FieldType;
-import com.blackbuild.klum.ast.util.KlumInstanceProxy;
 import groovyjarjarasm.asm.Opcodes;
 import org.codehaus.groovy.ast.ClassHelper;
 import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.Parameter;
 import org.codehaus.groovy.ast.PropertyNode;
 
 import java.util.ArrayList;
@@ -36,7 +36,9 @@ import java.util.List;
 
 import static com.blackbuild.groovy.configdsl.transform.ast.DslAstHelper.*;
 import static com.blackbuild.groovy.configdsl.transform.ast.MethodBuilder.*;
+import static com.blackbuild.groovy.configdsl.transform.ast.MethodAstHelper.proxyCallX;
 import static com.blackbuild.klum.common.CommonAstHelper.replaceProperties;
+import static java.util.Collections.singletonList;
 import static org.codehaus.groovy.ast.tools.GeneralUtils.*;
 
 class PropertyAccessors {
@@ -90,21 +92,14 @@ class PropertyAccessors {
         String setterName = DslAstHelper.getSetterName(fieldName);
         String rwSetterName = setterName + "$rw";
 
-        pNode.setGetterBlock(stmt(
-                callX(
-                        varX(KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS),
-                        "getInstanceProperty",
-                        args(constX(fieldName))
-                )
-        ));
+        if (dslastTransformation.annotatedClass.getDeclaredMethod(getterName, Parameter.EMPTY_ARRAY) != null)
+            pNode.setGetterBlock(stmt(proxyCallX("getInstanceProperty", singletonList(ClassHelper.STRING_TYPE), constX(fieldName))));
+        else
+            createModelGetters(pNode);
 
         createPublicMethod(getterName)
                 .returning(fieldType)
-                .doReturn(callX(
-                        varX(KlumInstanceProxy.NAME_OF_PROXY_FIELD_IN_MODEL_CLASS),
-                        "getInstanceAttribute",
-                        args(constX(fieldName)))
-                )
+                .doReturn(proxyCallX("getInstanceAttribute", singletonList(ClassHelper.STRING_TYPE), constX(fieldName)))
                 .addTo(dslastTransformation.rwClass);
 
         createProtectedMethod(rwSetterName)
@@ -126,6 +121,22 @@ class PropertyAccessors {
         propertiesToReplace.add(pNode);
     }
 
+    // explicit getters carry @KlumGenerated, so that they can be told apart from user defined getters at runtime
+    private void createModelGetters(PropertyNode pNode) {
+        createModelGetter(pNode, DslAstHelper.getGetterName(pNode.getName()));
+        if (pNode.getType().equals(ClassHelper.boolean_TYPE))
+            createModelGetter(pNode, DslAstHelper.getBooleanGetterName(pNode.getName()));
+        pNode.setGetterBlock(null);
+    }
+
+    private void createModelGetter(PropertyNode pNode, String getterName) {
+        createMethod(getterName)
+                .mod(pNode.getModifiers() & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED))
+                .returning(pNode.getType())
+                .doReturn(proxyCallX("getInstanceProperty", singletonList(ClassHelper.STRING_TYPE), constX(pNode.getName())))
+                .addTo(dslastTransformation.annotatedClass);
+    }
+
     private void setAccessorsForOwnerFields() {
         dslastTransformation.ownerFields.forEach(this::setAccessorsForSpecialField);
     }
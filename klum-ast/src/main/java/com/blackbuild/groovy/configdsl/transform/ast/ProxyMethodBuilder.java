@@ -61,6 +61,7 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
     private final Expression proxyTarget;
     private ClassNode targetType;
     private boolean docAlreadyCopied;
+    private boolean setsBreadcrumbVerb;
 
     private final List<ProxyMethodArgument> params = new ArrayList<>();
 
@@ -85,6 +86,7 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
     public static ProxyMethodBuilder createFactoryMethod(String name, ClassNode factoryType) {
         return new ProxyMethodBuilder(classX(FACTORY_HELPER_TYPE), name, name)
                 .targetType(FACTORY_HELPER_TYPE)
+                .setsBreadcrumbVerb()
                 .mod(ACC_STATIC | ACC_PUBLIC)
                 .returning(newClass(factoryType), "The new instance")
                 .constantClassParam(factoryType);
@@ -98,10 +100,10 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
     }
 
     private Statement delegateToProxy(String methodName, List<Expression> args) {
-        MethodCallExpression callExpression = callX(
-                proxyTarget,
-                methodName,
-                args(args)
+        MethodCallExpression callExpression = MethodAstHelper.withDirectTarget(
+                callX(proxyTarget, methodName, args(args)),
+                targetType,
+                getProxyArgumentTypes()
         );
         if (!returnType.equals(ClassHelper.VOID_TYPE))
             return returnS(callExpression);
@@ -114,6 +116,14 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
         return this;
     }
 
+    /**
+     * Sets the method name as verb of the next breadcrumb, used for static methods, which are never verb providers.
+     */
+    public ProxyMethodBuilder setsBreadcrumbVerb() {
+        this.setsBreadcrumbVerb = true;
+        return this;
+    }
+
     public ProxyMethodBuilder decoratedParam(FieldNode field, String name, String doc) {
         List<AnnotationNode> annotations = field.getAnnotations()
                 .stream()
@@ -278,7 +288,10 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
 
     @Override
     protected Statement getMethodBody() {
-        return delegateToProxy(proxyMethodName, getProxyArguments());
+        Statement delegation = delegateToProxy(proxyMethodName, getProxyArguments());
+        if (!setsBreadcrumbVerb)
+            return delegation;
+        return block(DslAstHelper.setBreadcrumbVerbS(name), delegation);
     }
 
     /**
@@ -514,6 +527,26 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
         return this;
     }
 
+    /**
+     * Passes the element type of a collection or map field as a class constant, so that it does not need to be
+     * resolved from the field's generic type for every added element. Generic placeholders are resolved at runtime.
+     */
+    public ProxyMethodBuilder elementTypeParam(ClassNode elementType) {
+        if (!elementType.isGenericsPlaceHolder())
+            params.add(new FixedExpressionArgument(elementType.getPlainNodeReference()));
+        return this;
+    }
+
+    /**
+     * Adds the given parameters to the method signature. Instead of the parameters themselves, the result of the
+     * given converter call, which consumes them, is passed to the proxy method.
+     */
+    public ProxyMethodBuilder convertedParams(List<Parameter> parameters, Expression converterCall) {
+        parameters.forEach(parameter -> params.add(new ConverterArgument(parameter)));
+        params.add(new FixedExpressionArgument(converterCall));
+        return this;
+    }
+
     public ProxyMethodBuilder thisParam() {
         params.add(new FixedExpressionArgument(varX("this")));
         return this;
@@ -589,6 +622,23 @@ public final class ProxyMethodBuilder extends AbstractMethodBuilder<ProxyMethodB
         }
     }
 
+    private static class ConverterArgument extends ProxiedArgument {
+
+        public ConverterArgument(Parameter parameter) {
+            super(parameter.getName(), parameter.getType(), null, parameter.getInitialExpression(), null);
+        }
+
+        @Override
+        Optional<Expression> asInstanceProxyArgument() {
+            return Optional.empty();
+        }
+
+        @Override
+        Optional<ClassNode> asInstanceProxyArgumentType() {
+            return Optional.empty();
+        }
+    }
+
     private static class ConstantArgument extends ProxyMethodArgument {
         Object constant;
         boolean keepPrimitive;
@@ -26,6 +26,7 @@ package com.blackbuild.groovy.configdsl.transform.ast.mutators;
 import com.blackbuild.groovy.configdsl.transform.Mutator;
 import com.blackbuild.groovy.configdsl.transform.WriteAccess;
 import com.blackbuild.groovy.configdsl.transform.ast.DSLASTTransformation;
+import com.blackbuild.groovy.configdsl.transform.ast.DslAstHelper;
 import com.blackbuild.klum.common.CommonAstHelper;
 import org.codehaus.groovy.ast.ClassHelper;
 import org.codehaus.groovy.ast.ClassNode;
@@ -65,6 +66,7 @@ public class WriteAccessMethodsMover {
         ClassNode rwClass = declaringClass.getNodeMetaData(DSLASTTransformation.RWCLASS_METADATA_KEY);
         // if method is public, it will already have been added by delegateTo, replace it again
         CommonAstHelper.replaceMethod(rwClass, method);
+        DslAstHelper.emitBreadcrumbVerb(method);
     }
 
     public void invoke() {
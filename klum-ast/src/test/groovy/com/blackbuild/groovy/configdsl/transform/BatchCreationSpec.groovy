@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.groovy.configdsl.transform
+
+import com.blackbuild.klum.ast.util.KlumContext
+import com.blackbuild.klum.ast.util.KlumValidationException
+import com.blackbuild.klum.ast.util.ParallelCreation
+
+class BatchCreationSpec extends AbstractDSLSpec {
+
+    def setup() {
+        createClass('''
+            package pk
+
+            import java.util.concurrent.CopyOnWriteArrayList
+
+            @DSL
+            class Tenant {
+                static List<String> events = new CopyOnWriteArrayList<>()
+
+                @Key String name
+                @Required String region
+
+                @PostCreate
+                void created() {
+                    events << "create:$name".toString()
+                }
+
+                @PostTree
+                void completed() {
+                    events << "tree:$name".toString()
+                }
+            }
+        ''')
+        clazz.events.clear()
+    }
+
+    def "phases of a batch are run after all models have been created"() {
+        when:
+        def tenants = clazz.Create.Many {
+            clazz.Create.With("a") { region "eu" }
+            clazz.Create.With("b") { region "us" }
+        }
+
+        then:
+        tenants*.name == ["a", "b"]
+        clazz.events.take(2) == ["create:a", "create:b"]
+        clazz.events.drop(2).toSet() == ["tree:a", "tree:b"] as Set
+    }
+
+    def "models created concurrently in a batch are part of the batch"() {
+        when:
+        def tenants = clazz.Create.Many {
+            ParallelCreation.createAll(1..10) { Integer i -> clazz.Create.With("t$i") { region "eu" } }
+        }
+
+        then:
+        tenants*.name == (1..10).collect { "t$it".toString() }
+        clazz.events.findAll { it.startsWith("tree:") }.size() == 10
+    }
+
+    def "FromMaps creates its objects in a single batch"() {
+        when:
+        def tenants = clazz.Create.FromMaps([[name: "a", region: "eu"], [name: "b", region: "us"]])
+
+        then:
+        tenants*.name == ["a", "b"]
+        clazz.events == ["create:a", "create:b", "tree:a", "tree:b"]
+    }
+
+    def "phases of a batch can be run concurrently"() {
+        when:
+        def tenants = clazz.Create.Many(true) {
+            (1..10).each { i -> clazz.Create.With("t$i") { region "eu" } }
+        }
+
+        then:
+        tenants*.name == (1..10).collect { "t$it".toString() }
+        clazz.events.findAll { it.startsWith("tree:") }.toSet() == (1..10).collect { "tree:t$it".toString() }.toSet()
+    }
+
+    def "phase failures of a batch are rethrown"() {
+        when:
+        clazz.Create.Many {
+            clazz.Create.With("a") { region "eu" }
+            clazz.Create.With("b") {}
+        }
+
+        then:
+        thrown(KlumValidationException)
+        KlumContext.currentOrNull() == null
+    }
+
+    def "a batch inside a model creation does not run separate phases"() {
+        given:
+        def inner = null
+
+        when:
+        clazz.Create.With("outer") {
+            region "eu"
+            inner = clazz.Create.Many {
+                clazz.Create.With("inner") { region "us" }
+            }
+        }
+
+        then:
+        inner*.name == ["inner"]
+        !clazz.events.contains("tree:inner")
+        clazz.events.contains("tree:outer")
+    }
+}
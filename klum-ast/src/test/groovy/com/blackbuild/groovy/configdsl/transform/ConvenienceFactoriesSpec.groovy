@@ -23,7 +23,11 @@
  */
 package com.blackbuild.groovy.configdsl.transform
 
+import com.blackbuild.klum.ast.process.BreadcrumbCollector
+import com.blackbuild.klum.ast.util.FreezePhase
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
 import com.blackbuild.klum.ast.util.KlumValidationException
+import com.blackbuild.klum.ast.util.ModelSnapshot
 import org.junit.Rule
 import org.junit.rules.TemporaryFolder
 import spock.lang.Issue
@@ -600,6 +604,137 @@ class ConvenienceFactoriesSpec extends AbstractDSLSpec {
         instance.value == "welt"
     }
 
+    def "read model from classpath prefers a snapshot"() {
+        given:
+        def classPathRoot = temp.newFolder()
+        def properties = new File(classPathRoot, "META-INF/klum-model/pk.Config.properties")
+        properties.parentFile.mkdirs()
+        createClass'''
+            package pk
+
+            @DSL
+            class Config {
+                String name
+                Inner inner
+            }
+
+            @DSL
+            class Inner {
+                @Owner Config owner
+                String value
+            }'''
+        createSecondaryClass'''
+            package impl
+            pk.Config.Create.With {
+                name "from script"
+            }''', "Configuration.groovy"
+        properties.text = "model-class: impl.Configuration"
+        loader.addURL(classPathRoot.toURI().toURL())
+        def snapshotModel = clazz.Create.With {
+            name "from snapshot"
+            inner(value: "inner")
+        }
+        new File(classPathRoot, "META-INF/klum-model/pk.Config.snapshot").withOutputStream {
+            ModelSnapshot.write(snapshotModel, it)
+        }
+
+        when:
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        instance.name == "from snapshot"
+        instance.inner.value == "inner"
+        instance.inner.owner.is(instance)
+
+        when: "the breadcrumb of the next model is not affected by the skipped script"
+        def paths = []
+        2.times {
+            clazz.Create.With {
+                paths << BreadcrumbCollector.instance.fullPath
+            }
+        }
+
+        then:
+        paths[0] == paths[1]
+        !paths[0].contains("FromClasspath")
+    }
+
+    def "snapshots from the classpath are frozen if freezing is enabled"() {
+        given:
+        def classPathRoot = temp.newFolder()
+        createClass'''
+            package pk
+
+            @DSL
+            class Config {
+                String name
+                Inner inner
+            }
+
+            @DSL
+            class Inner {
+                @Owner Config owner
+                String value
+            }'''
+        loader.addURL(classPathRoot.toURI().toURL())
+        def snapshotModel = clazz.Create.With {
+            name "from snapshot"
+            inner(value: "inner")
+        }
+        KlumInstanceProxy.getProxyFor(snapshotModel).freeze()
+        def snapshot = new File(classPathRoot, ModelSnapshot.resourcePathFor(clazz))
+        snapshot.parentFile.mkdirs()
+        snapshot.withOutputStream {
+            ModelSnapshot.write(snapshotModel, it)
+        }
+
+        when: 'the frozen state of the model that was written is not restored'
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        instance.name == "from snapshot"
+        !KlumInstanceProxy.getProxyFor(instance).frozen
+
+        when:
+        FreezePhase.enabled = true
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        KlumInstanceProxy.getProxyFor(instance).frozen
+        KlumInstanceProxy.getProxyFor(instance.inner).frozen
+
+        cleanup:
+        FreezePhase.enabled = false
+    }
+
+    def "invalid snapshots are ignored"() {
+        given:
+        def classPathRoot = temp.newFolder()
+        def properties = new File(classPathRoot, "META-INF/klum-model/pk.Config.properties")
+        properties.parentFile.mkdirs()
+        createClass'''
+            package pk
+
+            @DSL
+            class Config {
+                String name
+            }'''
+        createSecondaryClass'''
+            package impl
+            pk.Config.Create.With {
+                name "from script"
+            }''', "Configuration.groovy"
+        properties.text = "model-class: impl.Configuration"
+        new File(classPathRoot, "META-INF/klum-model/pk.Config.snapshot").text = "KLUMSNAP but broken"
+        loader.addURL(classPathRoot.toURI().toURL())
+
+        when:
+        instance = clazz.Create.FromClasspath()
+
+        then:
+        instance.name == "from script"
+    }
+
     @Issue("https://github.com/klum-dsl/klum-ast/issues/198")
     def "multiple convenience factory calls for lists"() {
         given:
@@ -412,6 +412,42 @@ class ConverterSpec extends AbstractDSLSpec {
         instance.bar.birthday.time == 123L
     }
 
+    def "converter methods are called directly"() {
+        when:
+        createClass '''
+            @Converters(BarUtil)
+            @DSL class Foo {
+                Bar bar
+                List<Bar> listBars
+                Map<String, Bar> mapBars
+            }
+            
+            class Bar {
+                String value
+            }
+
+            class BarUtil {
+                static List<String> callers = []
+
+                static Bar fromString(String value) {
+                    callers.addAll(new Throwable().stackTrace*.methodName)
+                    return new Bar(value: value)
+                }
+            }
+            '''
+        instance = clazz.Create.With {
+            bar "a"
+            listBar "b"
+            mapBar "c", "d"
+        }
+
+        then:
+        instance.bar.value == "a"
+        instance.listBars*.value == ["b"]
+        instance.mapBars.c.value == "d"
+        !getClass("BarUtil").callers.any { it.contains("Converter") }
+    }
+
     def "Implicit converters"() {
         when:
         createClass '''
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.groovy.configdsl.transform
+
+import com.blackbuild.klum.ast.util.FreezePhase
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
+import com.blackbuild.klum.ast.util.KlumModelException
+
+class FreezeSpec extends AbstractDSLSpec {
+
+    def setup() {
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                @Field(FieldType.TRANSIENT) String note
+                List<Bar> bars
+            }
+
+            @DSL
+            class Bar {
+                String value
+            }
+        ''')
+    }
+
+    def cleanup() {
+        FreezePhase.enabled = false
+    }
+
+    def "models are not frozen by default"() {
+        when:
+        instance = clazz.Create.With {
+            name "a"
+        }
+        instance.apply {
+            name "b"
+        }
+
+        then:
+        !KlumInstanceProxy.getProxyFor(instance).frozen
+        instance.name == "b"
+    }
+
+    def "models are frozen after creation if enabled"() {
+        given:
+        FreezePhase.enabled = true
+
+        when:
+        instance = clazz.Create.With {
+            name "a"
+            bar { value "x" }
+        }
+
+        then:
+        KlumInstanceProxy.getProxyFor(instance).frozen
+        KlumInstanceProxy.getProxyFor(instance.bars[0]).frozen
+    }
+
+    def "frozen models cannot be changed"() {
+        given:
+        instance = clazz.Create.With {
+            name "a"
+            bar { value "x" }
+        }
+        KlumInstanceProxy.getProxyFor(instance).freeze()
+
+        when:
+        instance.apply { name "b" }
+
+        then:
+        thrown(KlumModelException)
+        instance.name == "a"
+
+        when:
+        instance.apply { bar { value "y" } }
+
+        then:
+        thrown(KlumModelException)
+        instance.bars.size() == 1
+
+        when:
+        instance.bars[0].apply { value "y" }
+
+        then:
+        thrown(KlumModelException)
+        instance.bars[0].value == "x"
+    }
+
+    def "transient fields of frozen models can be changed"() {
+        given:
+        instance = clazz.Create.With {
+            name "a"
+        }
+        KlumInstanceProxy.getProxyFor(instance).freeze()
+
+        when:
+        instance.note = "remark"
+
+        then:
+        instance.note == "remark"
+    }
+
+    def "unkeyed objects have a hash code consistent with equals"() {
+        given:
+        def left = clazz.Create.With {
+            name "a"
+            note "left"
+            bar { value "x" }
+        }
+        def right = clazz.Create.With {
+            name "a"
+            note "right"
+            bar { value "x" }
+        }
+        def other = clazz.Create.With {
+            name "b"
+        }
+
+        expect: 'transient fields are ignored'
+        left == right
+        left.hashCode() == right.hashCode()
+        left != other
+        left.hashCode() != other.hashCode()
+
+        when:
+        [left, right, other].each { KlumInstanceProxy.getProxyFor(it).freeze() }
+
+        then: 'freezing does not change the hash code'
+        left.hashCode() == right.hashCode()
+        left == right
+        left != other
+    }
+
+    def "hash based collections of unkeyed objects deduplicate equal objects"() {
+        given:
+        def first = clazz.Create.With { name "a" }
+        def objects = [
+                first,
+                clazz.Create.With { name "b" },
+                clazz.Create.With { name "a" },
+                clazz.Create.With { name "c" },
+                clazz.Create.With { name "b" }
+        ]
+
+        when:
+        def distinct = new LinkedHashSet(objects) as List
+
+        then:
+        distinct*.name == ["a", "b", "c"]
+        distinct[0].is(first)
+    }
+
+    def "hash codes of frozen objects are cached"() {
+        given:
+        instance = clazz.Create.With {
+            name "a"
+        }
+        def proxy = KlumInstanceProxy.getProxyFor(instance)
+        def before = instance.hashCode()
+
+        expect:
+        proxy.cachedHashCode == 0
+
+        when:
+        proxy.freeze()
+
+        then:
+        instance.hashCode() == before
+        proxy.cachedHashCode == before
+
+        when: 'a transient field changes'
+        instance.note = "remark"
+
+        then:
+        instance.hashCode() == before
+    }
+
+    def "set fields are rebuilt after elements were changed by later phases"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Holder {
+                Set<Element> elements
+            }
+
+            @DSL
+            class Element {
+                String value
+
+                @Default(code = { "default" })
+                String other
+            }
+        ''')
+
+        when:
+        instance = clazz.Create.With {
+            element { value "a" }
+            element { value "b" }
+        }
+
+        then: 'the default values changed the hash codes of the elements after they were added'
+        instance.elements.every { instance.elements.contains(it) }
+        instance.elements*.other == ["default", "default"]
+    }
+}
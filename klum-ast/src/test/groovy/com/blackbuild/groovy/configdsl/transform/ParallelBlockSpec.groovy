@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.groovy.configdsl.transform
+
+import com.blackbuild.klum.ast.util.KlumModelException
+
+class ParallelBlockSpec extends AbstractDSLSpec {
+
+    def setup() {
+        createClass('''
+            package pk
+
+            @DSL
+            class Environment {
+                Map<String, Service> services
+                List<Service> extras
+            }
+
+            @DSL
+            class Service {
+                @Key String name
+                String host
+                String thread
+
+                @Owner Environment owner
+            }
+        ''')
+    }
+
+    def "elements of a parallel block are added in declaration order"() {
+        when:
+        instance = clazz.Create.With {
+            parallel {
+                (1..20).each { i ->
+                    service("s$i") {
+                        sleep(20 - i)
+                        thread(Thread.currentThread().name)
+                    }
+                }
+                extra("x") {}
+                extra("y") {}
+            }
+        }
+
+        then:
+        instance.services.keySet().toList() == (1..20).collect { "s$it" }
+        instance.extras*.name == ["x", "y"]
+        instance.services.values().every { it.owner.is(instance) }
+    }
+
+    def "element closures of a parallel block are evaluated by other threads"() {
+        when:
+        instance = clazz.Create.With {
+            parallel {
+                (1..4).each { i -> service("s$i") { thread(Thread.currentThread().name) } }
+            }
+        }
+
+        then:
+        instance.services.values().every { it.thread != Thread.currentThread().name }
+    }
+
+    def "active templates are used for elements of a parallel block"() {
+        given:
+        def template = getClass("pk.Service").Create.Template { host "localhost" }
+
+        when:
+        getClass("pk.Service").withTemplate(template) {
+            instance = clazz.Create.With {
+                parallel {
+                    service("a") {}
+                    service("b") { host "remote" }
+                }
+            }
+        }
+
+        then:
+        instance.services.a.host == "localhost"
+        instance.services.b.host == "remote"
+    }
+
+    def "breadcrumbs of elements in a parallel block are the same as without"() {
+        given:
+        def sequential = clazz.Create.With {
+            service("a") {}
+        }
+
+        when:
+        instance = clazz.Create.With {
+            parallel {
+                service("a") {}
+            }
+        }
+
+        then:
+        instance.services.a.$proxy.breadcrumbPath == sequential.services.a.$proxy.breadcrumbPath
+    }
+
+    def "an element must not be declared twice in a parallel block"() {
+        when:
+        clazz.Create.With {
+            parallel {
+                service("a") {}
+                service("a") {}
+            }
+        }
+
+        then:
+        thrown(KlumModelException)
+    }
+
+    def "failures of an element are rethrown and no element is added"() {
+        when:
+        clazz.Create.With {
+            parallel {
+                service("a") {}
+                service("b") { throw new IllegalStateException("failed") }
+            }
+        }
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "failed"
+    }
+
+    def "a field named parallel keeps its setter"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                Closure parallel
+            }
+
+            @DSL
+            class Bar extends Foo {
+                String name
+            }
+        ''')
+
+        when:
+        instance = clazz.Create.With {
+            parallel { 42 }
+        }
+
+        then:
+        instance.parallel.call() == 42
+
+        when:
+        instance = getClass("pk.Bar").Create.With {
+            parallel { 43 }
+        }
+
+        then:
+        instance.parallel.call() == 43
+    }
+
+    def "a mutator named parallel takes precedence"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+
+                @Mutator
+                void parallel(Closure body) {
+                    name = "custom"
+                }
+            }
+        ''')
+
+        when:
+        instance = clazz.Create.With {
+            parallel {}
+        }
+
+        then:
+        instance.name == "custom"
+    }
+}
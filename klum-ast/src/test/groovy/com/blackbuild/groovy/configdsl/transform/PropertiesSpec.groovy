@@ -51,5 +51,28 @@ class PropertiesSpec extends AbstractDSLSpec {
 
     }
 
+    def "generated getters are marked as generated, user defined getters are not"() {
+        when:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                boolean active
+                String custom
+
+                String getCustom() {
+                    "custom-" + custom
+                }
+            }
+        ''')
+
+        then:
+        clazz.getDeclaredMethod("getName").isAnnotationPresent(KlumGenerated)
+        clazz.getDeclaredMethod("getActive").isAnnotationPresent(KlumGenerated)
+        clazz.getDeclaredMethod("isActive").isAnnotationPresent(KlumGenerated)
+        !clazz.getDeclaredMethod("getCustom").isAnnotationPresent(KlumGenerated)
+    }
 
 }
@@ -25,6 +25,7 @@
 package com.blackbuild.groovy.configdsl.transform
 
 import com.blackbuild.klum.ast.util.KlumModelException
+import com.blackbuild.klum.ast.util.ModelPrinter
 import groovy.transform.stc.ClosureParams
 import groovy.transform.stc.FromString
 import org.codehaus.groovy.control.CompilePhase
@@ -1761,6 +1762,72 @@ import org.codehaus.groovy.control.CompilePhase
         notThrown(StackOverflowError)
     }
 
+    def "toString() is bounded in depth and number of elements"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                Foo child
+                List<String> values
+            }
+        ''')
+        instance = clazz.Create.With {
+            name "0"
+            values((1..30).collect { it.toString() })
+            child {
+                name "1"
+                child {
+                    name "2"
+                    child {
+                        name "3"
+                        child {
+                            name "4"
+                        }
+                    }
+                }
+            }
+        }
+
+        when:
+        ModelPrinter.defaultMaxElements = 2
+        def result = instance.toString()
+
+        then:
+        result == "pk.Foo(0, pk.Foo(1, pk.Foo(2, pk.Foo(3, pk.Foo(...), []), []), []), [1, 2, ... (28 more)])"
+
+        cleanup:
+        ModelPrinter.defaultMaxElements = ModelPrinter.DEFAULT_MAX_ELEMENTS
+    }
+
+    def "toString() can be written to an Appendable"() {
+        given:
+        createClass('''
+            package pk
+
+            @DSL
+            class Foo {
+                String name
+                Foo child
+            }
+        ''')
+        instance = clazz.Create.With {
+            name "0"
+            child {
+                name "1"
+            }
+        }
+        def writer = new StringWriter()
+
+        when:
+        ModelPrinter.appendTo(writer, instance, 0, 10)
+
+        then:
+        writer.toString() == "pk.Foo(0, pk.Foo(...))"
+    }
+
     def "error: more than one key"() {
         when:
         createClass('''
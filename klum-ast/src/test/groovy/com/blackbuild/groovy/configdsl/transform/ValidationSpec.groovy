@@ -26,6 +26,7 @@
 package com.blackbuild.groovy.configdsl.transform
 
 
+import com.blackbuild.klum.ast.process.BreadcrumbCollector
 import com.blackbuild.klum.ast.util.KlumValidationException
 import com.blackbuild.klum.ast.util.Validator
 import org.codehaus.groovy.control.MultipleCompilationErrorsException
@@ -229,6 +230,45 @@ class ValidationSpec extends AbstractDSLSpec {
         error.suppressed.any { it.message == "\$/Foo.With: Field 'name' must be set" }
     }
 
+    def "validation errors are located by class and key if breadcrumbs are disabled"() {
+        given:
+        BreadcrumbCollector.enabled = false
+        createClass('''
+            @DSL
+            class Foo {
+                @Validate
+                String name
+
+                Map<String, Inner> inners
+            }
+
+            @DSL
+            class Inner {
+                @Key
+                String name
+                @Validate
+                String value
+            }
+        ''')
+
+        when:
+        clazz.Create.With {
+            inners {
+                inner("bla") {}
+            }
+        }
+
+        then:
+        error = thrown(KlumValidationException)
+        error.validationErrors.keySet().any { it ==~ /Foo@\p{XDigit}+/ }
+        error.validationErrors.containsKey("Inner(bla)")
+        !error.message.contains("null")
+        error.suppressed.any { it.message == "Inner(bla): Field 'value' must be set" }
+
+        cleanup:
+        BreadcrumbCollector.enabled = true
+    }
+
     def "validation with message"() {
         given:
         createClass('''
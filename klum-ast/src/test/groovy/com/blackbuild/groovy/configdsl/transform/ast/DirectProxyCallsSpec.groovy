@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 Stephan Pauxberger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.blackbuild.groovy.configdsl.transform.ast
+
+import com.blackbuild.groovy.configdsl.transform.AbstractFileBasedDSLSpec
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
+import org.codehaus.groovy.tools.GroovyClass
+
+/**
+ * Checks the bytecode of generated methods for direct calls, i.e. method references in the constant pool.
+ * Dynamic calls only reference the method name as a string or via invokedynamic.
+ */
+class DirectProxyCallsSpec extends AbstractFileBasedDSLSpec {
+
+    static final String PROXY = KlumInstanceProxy.name
+
+    def "generated getters, setters and adders call the proxy directly"() {
+        given:
+        withFile "Foo.groovy", '''
+package pk
+
+@DSL
+class Foo {
+    String name
+    List<String> values
+}'''
+        prepareCompilationUnitFiles()
+
+        when:
+        compile()
+
+        then:
+        directCallsOf("pk.Foo").contains("${PROXY}.getInstanceAttribute" as String)
+        directCallsOf('pk.Foo$_RW').containsAll(["${PROXY}.setSingleField", "${PROXY}.addElementToCollection"]*.toString())
+
+        and: "ambiguous overloads are still called dynamically"
+        !directCallsOf('pk.Foo$_RW').contains("${PROXY}.addElementsToCollection" as String)
+    }
+
+    Set<String> directCallsOf(String className) {
+        GroovyClass groovyClass = compileUnit.classes.find { it.name == className }
+        assert groovyClass
+        return methodReferences(groovyClass.bytes)
+    }
+
+    static Set<String> methodReferences(byte[] bytes) {
+        def input = new DataInputStream(new ByteArrayInputStream(bytes))
+        input.skipBytes(8) // magic and version
+        int count = input.readUnsignedShort()
+        Map<Integer, String> utf8 = [:]
+        Map<Integer, Integer> classes = [:]
+        Map<Integer, Integer> nameAndTypes = [:]
+        List<List<Integer>> methodRefs = []
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte()
+            switch (tag) {
+                case 1: utf8[i] = input.readUTF(); break
+                case 7: classes[i] = input.readUnsignedShort(); break
+                case [8, 16, 19, 20]: input.readUnsignedShort(); break
+                case [3, 4, 17, 18]: input.readInt(); break
+                case [5, 6]: input.readLong(); i++; break
+                case 9: input.readInt(); break
+                case [10, 11]: methodRefs << [input.readUnsignedShort(), input.readUnsignedShort()]; break
+                case 12: nameAndTypes[i] = input.readUnsignedShort(); input.readUnsignedShort(); break
+                case 15: input.readUnsignedByte(); input.readUnsignedShort(); break
+                default: throw new IllegalStateException("Unknown constant pool tag $tag")
+            }
+        }
+        return methodRefs.collect { utf8[classes[it[0]]].replace('/', '.') + '.' + utf8[nameAndTypes[it[1]]] } as Set
+    }
+}
@@ -23,10 +23,16 @@
  */
 package com.blackbuild.groovy.configdsl.transform.ast
 
+import com.blackbuild.klum.ast.util.KlumInstanceProxy
 import org.codehaus.groovy.ast.ClassHelper
 import org.codehaus.groovy.ast.ClassNode
+import org.codehaus.groovy.ast.expr.Expression
 import spock.lang.Specification
 
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX
+import static org.codehaus.groovy.ast.tools.GeneralUtils.classX
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX
+
 class MethodAstHelperTest extends Specification {
 
     def "check class distance"(Object arg, Object parent, int distance) {
@@ -42,6 +48,30 @@ class MethodAstHelperTest extends Specification {
         String[]    | String[]  || 0
     }
 
+    def "unambiguous calls are bound directly"(Class type, boolean staticCall, String method, List<Class> args, boolean direct) {
+        given:
+        Expression receiver = staticCall ? classX(type) : varX("target", cn(type))
+        def call = callX(receiver, method)
+
+        when:
+        MethodAstHelper.withDirectTarget(call, cn(type), args.collect { cn(it) })
+
+        then:
+        (call.methodTarget != null) == direct
+        !direct || call.methodTarget.name == method
+
+        where:
+        type              | staticCall | method                 | args      || direct
+        KlumInstanceProxy | false      | "isFrozen"             | []        || true
+        KlumInstanceProxy | false      | "getInstanceAttribute" | [String]  || true
+        KlumInstanceProxy | false      | "getInstanceAttribute" | [Integer] || false
+        KlumInstanceProxy | true       | "isFrozen"             | []        || false
+        KlumInstanceProxy | false      | "getProxyFor"          | [Object]  || false
+        KlumInstanceProxy | true       | "getProxyFor"          | [Object]  || true
+        StringBuilder     | false      | "append"               | [String]  || false
+        Collections       | true       | "emptyList"            | []        || true
+    }
+
     protected ClassNode cn(Object type) {
         if (type instanceof ClassNode)
             return type
@@ -25,6 +25,7 @@ package com.blackbuild.groovy.configdsl.transform.ast.process
 
 import com.blackbuild.groovy.configdsl.transform.AbstractDSLSpec
 import com.blackbuild.klum.ast.process.BreadcrumbCollector
+import com.blackbuild.klum.ast.util.KlumContext
 import com.blackbuild.klum.ast.util.KlumModelException
 
 import static com.blackbuild.klum.ast.util.KlumInstanceProxy.getProxyFor
@@ -33,7 +34,7 @@ import static com.blackbuild.klum.ast.util.KlumInstanceProxy.getProxyFor
 class BreadcrumbCollectorRuntimeTest extends AbstractDSLSpec {
 
     def cleanup() {
-        BreadcrumbCollector.INSTANCE.remove()
+        KlumContext.removeFromCurrent(BreadcrumbCollector.KEY)
     }
 
     def "basic breadcrumb test"() {
@@ -388,4 +389,53 @@ class Inner {
         }
     }
 
-}
\ No newline at end of file
+    def "custom factory methods are used as verbs"() {
+        given:
+        createClass '''
+package pk
+
+import com.blackbuild.klum.ast.util.KlumFactory
+
+@DSL
+class Foo {
+    String value
+
+    static class Factory extends KlumFactory.Unkeyed<Foo> {
+        protected Factory() { super(Foo) }
+
+        Foo WithValue(String value) {
+            return With(value: value)
+        }
+    }
+}
+'''
+        when:
+        instance = Foo.Create.WithValue("bla")
+
+        then:
+        breadCrumbFor(instance) == '$/p.Foo.WithValue'
+    }
+
+    def "breadcrumb verbs are also set for calls from statically compiled code"() {
+        given:
+        createClass '''
+package pk
+
+@DSL
+class Foo {
+}
+
+@groovy.transform.CompileStatic
+class Builder {
+    static Foo build() {
+        Foo.Create.One()
+    }
+}
+'''
+        when:
+        instance = getClass("pk.Builder").build()
+
+        then:
+        breadCrumbFor(instance) == '$/p.Foo.One'
+    }
+}
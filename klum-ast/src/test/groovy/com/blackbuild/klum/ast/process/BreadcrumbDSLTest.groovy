@@ -24,11 +24,12 @@
 package com.blackbuild.klum.ast.process
 
 import com.blackbuild.groovy.configdsl.transform.AbstractDSLSpec
+import com.blackbuild.klum.ast.util.KlumContext
 
 class BreadcrumbDSLTest extends AbstractDSLSpec {
 
     def cleanup() {
-        BreadcrumbCollector.INSTANCE.remove()
+        KlumContext.removeFromCurrent(BreadcrumbCollector.KEY)
     }
 
     def "normal create sets breadcrumb"() {
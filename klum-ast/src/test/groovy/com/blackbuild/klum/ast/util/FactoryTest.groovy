@@ -393,4 +393,146 @@ import com.blackbuild.klum.ast.util.KlumFactory
         person.address.city == 'München 80331'
     }
 
+    def "FromMap creates model objects for nested collection and map elements"() {
+        given:
+        createClass '''
+package pk
+
+import com.blackbuild.groovy.configdsl.transform.DSL
+import com.blackbuild.groovy.configdsl.transform.Key
+
+@DSL class Outer {
+    List<Inner> inners
+    Map<String, Keyed> keyeds
+}
+
+@DSL class Inner {
+    String name
+}
+
+@DSL class Keyed {
+    @Key String name
+    Long size
+}
+'''
+        when:
+        def instance = clazz.Create.FromMap([
+            inners: [[name: "a"], [name: "b"]],
+            keyeds: [
+                one: [size: 1],
+                two: [name: "two", size: "2"]
+            ]
+        ])
+
+        then:
+        instance.inners*.getClass() == [getClass("pk.Inner")] * 2
+        instance.inners*.name == ["a", "b"]
+        instance.keyeds.one.getClass() == getClass("pk.Keyed")
+        instance.keyeds.one.name == "one"
+        instance.keyeds.one.size == 1L
+        instance.keyeds.two.size == 2L
+    }
+
+    def "FromMap uses converter methods for string values"() {
+        given:
+        createClass '''
+package pk
+
+import com.blackbuild.groovy.configdsl.transform.DSL
+
+@DSL class Outer {
+    Money price
+}
+
+class Money {
+    BigDecimal amount
+    static Money parse(String value) {
+        return new Money(amount: new BigDecimal(value))
+    }
+}
+'''
+        when:
+        def instance = clazz.Create.FromMap([price: "12.50"])
+
+        then:
+        instance.price.amount == 12.50G
+    }
+
+    def "FromMaps creates one object per map"() {
+        given:
+        createClass '''
+package pk
+
+import com.blackbuild.groovy.configdsl.transform.DSL
+import com.blackbuild.groovy.configdsl.transform.Key
+import com.blackbuild.groovy.configdsl.transform.Owner
+
+@DSL class Outer {
+    @Key String name
+    Inner inner
+}
+
+@DSL class Inner {
+    @Owner Outer outer
+    String value
+}
+'''
+        when:
+        def instances = clazz.Create.FromMaps((1..50).collect { [name: "o$it".toString(), inner: [value: "v$it".toString()]] })
+
+        then:
+        instances*.name == (1..50).collect { "o$it".toString() }
+        instances.every { it.inner.outer.is(it) }
+        instances*.inner*.value == (1..50).collect { "v$it".toString() }
+    }
+
+    def "FromMap resolves type hints using the registry of known subtypes"() {
+        given:
+        createClass '''
+package pk
+
+import com.blackbuild.groovy.configdsl.transform.DSL
+
+@DSL class Holder {
+    List<ShapeConfig> shapes
+}
+
+@DSL(stripSuffix = "Config") abstract class ShapeConfig {
+    String color
+}
+
+@DSL class CircleConfig extends ShapeConfig {
+    int radius
+}
+
+@DSL(shortName = "box") class SquareConfig extends ShapeConfig {
+    int size
+}
+'''
+        def Circle = getClass("pk.CircleConfig")
+        def Square = getClass("pk.SquareConfig")
+
+        expect:
+        TypeRegistry.getKnownSubtypes(getClass("pk.ShapeConfig")) == [
+                circle: Circle, Circle: Circle, CircleConfig: Circle, "pk.CircleConfig": Circle,
+                box: Square, Square: Square, SquareConfig: Square, "pk.SquareConfig": Square
+        ]
+        TypeRegistry.getPreferredNames(getClass("pk.ShapeConfig")) == [(Circle): "circle", (Square): "box"]
+
+        when:
+        def instance = clazz.Create.FromMap([
+            shapes: [
+                ['@type': 'circle', radius: 1],
+                ['@type': 'Circle', radius: 2],
+                ['@type': 'box', size: 3],
+                ['@type': 'pk.SquareConfig', size: 4]
+            ]
+        ])
+
+        then:
+        instance.shapes*.getClass() == [Circle, Circle, Square, Square]
+        instance.shapes[0].radius == 1
+        instance.shapes[3].size == 4
+    }
+
 }
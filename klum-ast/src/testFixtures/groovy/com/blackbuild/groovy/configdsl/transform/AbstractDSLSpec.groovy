@@ -24,6 +24,7 @@
 package com.blackbuild.groovy.configdsl.transform
 
 import com.blackbuild.klum.ast.process.BreadcrumbCollector
+import com.blackbuild.klum.ast.util.KlumContext
 import org.codehaus.groovy.control.CompilerConfiguration
 import org.codehaus.groovy.control.customizers.ImportCustomizer
 import org.codehaus.groovy.runtime.InvokerHelper
@@ -72,8 +73,8 @@ class AbstractDSLSpec extends Specification {
 
     def cleanup() {
         Thread.currentThread().contextClassLoader = oldLoader
-        assert !BreadcrumbCollector.INSTANCE.get()?.breadcrumbs
-        BreadcrumbCollector.INSTANCE.remove()
+        assert !KlumContext.peekCurrent(BreadcrumbCollector.KEY)?.breadcrumbs
+        KlumContext.removeFromCurrent(BreadcrumbCollector.KEY)
     }
 
     def propertyMissing(String name) {